@@ -0,0 +1,106 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClient;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClientConfig;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Platform threads and heap per connected printer, for standalone {@link PrinterClient}s and for a
+ * {@link PrinterFleet}, measured against a {@link LocalMqttBroker} running in the same JVM.
+ * <p>
+ * Every printer gets one report so lazily created state is included. Heap is measured after full GCs, so treat it as
+ * an estimate.
+ * <pre>{@code
+ * ./gradlew :JBambuAPI:fleetFootprint -Pfootprint.printers=500
+ * }</pre>
+ */
+public final class FleetFootprint {
+    private static final byte[] REPORT = "{\"print\": {\"nozzle_temper\": 215.0, \"command\": \"push_status\"}}".getBytes();
+
+    private FleetFootprint() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        var printers = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        try (var broker = new LocalMqttBroker()) {
+            standalone(broker, printers);
+            fleet(broker, printers);
+        }
+    }
+
+    private static void standalone(LocalMqttBroker broker, int printers) throws Exception {
+        var before = Sample.take();
+        var clients = new ArrayList<PrinterClient>(printers);
+        for (var i = 0; i < printers; i++) {
+            var client = new PrinterClient(config(broker, i));
+            client.connect();
+            clients.add(client);
+        }
+        publishToAll(broker, printers);
+        print("PrinterClient", before, Sample.take(), printers);
+        clients.forEach(PrinterClient::close);
+    }
+
+    private static void fleet(LocalMqttBroker broker, int printers) throws Exception {
+        var before = Sample.take();
+        try (var fleet = new PrinterFleet(FleetConfig.buildDefault())) {
+            for (var i = 0; i < printers; i++) {
+                fleet.add(config(broker, i));
+            }
+            fleet.subscribe((topic, data) -> {
+            });
+            fleet.connectAll();
+            awaitConnected(fleet, printers);
+            publishToAll(broker, printers);
+            print("PrinterFleet", before, Sample.take(), printers);
+        }
+    }
+
+    /**
+     * Printers are connected in the background by the fleet, so wait until all of them are.
+     */
+    private static void awaitConnected(PrinterFleet fleet, int printers) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        int connected;
+        while ((connected = fleet.health().connected()) != printers) {
+            if (System.nanoTime() > deadline) {
+                throw new IllegalStateException("Only %s of %s printers connected".formatted(connected, printers));
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    private static PrinterClientConfig config(LocalMqttBroker broker, int printer) {
+        return PrinterClientConfig.requiredFields(broker.uri(), "bblp", "printer-" + printer, "access-code".toCharArray());
+    }
+
+    private static void publishToAll(LocalMqttBroker broker, int printers) throws InterruptedException {
+        for (var i = 0; i < printers; i++) {
+            broker.publish("device/printer-%s/report".formatted(i), REPORT);
+        }
+        // let callback threads handle the reports
+        Thread.sleep(500);
+    }
+
+    private static void print(String name, Sample before, Sample after, int printers) {
+        var threads = after.threads - before.threads;
+        var heap = after.heap - before.heap;
+        System.out.printf("%-14s printers: %,d, threads: %,d (%.2f per printer), heap: %,d B (%,d B per printer)%n",
+                name, printers, threads, (double) threads / printers, heap, heap / printers);
+    }
+
+    private record Sample(int threads, long heap) {
+        static Sample take() throws InterruptedException {
+            for (var i = 0; i < 3; i++) {
+                System.gc();
+                Thread.sleep(100);
+            }
+            return new Sample(
+                    ManagementFactory.getThreadMXBean().getThreadCount(),
+                    ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed());
+        }
+    }
+}
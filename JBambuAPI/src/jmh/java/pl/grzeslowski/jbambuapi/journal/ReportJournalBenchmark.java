@@ -0,0 +1,68 @@
+package pl.grzeslowski.jbambuapi.journal;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of appending one A1 report to the journal, i.e. what {@link ReportJournal} adds to the MQTT callback thread.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportJournalBenchmark {
+    private static final String TOPIC = "device/03919C461204912/report";
+
+    @Param({"NEVER", "ON_SEAL"})
+    public FsyncPolicy fsyncPolicy;
+    @Param({"false", "true"})
+    public boolean compress;
+
+    private List<byte[]> reports;
+    private Path directory;
+    private ReportJournal journal;
+    private int next;
+
+    @Setup
+    public void setup() throws IOException {
+        reports = new ArrayList<>();
+        try (var files = Files.list(Path.of("src/test/resources/example/A1"))) {
+            for (var file : files.sorted().toList()) {
+                reports.add(Files.readAllBytes(file));
+            }
+        }
+        directory = Files.createTempDirectory("journal-benchmark");
+        journal = new ReportJournal(new JournalConfig(
+                directory, JournalConfig.DEFAULT_SEGMENT_SIZE, fsyncPolicy, Duration.ofSeconds(1), compress));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.close();
+        try (var files = Files.walk(directory)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public void append() {
+        journal.consume(TOPIC, reports.get(next));
+        next = (next + 1) % reports.size();
+    }
+}
@@ -0,0 +1,94 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClient.Channel.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static pl.grzeslowski.jbambuapi.mqtt.PrinterClient.Channel.LedControlCommand.LedNode.CHAMBER_LIGHT;
+import static pl.grzeslowski.jbambuapi.mqtt.PrinterClient.Channel.XCamControlCommand.Module.SPAGHETTI_DETECTOR;
+
+/**
+ * Payload and topic of every {@link Command} variant.
+ * <p>
+ * {@code templates} is what {@link PrinterClient.Channel#sendCommand(Command)} does; {@code objectMapper} reproduces
+ * the previous encoding (copy the command map, add {@code sequence_id}, write it with {@link ObjectMapper} and format
+ * the topic), so both numbers can be compared in the same run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandEncodingBenchmark {
+    private static final String SERIAL = "03919C461204912";
+    private static final Map<String, Command> COMMANDS = Map.ofEntries(
+            Map.entry("info", InfoCommand.GET_VERSION),
+            Map.entry("pushing", PushingCommand.defaultPushingCommand()),
+            Map.entry("print", PrintCommand.PAUSE),
+            Map.entry("changeFilament", new ChangeFilamentCommand(1, 220, 250)),
+            Map.entry("amsUserSetting", new AmsUserSettingCommand(0, true, false)),
+            Map.entry("amsFilamentSetting", new AmsFilamentSettingCommand(0, 1, "GFA00", "FF0000FF", 190, 230, "PLA")),
+            Map.entry("amsControl", AmsControlCommand.RESUME),
+            Map.entry("printSpeed", PrintSpeedCommand.SPORT),
+            Map.entry("gCodeFile", new GCodeFileCommand("/sdcard/model.gcode")),
+            Map.entry("gCodeLine", new GCodeLineCommand(List.of("G1 X10 Y10 F3000", "M400"), "123456")),
+            Map.entry("ledControl", LedControlCommand.flashing(CHAMBER_LIGHT, 500, 500, 3, 1000)),
+            Map.entry("system", SystemCommand.GET_ACCESS_CODE),
+            Map.entry("ipCamRecord", new IpCamRecordCommand(true)),
+            Map.entry("ipCamTimelapse", new IpCamTimelapsCommand(false)),
+            Map.entry("xCamControl", new XCamControlCommand(SPAGHETTI_DETECTOR, true, false)));
+
+    @Param({"info", "pushing", "print", "changeFilament", "amsUserSetting", "amsFilamentSetting", "amsControl",
+            "printSpeed", "gCodeFile", "gCodeLine", "ledControl", "system", "ipCamRecord", "ipCamTimelapse",
+            "xCamControl"})
+    private String command;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final CommandEncoder encoder = new CommandEncoder();
+    private final String topic = "device/%s/request".formatted(SERIAL);
+    private Command value;
+    private String section;
+    private Map<String, Object> fields;
+    private int sequenceId;
+
+    @Setup
+    @SuppressWarnings("unchecked")
+    public void setup() throws IOException {
+        value = COMMANDS.get(command);
+        var payload = (Map<String, Map<String, Object>>) jsonMapper.readValue(encoder.encode(value, 1), Map.class);
+        for (var entry : payload.entrySet()) {
+            if (entry.getValue() != null) {
+                section = entry.getKey();
+                fields = Map.copyOf(entry.getValue());
+            }
+        }
+    }
+
+    @Benchmark
+    public void templates(Blackhole blackhole) {
+        blackhole.consume(topic);
+        blackhole.consume(encoder.encode(value, ++sequenceId));
+    }
+
+    @Benchmark
+    public void objectMapper(Blackhole blackhole) throws JsonProcessingException {
+        var copy = new HashMap<>(fields);
+        copy.put("sequence_id", ++sequenceId + "");
+        var payload = new LinkedHashMap<String, Object>();
+        for (var name : List.of("info", "pushing", "print", "camera", "xcam", "system")) {
+            payload.put(name, name.equals(section) ? copy : null);
+        }
+        blackhole.consume("device/%s/%s".formatted(SERIAL, "request"));
+        blackhole.consume(jsonMapper.writeValueAsBytes(payload));
+    }
+}
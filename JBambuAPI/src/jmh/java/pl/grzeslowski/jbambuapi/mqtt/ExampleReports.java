@@ -0,0 +1,45 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Reports recorded from a real A1 printer. File names start with a timestamp, so sorting them gives the order in which
+ * the printer has sent them.
+ */
+final class ExampleReports {
+    static final String TOPIC = "device/03919C461204912/report";
+    private static final Path A1 = Paths.get("src/test/resources/example/A1");
+
+    private ExampleReports() {
+    }
+
+    static List<byte[]> load() {
+        try (var files = Files.list(A1)) {
+            var reports = files
+                    .filter(Files::isRegularFile)
+                    .filter(path -> path.toString().endsWith(".json"))
+                    .sorted()
+                    .map(ExampleReports::read)
+                    .toList();
+            if (reports.isEmpty()) {
+                throw new IllegalStateException("There are no example reports in " + A1.toAbsolutePath());
+            }
+            return reports;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] read(Path path) {
+        try {
+            return Files.readAllBytes(path);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
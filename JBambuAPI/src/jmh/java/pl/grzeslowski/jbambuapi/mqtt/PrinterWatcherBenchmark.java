@@ -0,0 +1,54 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full {@link PrinterWatcher#consume(String, byte[])} path (parse, merge, publish and notify subscribers) for the whole
+ * A1 corpus, with 1, 10 and 100 subscribers.
+ * <p>
+ * {@code all} subscribers are notified about every report; {@code filtered} subscribers only about
+ * {@code print.nozzle_temper} changes, like a dashboard tile would be. Watcher is kept between operations, so after
+ * the first one every report is merged into a full state like it is on a long running connection.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PrinterWatcherBenchmark {
+    @Param({"1", "10", "100"})
+    private int subscribers;
+
+    @Param({"all", "filtered"})
+    private String subscription;
+
+    private List<byte[]> reports;
+    private PrinterWatcher watcher;
+    private long notifications;
+
+    @Setup
+    public void setup() {
+        reports = ExampleReports.load();
+        watcher = new PrinterWatcher();
+        for (var i = 0; i < subscribers; i++) {
+            PrinterWatcher.StateSubscriber subscriber = (delta, fullState) -> notifications++;
+            if (subscription.equals("filtered")) {
+                watcher.subscribe(subscriber, "print.nozzle_temper");
+            } else {
+                watcher.subscribe(subscriber);
+            }
+        }
+    }
+
+    @Benchmark
+    public long consume() {
+        for (var report : reports) {
+            watcher.consume(ExampleReports.TOPIC, report);
+        }
+        return notifications;
+    }
+}
@@ -0,0 +1,43 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
+
+/**
+ * Folds all parsed A1 deltas into the full state, in the order they were recorded.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportMergeBenchmark {
+    private List<Report> deltas;
+
+    @Setup
+    public void setup() throws IOException {
+        var jsonMapper = new ObjectMapper();
+        jsonMapper.configure(FAIL_ON_UNKNOWN_PROPERTIES, false);
+        deltas = new ArrayList<>();
+        for (var report : ExampleReports.load()) {
+            deltas.add(jsonMapper.readValue(report, Report.class));
+        }
+    }
+
+    @Benchmark
+    public Report merge() {
+        Report fullState = null;
+        for (var delta : deltas) {
+            fullState = fullState != null ? fullState.merge(delta) : delta;
+        }
+        return fullState;
+    }
+}
@@ -0,0 +1,77 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
+
+/**
+ * Parses (and writes back) the whole A1 corpus once per operation, with generated code and with Jackson's reflective
+ * record support.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReportParsingBenchmark {
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ObjectMapper generatedMapper = new ObjectMapper().registerModule(new ReportJsonModule());
+    private List<byte[]> reports;
+    private List<Report> parsed;
+
+    @Setup
+    public void setup() throws IOException {
+        jsonMapper.configure(FAIL_ON_UNKNOWN_PROPERTIES, false);
+        generatedMapper.configure(FAIL_ON_UNKNOWN_PROPERTIES, false);
+        reports = ExampleReports.load();
+        parsed = new ArrayList<>(reports.size());
+        for (var report : reports) {
+            parsed.add(jsonMapper.readValue(report, Report.class));
+        }
+    }
+
+    @Benchmark
+    public void streaming(Blackhole blackhole) throws IOException {
+        for (var report : reports) {
+            try (var parser = jsonMapper.createParser(report)) {
+                blackhole.consume(Report.parse(parser));
+            }
+        }
+    }
+
+    @Benchmark
+    public void objectMapper(Blackhole blackhole) throws IOException {
+        for (var report : reports) {
+            blackhole.consume(jsonMapper.readValue(report, Report.class));
+        }
+    }
+
+    @Benchmark
+    public void generatedModule(Blackhole blackhole) throws IOException {
+        for (var report : reports) {
+            blackhole.consume(generatedMapper.readValue(report, Report.class));
+        }
+    }
+
+    @Benchmark
+    public void writeReflective(Blackhole blackhole) throws IOException {
+        for (var report : parsed) {
+            blackhole.consume(jsonMapper.writeValueAsBytes(report));
+        }
+    }
+
+    @Benchmark
+    public void writeGenerated(Blackhole blackhole) throws IOException {
+        for (var report : parsed) {
+            blackhole.consume(generatedMapper.writeValueAsBytes(report));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Many dashboard threads reading the full state while one MQTT callback thread keeps consuming A1 reports.
+ * <p>
+ * {@code snapshot} reads through {@link PrinterWatcher#getSnapshot()}; {@code locked} reproduces the previous
+ * read-write lock protected field, so both numbers can be compared in the same run.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StateContentionBenchmark {
+    private static final int READERS = 7;
+
+    private List<byte[]> reports;
+    private PrinterWatcher watcher;
+    private int next;
+
+    private final ObjectMapper jsonMapper = new ObjectMapper();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Report lockedState;
+
+    @Setup
+    public void setup() throws IOException {
+        reports = ExampleReports.load();
+        watcher = new PrinterWatcher();
+    }
+
+    @TearDown
+    public void tearDown() {
+        watcher.close();
+    }
+
+    private byte[] nextReport() {
+        var report = reports.get(next);
+        next = (next + 1) % reports.size();
+        return report;
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(1)
+    public void snapshotWriter() {
+        watcher.consume(ExampleReports.TOPIC, nextReport());
+    }
+
+    @Benchmark
+    @Group("snapshot")
+    @GroupThreads(READERS)
+    public Report snapshotReader() {
+        return watcher.getSnapshot();
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(1)
+    public void lockedWriter() throws IOException {
+        Report delta;
+        try (var parser = jsonMapper.createParser(nextReport())) {
+            delta = Report.parse(parser);
+        }
+        lock.writeLock().lock();
+        try {
+            lockedState = lockedState != null ? lockedState.merge(delta) : delta;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(READERS)
+    public Report lockedReader() {
+        lock.readLock().lock();
+        try {
+            return lockedState;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
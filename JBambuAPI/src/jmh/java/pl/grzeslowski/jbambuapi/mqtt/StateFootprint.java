@@ -0,0 +1,54 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jol.info.GraphLayout;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
+
+/**
+ * Retained heap per printer, for {@link Report} kept by {@link PrinterWatcher} and for {@link CompactReport}.
+ * <p>
+ * Every simulated printer parses the A1 corpus on its own, so nothing is shared between printers except what the
+ * representation shares on purpose (interned strings).
+ * <pre>{@code
+ * ./gradlew :JBambuAPI:footprint -Pfootprint.printers=1000
+ * }</pre>
+ */
+public final class StateFootprint {
+    private StateFootprint() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        var printers = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        var jsonMapper = new ObjectMapper().configure(FAIL_ON_UNKNOWN_PROPERTIES, false);
+        var corpus = ExampleReports.load();
+
+        var reports = new ArrayList<Report>(printers);
+        var compacts = new ArrayList<CompactReport>(printers);
+        for (var i = 0; i < printers; i++) {
+            var report = Report.EMPTY;
+            var compact = new CompactReport();
+            for (var data : corpus) {
+                Report delta;
+                try (var parser = jsonMapper.createParser(data)) {
+                    delta = Report.parse(parser);
+                }
+                report = report.merge(delta);
+                compact.apply(delta);
+            }
+            reports.add(report);
+            compacts.add(compact);
+        }
+
+        print("Report", GraphLayout.parseInstance(reports.toArray()), printers);
+        print("CompactReport", GraphLayout.parseInstance(compacts.toArray()), printers);
+    }
+
+    private static void print(String name, GraphLayout layout, int printers) {
+        System.out.printf("%-14s printers: %,d, total: %,d B, per printer: %,d B, objects per printer: %,d%n",
+                name, printers, layout.totalSize(), layout.totalSize() / printers, layout.totalCount() / printers);
+    }
+}
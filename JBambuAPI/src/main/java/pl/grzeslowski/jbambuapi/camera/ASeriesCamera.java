@@ -4,4 +4,8 @@ public class ASeriesCamera extends TlsCamera {
     public ASeriesCamera(CameraConfig cameraConfig) {
         super(cameraConfig);
     }
+
+    public ASeriesCamera(CameraConfig cameraConfig, FramePool framePool) {
+        super(cameraConfig, framePool);
+    }
 }
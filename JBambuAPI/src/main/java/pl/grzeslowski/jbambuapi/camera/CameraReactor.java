@@ -0,0 +1,438 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import pl.grzeslowski.jbambuapi.jfr.CameraFrameEvent;
+import pl.grzeslowski.jbambuapi.metrics.Metrics;
+
+import javax.net.ssl.SSLContext;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.GeneralSecurityException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.channels.SelectionKey.OP_CONNECT;
+import static java.nio.channels.SelectionKey.OP_READ;
+import static java.nio.channels.SelectionKey.OP_WRITE;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reads many A-series and P-series cameras with a few threads.
+ * <p>
+ * Where {@link TlsCamera} parks a thread in a blocking read for every camera, the reactor keeps all connections
+ * non-blocking: every thread runs a {@link Selector} over its share of cameras and TLS is done with an
+ * {@link javax.net.ssl.SSLEngine}. The protocol is the same - the 80 byte authentication packet is sent after the
+ * handshake, and every frame comes with a 16 byte header - and frames are read into arrays of a {@link FramePool}.
+ * <pre>{@code
+ * try (var reactor = new CameraReactor(2)) {
+ *     var stream = reactor.open(cameraConfig, frame -> frame.writeTo(out));
+ *     ...
+ *     stream.close();
+ * }
+ * }</pre>
+ * Cameras without a certificate in {@link CameraConfig} are read over plain TCP.
+ */
+@Slf4j
+public final class CameraReactor implements AutoCloseable {
+    public static final int DEFAULT_THREADS = 1;
+    private static final int HEADER_SIZE = 16;
+
+    private final Loop[] loops;
+    private final AtomicInteger nextLoop = new AtomicInteger();
+    private final Map<String, SSLContext> sslContexts = new ConcurrentHashMap<>();
+    @Getter
+    private final FramePool framePool;
+
+    public CameraReactor() {
+        this(DEFAULT_THREADS);
+    }
+
+    public CameraReactor(int threads) {
+        this(threads, new FramePool());
+    }
+
+    /**
+     * @param threads   number of selector threads; every camera is served by one of them
+     * @param framePool pool that frames are read into; it can be shared with other cameras
+     */
+    public CameraReactor(int threads, FramePool framePool) {
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads has to be positive, was " + threads);
+        }
+        this.framePool = requireNonNull(framePool, "framePool");
+        loops = new Loop[threads];
+        try {
+            for (var i = 0; i < threads; i++) {
+                loops[i] = new Loop(i);
+            }
+        } catch (IOException e) {
+            close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Connects to the camera in the background. Connection errors are reported to
+     * {@link FrameListener#onClosed(Throwable)}.
+     */
+    public CameraStream open(CameraConfig config, FrameListener listener) throws GeneralSecurityException, IOException {
+        requireNonNull(config, "config");
+        requireNonNull(listener, "listener");
+        var sslContext = config.certificate() != null ? sslContext(config.certificate()) : null;
+        // skip loops whose thread has failed
+        for (var i = 0; i < loops.length; i++) {
+            var loop = loops[Math.floorMod(nextLoop.getAndIncrement(), loops.length)];
+            if (loop.running) {
+                var connection = new Connection(loop, config, sslContext, listener);
+                loop.execute(connection::start);
+                return connection;
+            }
+        }
+        throw new IllegalStateException("Camera reactor is closed");
+    }
+
+    /**
+     * @return number of open streams
+     */
+    public int streams() {
+        var streams = 0;
+        for (var loop : loops) {
+            if (loop != null) {
+                streams += loop.streams.get();
+            }
+        }
+        return streams;
+    }
+
+    private SSLContext sslContext(String certificate) throws GeneralSecurityException, IOException {
+        var sslContext = sslContexts.get(certificate);
+        if (sslContext == null) {
+            sslContext = TlsCamera.createSSLContext(certificate);
+            sslContexts.putIfAbsent(certificate, sslContext);
+        }
+        return sslContext;
+    }
+
+    /**
+     * Closes all streams and stops the threads.
+     */
+    @Override
+    public void close() {
+        for (var loop : loops) {
+            if (loop != null) {
+                loop.shutdown();
+            }
+        }
+        for (var loop : loops) {
+            if (loop != null) {
+                loop.join();
+            }
+        }
+    }
+
+    private static final class Loop implements Runnable {
+        private final Selector selector;
+        private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger streams = new AtomicInteger();
+        private final Thread thread;
+        private volatile boolean running = true;
+        /**
+         * Set when the thread has left the loop; tasks are then run by whoever submits them.
+         */
+        private volatile boolean stopped;
+
+        private Loop(int index) throws IOException {
+            selector = Selector.open();
+            thread = Thread.ofPlatform()
+                    .name("jbambuapi-camera-reactor-" + index)
+                    .daemon()
+                    .start(this);
+        }
+
+        void execute(Runnable task) {
+            tasks.add(task);
+            if (!stopped) {
+                selector.wakeup();
+            } else {
+                synchronized (this) {
+                    runTasks();
+                }
+            }
+        }
+
+        private void runTasks() {
+            Runnable task;
+            while ((task = tasks.poll()) != null) {
+                task.run();
+            }
+        }
+
+        boolean inLoop() {
+            return Thread.currentThread() == thread;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (running) {
+                    selector.select(key -> ((Connection) key.attachment()).handle(key));
+                    runTasks();
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Camera reactor thread failed", e);
+            } finally {
+                // no new cameras for this loop, and tasks submitted from now on (like Connection#close) run inline
+                running = false;
+                synchronized (this) {
+                    stopped = true;
+                    runTasks();
+                    for (var key : selector.keys()) {
+                        ((Connection) key.attachment()).closeInLoop(null);
+                    }
+                    try {
+                        selector.close();
+                    } catch (IOException e) {
+                        log.debug("Cannot close selector", e);
+                    }
+                }
+            }
+        }
+
+        void shutdown() {
+            running = false;
+            selector.wakeup();
+        }
+
+        void join() {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * State of one camera. Everything except {@link #close()} and {@link #isOpen()} runs on the thread of its loop, or,
+     * after that thread has stopped, under the lock of the loop.
+     */
+    private final class Connection implements CameraStream {
+        private final Loop loop;
+        private final CameraConfig config;
+        private final SSLContext sslContext;
+        private final FrameListener listener;
+        private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(LITTLE_ENDIAN);
+        private SocketChannel channel;
+        private SelectionKey key;
+        private CameraTransport transport;
+        private ByteBuffer in;
+        private Frame frame;
+        private int framePosition;
+        private long frameStart;
+        private CameraFrameEvent frameEvent;
+        private boolean started;
+        private volatile boolean open = true;
+
+        private Connection(Loop loop, CameraConfig config, SSLContext sslContext, FrameListener listener) {
+            this.loop = loop;
+            this.config = config;
+            this.sslContext = sslContext;
+            this.listener = listener;
+        }
+
+        @Override
+        public String host() {
+            return config.host();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            if (loop.inLoop()) {
+                closeInLoop(null);
+            } else {
+                loop.execute(() -> closeInLoop(null));
+            }
+        }
+
+        private void start() {
+            if (!open) {
+                return;
+            }
+            started = true;
+            loop.streams.incrementAndGet();
+            try {
+                log.debug("Connecting to {}:{}", config.host(), config.port());
+                channel = SocketChannel.open();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                key = channel.register(loop.selector, OP_CONNECT, this);
+                if (channel.connect(new InetSocketAddress(config.host(), config.port()))) {
+                    connected();
+                }
+            } catch (IOException | RuntimeException e) {
+                closeInLoop(e);
+            }
+        }
+
+        private void handle(SelectionKey key) {
+            try {
+                if (key.isConnectable()) {
+                    if (!channel.finishConnect()) {
+                        return;
+                    }
+                    connected();
+                } else {
+                    pump();
+                }
+            } catch (IOException | RuntimeException e) {
+                closeInLoop(e);
+            }
+        }
+
+        private void connected() throws IOException {
+            if (sslContext != null) {
+                var engine = sslContext.createSSLEngine(config.host(), config.port());
+                engine.setUseClientMode(true);
+                transport = CameraTransport.tls(channel, engine);
+            } else {
+                transport = CameraTransport.plain(channel);
+            }
+            in = ByteBuffer.allocate(transport.applicationBufferSize());
+            // with TLS the packet is sent as soon as the handshake is done
+            transport.send(TlsCamera.authenticationPacket(config));
+            log.debug("Connected to {}:{}", config.host(), config.port());
+            pump();
+        }
+
+        private void pump() throws IOException {
+            int read;
+            while (open && (read = transport.read(in)) != 0) {
+                if (read < 0) {
+                    log.debug("Camera {} ended the stream", config.host());
+                    closeInLoop(null);
+                    return;
+                }
+                in.flip();
+                parse(in);
+                in.clear();
+            }
+            if (open) {
+                key.interestOps(transport.flush() ? OP_READ : OP_READ | OP_WRITE);
+            }
+        }
+
+        /**
+         * Copies all bytes of {@code in} into the header or the current frame.
+         */
+        private void parse(ByteBuffer in) throws IOException {
+            while (in.hasRemaining() && open) {
+                if (frame == null) {
+                    if (header.position() == 0) {
+                        // a frame arrives over many reads, so the event spans from its first to its last byte
+                        frameEvent = new CameraFrameEvent();
+                        frameEvent.begin();
+                        frameStart = System.nanoTime();
+                    }
+                    copy(in, header);
+                    if (header.hasRemaining()) {
+                        return;
+                    }
+                    var payloadSize = header.getInt(0);
+                    header.clear();
+                    if (payloadSize <= 2) {
+                        throw new IOException("There is no payload! Breaking connection!");
+                    }
+                    frame = framePool.acquire(payloadSize);
+                    framePosition = 0;
+                } else {
+                    var length = Math.min(in.remaining(), frame.length() - framePosition);
+                    in.get(frame.array(), framePosition, length);
+                    framePosition += length;
+                    if (framePosition == frame.length()) {
+                        var complete = frame;
+                        frame = null;
+                        deliver(complete);
+                    }
+                }
+            }
+        }
+
+        private void deliver(Frame frame) throws IOException {
+            try (frame) {
+                var data = frame.array();
+                if (data[0] != TlsCamera.START_MAGIC_NUMBER || data[1] != TlsCamera.END_MAGIC_NUMBER) {
+                    throw new IOException("Invalid image data.");
+                }
+                Metrics.recorder().frameRead(config.host(), frame.length(), System.nanoTime() - frameStart);
+                var event = frameEvent;
+                frameEvent = null;
+                event.end();
+                if (event.shouldCommit()) {
+                    event.host = config.host();
+                    event.bytes = frame.length();
+                    event.commit();
+                }
+                try {
+                    listener.onFrame(frame);
+                } catch (RuntimeException e) {
+                    log.error("Frame listener of {} failed", config.host(), e);
+                }
+            }
+        }
+
+        private static void copy(ByteBuffer from, ByteBuffer to) {
+            var length = Math.min(from.remaining(), to.remaining());
+            to.put(to.position(), from, from.position(), length);
+            to.position(to.position() + length);
+            from.position(from.position() + length);
+        }
+
+        private void closeInLoop(Throwable cause) {
+            if (!open) {
+                return;
+            }
+            open = false;
+            if (started) {
+                loop.streams.decrementAndGet();
+            }
+            if (channel != null) {
+                if (key != null) {
+                    key.cancel();
+                }
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    log.debug("Cannot close channel to {}", config.host(), e);
+                }
+            }
+            if (frame != null) {
+                frame.release();
+                frame = null;
+            }
+            if (cause != null) {
+                log.debug("Camera stream of {} failed", config.host(), cause);
+            }
+            try {
+                listener.onClosed(cause);
+            } catch (RuntimeException e) {
+                log.error("Frame listener of {} failed", config.host(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+/**
+ * Camera opened in {@link CameraReactor}.
+ */
+public interface CameraStream extends AutoCloseable {
+    String host();
+
+    /**
+     * @return {@code false} after the stream was closed by the client, the camera or an error
+     */
+    boolean isOpen();
+
+    /**
+     * Closes the connection to the camera. The {@link FrameListener} is notified on the thread of the reactor.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,206 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.FINISHED;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_TASK;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NEED_WRAP;
+import static javax.net.ssl.SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING;
+
+/**
+ * Non-blocking byte stream on top of a connected {@link SocketChannel}, used by {@link CameraReactor}.
+ * <p>
+ * None of the methods block: they move as many bytes as the channel accepts and report what is left for the next
+ * readiness event.
+ */
+interface CameraTransport {
+    /**
+     * Queues bytes to send. The buffer is read by following {@link #flush()} calls until it has no bytes remaining.
+     */
+    void send(ByteBuffer data) throws IOException;
+
+    /**
+     * @return {@code true} when everything was written, {@code false} when the channel has to become writable first
+     */
+    boolean flush() throws IOException;
+
+    /**
+     * Reads application bytes into {@code dst}.
+     *
+     * @return number of bytes put into {@code dst}, {@code 0} when more bytes have to arrive first, {@code -1} at the
+     * end of stream
+     */
+    int read(ByteBuffer dst) throws IOException;
+
+    /**
+     * @return smallest buffer that {@link #read(ByteBuffer)} can always make progress with
+     */
+    int applicationBufferSize();
+
+    static CameraTransport plain(SocketChannel channel) {
+        return new Plain(channel);
+    }
+
+    static CameraTransport tls(SocketChannel channel, SSLEngine engine) throws SSLException {
+        return new Tls(channel, engine);
+    }
+
+    final class Plain implements CameraTransport {
+        private final SocketChannel channel;
+        private ByteBuffer out;
+
+        private Plain(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public void send(ByteBuffer data) throws IOException {
+            out = data;
+            flush();
+        }
+
+        @Override
+        public boolean flush() throws IOException {
+            if (out == null) {
+                return true;
+            }
+            channel.write(out);
+            if (out.hasRemaining()) {
+                return false;
+            }
+            out = null;
+            return true;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        @Override
+        public int applicationBufferSize() {
+            return 64 * 1024;
+        }
+    }
+
+    /**
+     * Drives an {@link SSLEngine}: wraps handshake messages and queued bytes into {@code netOut}, and unwraps records
+     * from {@code netIn}. Both network buffers are kept in fill mode between calls.
+     */
+    final class Tls implements CameraTransport {
+        private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+        private final SocketChannel channel;
+        private final SSLEngine engine;
+        private final ByteBuffer netIn;
+        private final ByteBuffer netOut;
+        private ByteBuffer out;
+        private boolean closed;
+
+        private Tls(SocketChannel channel, SSLEngine engine) throws SSLException {
+            this.channel = channel;
+            this.engine = engine;
+            var session = engine.getSession();
+            netIn = ByteBuffer.allocate(session.getPacketBufferSize());
+            netOut = ByteBuffer.allocate(session.getPacketBufferSize());
+            engine.beginHandshake();
+        }
+
+        @Override
+        public void send(ByteBuffer data) throws IOException {
+            out = data;
+            flush();
+        }
+
+        @Override
+        public boolean flush() throws IOException {
+            while (true) {
+                netOut.flip();
+                channel.write(netOut);
+                netOut.compact();
+                if (netOut.position() > 0) {
+                    return false;
+                }
+                var handshake = engine.getHandshakeStatus();
+                // queued bytes wait until the handshake is done; wrap() would not take them before anyway
+                var source = handshake == NEED_WRAP ? EMPTY
+                        : handshake == NOT_HANDSHAKING && out != null && out.hasRemaining() ? out
+                        : null;
+                if (source == null) {
+                    return true;
+                }
+                var result = engine.wrap(source, netOut);
+                runDelegatedTasks(result);
+                switch (result.getStatus()) {
+                    case CLOSED -> throw new EOFException("TLS engine was closed");
+                    case BUFFER_OVERFLOW, BUFFER_UNDERFLOW -> throw new SSLException("Unexpected wrap result " + result);
+                    case OK -> {
+                    }
+                }
+            }
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            var endOfStream = channel.read(netIn) < 0;
+            var produced = 0;
+            netIn.flip();
+            try {
+                while (netIn.hasRemaining()) {
+                    var result = engine.unwrap(netIn, dst);
+                    runDelegatedTasks(result);
+                    produced += result.bytesProduced();
+                    var status = result.getStatus();
+                    if (status == SSLEngineResult.Status.CLOSED) {
+                        closed = true;
+                        break;
+                    }
+                    if (status == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                        // partial record, the rest has to be read from the channel
+                        break;
+                    }
+                    if (status == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                        if (dst.position() == 0) {
+                            throw new SSLException("Buffer of %s bytes is too small for a record".formatted(dst.capacity()));
+                        }
+                        // caller has to drain dst first
+                        break;
+                    }
+                    if (result.getHandshakeStatus() == FINISHED || engine.getHandshakeStatus() == NEED_WRAP) {
+                        flush();
+                    }
+                    if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                        break;
+                    }
+                }
+            } finally {
+                netIn.compact();
+            }
+            if (produced > 0) {
+                return produced;
+            }
+            return closed || endOfStream ? -1 : 0;
+        }
+
+        @Override
+        public int applicationBufferSize() {
+            return engine.getSession().getApplicationBufferSize();
+        }
+
+        private void runDelegatedTasks(SSLEngineResult result) {
+            if (result.getHandshakeStatus() != NEED_TASK) {
+                return;
+            }
+            // handshake tasks are short (certificate checks, key agreement) and happen once per connection
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+        }
+    }
+}
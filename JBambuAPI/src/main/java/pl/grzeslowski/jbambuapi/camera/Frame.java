@@ -0,0 +1,130 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * JPEG frame read into an array of a {@link FramePool}.
+ * <p>
+ * A frame is reference counted. It is created with count {@code 1}; every additional owner (like another thread the
+ * frame is handed over to) calls {@link #retain()}, and every owner calls {@link #release()} (or {@link #close()}) when
+ * it is done. When the count drops to zero the array goes back to the pool and the frame cannot be read anymore.
+ * <pre>{@code
+ * var frames = camera.frames();
+ * while (frames.hasNext()) {
+ *     try (var frame = frames.next()) {
+ *         frame.writeTo(out);
+ *     }
+ * }
+ * }</pre>
+ */
+public final class Frame implements AutoCloseable {
+    private final FramePool pool;
+    private final byte[] array;
+    private final int length;
+    private final AtomicInteger references = new AtomicInteger(1);
+
+    Frame(FramePool pool, byte[] array, int length) {
+        this.pool = pool;
+        this.array = array;
+        this.length = length;
+    }
+
+    /**
+     * @return backing array of the frame, which can be longer than the frame; do not keep it after releasing the frame
+     */
+    public byte[] array() {
+        checkNotReleased();
+        return array;
+    }
+
+    /**
+     * @return number of bytes in the frame, starting at index {@code 0} of {@link #array()}
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return read-only view of the frame; do not keep it after releasing the frame
+     */
+    public ByteBuffer buffer() {
+        checkNotReleased();
+        return ByteBuffer.wrap(array, 0, length).asReadOnlyBuffer();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        checkNotReleased();
+        out.write(array, 0, length);
+    }
+
+    /**
+     * @return copy of the frame that stays valid after the frame is released
+     */
+    public byte[] toByteArray() {
+        checkNotReleased();
+        return Arrays.copyOf(array, length);
+    }
+
+    /**
+     * Adds an owner of the frame.
+     *
+     * @return this frame
+     * @throws IllegalStateException when the frame was already released
+     */
+    public Frame retain() {
+        while (true) {
+            var current = references.get();
+            if (current <= 0) {
+                throw new IllegalStateException("Frame was already released!");
+            }
+            if (references.compareAndSet(current, current + 1)) {
+                return this;
+            }
+        }
+    }
+
+    /**
+     * Removes an owner of the frame. The last one gives the array back to the pool.
+     *
+     * @throws IllegalStateException when the frame was already released by all owners
+     */
+    public void release() {
+        var left = references.decrementAndGet();
+        if (left == 0) {
+            pool.recycle(array);
+        } else if (left < 0) {
+            references.incrementAndGet();
+            throw new IllegalStateException("Frame was already released!");
+        }
+    }
+
+    public int referenceCount() {
+        return Math.max(0, references.get());
+    }
+
+    /**
+     * Same as {@link #release()}.
+     */
+    @Override
+    public void close() {
+        release();
+    }
+
+    private void checkNotReleased() {
+        if (references.get() <= 0) {
+            throw new IllegalStateException("Frame was already released!");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Frame{" +
+                "length=" + length +
+                ", references=" + referenceCount() +
+                '}';
+    }
+}
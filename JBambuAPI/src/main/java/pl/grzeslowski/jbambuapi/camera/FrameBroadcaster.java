@@ -0,0 +1,192 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Reads every frame of a camera once and hands it to many subscribers.
+ * <p>
+ * Printers accept only a few camera connections, and iterators of one {@link TlsCamera} share the socket, so a
+ * recorder and a live preview cannot read the same camera on their own. The broadcaster is the only reader; every
+ * {@link FrameSubscription} gets the same reference counted {@link Frame} (no copies) through its own queue and
+ * thread, and a slow subscriber only drops its own frames.
+ * <pre>{@code
+ * camera.connect();
+ * try (var broadcaster = new FrameBroadcaster(camera)) {
+ *     broadcaster.subscribe(recorder::write, FrameSubscriptionConfig.everyFrame());
+ *     broadcaster.subscribe(preview::show, FrameSubscriptionConfig.latestFrame());
+ *     broadcaster.start();
+ *     ...
+ * }
+ * }</pre>
+ * A broadcaster created without a camera is a {@link FrameListener}, so it can be fed by {@link CameraReactor}.
+ * <p>
+ * When the camera stream ends (the camera closes the connection, or {@link #onClosed(Throwable)} is called), queued
+ * frames are still delivered and then all subscriptions are closed; later subscriptions are closed right away.
+ */
+@Slf4j
+public final class FrameBroadcaster implements FrameListener, AutoCloseable {
+    private final TlsCamera camera;
+    private final List<FrameSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicLong published = new AtomicLong();
+    private Thread reader;
+    private volatile boolean closed;
+    private volatile boolean ended;
+
+    /**
+     * Builds a broadcaster that publishes frames passed to {@link #onFrame(Frame)}.
+     */
+    public FrameBroadcaster() {
+        camera = null;
+    }
+
+    /**
+     * Builds a broadcaster of a connected camera. The broadcaster owns the camera from now on and closes it in
+     * {@link #close()}.
+     */
+    public FrameBroadcaster(TlsCamera camera) {
+        this.camera = requireNonNull(camera, "camera");
+    }
+
+    /**
+     * Starts reading frames of the camera on a new thread. Subscribe before to get the first frame.
+     *
+     * @throws IllegalStateException when the broadcaster has no camera or was already started
+     */
+    public synchronized void start() {
+        if (camera == null) {
+            throw new IllegalStateException("Broadcaster without a camera cannot be started");
+        }
+        if (reader != null) {
+            throw new IllegalStateException("Broadcaster was already started");
+        }
+        reader = Thread.ofVirtual()
+                .name("jbambuapi-frame-broadcaster")
+                .start(this::read);
+    }
+
+    private void read() {
+        try {
+            var frames = camera.frames();
+            while (!closed && frames.hasNext()) {
+                try (var frame = frames.next()) {
+                    onFrame(frame);
+                }
+            }
+        } catch (NoSuchElementException e) {
+            if (!closed) {
+                log.debug("Camera stream ended", e);
+            }
+        } catch (RuntimeException e) {
+            log.error("Cannot read camera frames", e);
+        } finally {
+            end();
+        }
+    }
+
+    /**
+     * Ends the stream of a broadcaster fed by {@link CameraReactor}.
+     */
+    @Override
+    public void onClosed(Throwable cause) {
+        if (cause != null) {
+            log.debug("Camera stream ended", cause);
+        }
+        end();
+    }
+
+    private void end() {
+        ended = true;
+        for (var subscription : subscriptions) {
+            subscription.end();
+        }
+    }
+
+    /**
+     * Subscribes to frames published from now on.
+     */
+    public FrameSubscription subscribe(Consumer<? super Frame> subscriber, FrameSubscriptionConfig config) {
+        var subscription = new FrameSubscription(subscriber, config, subscriptions::remove);
+        subscriptions.add(subscription);
+        if (closed) {
+            subscription.close();
+        } else if (ended) {
+            subscription.end();
+        }
+        return subscription;
+    }
+
+    /**
+     * Publishes the frame to all subscribers. It does not wait for any of them; the caller keeps its own reference.
+     */
+    @Override
+    public void onFrame(Frame frame) {
+        published.incrementAndGet();
+        for (var subscription : subscriptions) {
+            subscription.offer(frame);
+        }
+    }
+
+    /**
+     * @return subscriptions that were not closed
+     */
+    public List<FrameSubscription> getSubscriptions() {
+        return List.copyOf(subscriptions);
+    }
+
+    /**
+     * @return number of frames read from the camera
+     */
+    public long getPublishedCount() {
+        return published.get();
+    }
+
+    /**
+     * @return {@code true} while the camera is read; always {@code false} for a broadcaster without a camera
+     */
+    public synchronized boolean isReading() {
+        return reader != null && reader.isAlive();
+    }
+
+    /**
+     * Closes the camera (if the broadcaster reads one) and all subscriptions.
+     */
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            if (camera != null) {
+                camera.close();
+                Thread localReader;
+                synchronized (this) {
+                    localReader = reader;
+                }
+                if (localReader != null) {
+                    localReader.join();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (var subscription : subscriptions) {
+                subscription.close();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "FrameBroadcaster{" +
+                "published=" + published +
+                ", subscriptions=" + subscriptions +
+                '}';
+    }
+}
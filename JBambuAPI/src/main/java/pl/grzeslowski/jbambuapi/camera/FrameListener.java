@@ -0,0 +1,20 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+/**
+ * Receives frames of a camera opened in {@link CameraReactor}.
+ * <p>
+ * Methods are called on a thread of the reactor that serves many other cameras, so they should return quickly. The
+ * frame is released after {@link #onFrame(Frame)} returns; a listener that hands it over to another thread has to
+ * {@link Frame#retain()} it first.
+ */
+public interface FrameListener {
+    void onFrame(Frame frame);
+
+    /**
+     * Called once when the stream is closed.
+     *
+     * @param cause {@code null} when the stream was closed by the client or the camera ended it in an orderly way
+     */
+    default void onClosed(Throwable cause) {
+    }
+}
@@ -0,0 +1,17 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+/**
+ * Which frames a {@link FrameSubscription} delivers when its subscriber is slower than the camera.
+ */
+public enum FramePolicy {
+    /**
+     * Every frame is delivered, in order. Use it for recording. When the subscriber falls behind by more than the
+     * queue capacity, the oldest queued frame is dropped - the camera is never slowed down.
+     */
+    EVERY_FRAME,
+    /**
+     * Only the newest frame waits for the subscriber; a new frame replaces it and the replaced one is counted as
+     * dropped. Use it for live previews.
+     */
+    LATEST_FRAME
+}
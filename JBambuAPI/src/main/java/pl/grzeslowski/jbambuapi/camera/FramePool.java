@@ -0,0 +1,122 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of arrays that {@link Frame}s are read into.
+ * <p>
+ * Arrays are kept in power of two size classes, from {@value #MIN_ARRAY_SIZE} bytes up to
+ * {@link #getMaxArraySize()}. A frame gets an array of the smallest class that fits it, so frames of one camera, which
+ * are similar in size, reuse the same arrays over and over instead of allocating a new large array for every frame.
+ * Frames bigger than the largest class get an array that is not pooled. At most {@link #getMaxPooledPerClass()} free
+ * arrays are kept in every class; more are left to the GC.
+ * <p>
+ * One pool can be shared by many cameras.
+ */
+public final class FramePool {
+    public static final int MIN_ARRAY_SIZE = 4 * 1024;
+    public static final int DEFAULT_MAX_ARRAY_SIZE = 4 * 1024 * 1024;
+    public static final int DEFAULT_MAX_POOLED_PER_CLASS = 8;
+    private static final int MIN_CLASS = Integer.numberOfTrailingZeros(MIN_ARRAY_SIZE);
+
+    private final int maxArraySize;
+    private final int maxPooledPerClass;
+    private final BlockingQueue<byte[]>[] classes;
+    private final AtomicLong acquired = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    public FramePool() {
+        this(DEFAULT_MAX_ARRAY_SIZE, DEFAULT_MAX_POOLED_PER_CLASS);
+    }
+
+    /**
+     * @param maxArraySize      size of the largest pooled array, rounded up to a power of two
+     * @param maxPooledPerClass max number of free arrays kept in one size class
+     */
+    @SuppressWarnings("unchecked")
+    public FramePool(int maxArraySize, int maxPooledPerClass) {
+        if (maxArraySize < MIN_ARRAY_SIZE || maxArraySize > 1 << 30) {
+            throw new IllegalArgumentException("maxArraySize has to be between %s and %s, was %s"
+                    .formatted(MIN_ARRAY_SIZE, 1 << 30, maxArraySize));
+        }
+        if (maxPooledPerClass <= 0) {
+            throw new IllegalArgumentException("maxPooledPerClass has to be positive, was " + maxPooledPerClass);
+        }
+        this.maxPooledPerClass = maxPooledPerClass;
+        var maxClass = sizeClass(maxArraySize);
+        this.maxArraySize = 1 << maxClass;
+        classes = new BlockingQueue[maxClass - MIN_CLASS + 1];
+        for (var i = 0; i < classes.length; i++) {
+            classes[i] = new ArrayBlockingQueue<>(maxPooledPerClass);
+        }
+    }
+
+    /**
+     * @return frame with reference count {@code 1} that can hold {@code length} bytes
+     */
+    Frame acquire(int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("length has to be positive, was " + length);
+        }
+        acquired.incrementAndGet();
+        outstanding.incrementAndGet();
+        if (length > maxArraySize) {
+            return new Frame(this, new byte[length], length);
+        }
+        var sizeClass = sizeClass(length);
+        var array = classes[sizeClass - MIN_CLASS].poll();
+        if (array != null) {
+            hits.incrementAndGet();
+        } else {
+            array = new byte[1 << sizeClass];
+        }
+        return new Frame(this, array, length);
+    }
+
+    /**
+     * Called when the last reference to a frame is released.
+     */
+    void recycle(byte[] array) {
+        outstanding.decrementAndGet();
+        // arrays of frames bigger than the largest class are not pooled; any array is dropped when its class is full
+        if (array.length <= maxArraySize) {
+            classes[sizeClass(array.length) - MIN_CLASS].offer(array);
+        }
+    }
+
+    private static int sizeClass(int length) {
+        return Math.max(MIN_CLASS, 32 - Integer.numberOfLeadingZeros(length - 1));
+    }
+
+    public int getMaxArraySize() {
+        return maxArraySize;
+    }
+
+    public int getMaxPooledPerClass() {
+        return maxPooledPerClass;
+    }
+
+    public FramePoolStats stats() {
+        var pooled = 0;
+        var pooledBytes = 0L;
+        for (var i = 0; i < classes.length; i++) {
+            var size = classes[i].size();
+            pooled += size;
+            pooledBytes += (long) size << (i + MIN_CLASS);
+        }
+        return new FramePoolStats(acquired.get(), hits.get(), outstanding.get(), pooled, pooledBytes);
+    }
+
+    @Override
+    public String toString() {
+        return "FramePool{" +
+                "maxArraySize=" + maxArraySize +
+                ", maxPooledPerClass=" + maxPooledPerClass +
+                ", stats=" + stats() +
+                '}';
+    }
+}
@@ -0,0 +1,14 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+/**
+ * @param acquired    number of frames taken from the pool
+ * @param hits        frames that reused a pooled array
+ * @param outstanding frames that were not released yet
+ * @param pooled      number of free arrays in the pool
+ * @param pooledBytes size of free arrays in the pool
+ */
+public record FramePoolStats(long acquired, long hits, int outstanding, int pooled, long pooledBytes) {
+    public double hitRate() {
+        return acquired > 0 ? (double) hits / acquired : 0;
+    }
+}
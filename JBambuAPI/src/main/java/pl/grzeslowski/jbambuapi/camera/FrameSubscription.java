@@ -0,0 +1,208 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Subscriber of a {@link FrameBroadcaster} with its own queue and delivery thread.
+ * <p>
+ * Offering a frame only retains it and puts it into the queue, so the thread that reads the camera never waits for
+ * the subscriber. The subscriber gets the frame on the delivery thread; the frame is released after the subscriber
+ * returns, so it has to {@link Frame#retain()} the frame to keep it longer.
+ * <p>
+ * When the camera stream ends, frames that are already queued are delivered and then the subscription closes itself
+ * (see {@link #whenClosed()}).
+ */
+@Slf4j
+public final class FrameSubscription implements AutoCloseable {
+    private final Consumer<? super Frame> subscriber;
+    @Getter
+    private final FrameSubscriptionConfig config;
+    private final Consumer<FrameSubscription> onClose;
+    private final int capacity;
+    private final ArrayDeque<Queued> queue;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final CompletableFuture<Void> closedFuture = new CompletableFuture<>();
+    private final Thread worker;
+    private boolean closed;
+    private boolean ended;
+
+    FrameSubscription(Consumer<? super Frame> subscriber, FrameSubscriptionConfig config, Consumer<FrameSubscription> onClose) {
+        this.subscriber = requireNonNull(subscriber, "subscriber");
+        this.config = requireNonNull(config, "config");
+        this.onClose = onClose;
+        capacity = config.policy() == FramePolicy.LATEST_FRAME ? 1 : config.queueCapacity();
+        queue = new ArrayDeque<>(Math.min(capacity, 64));
+        worker = config.threadFactory().newThread(this::run);
+        worker.start();
+    }
+
+    /**
+     * Queues the frame for the subscriber. The caller keeps its own reference.
+     */
+    void offer(Frame frame) {
+        lock.lock();
+        try {
+            if (closed || ended) {
+                return;
+            }
+            if (queue.size() >= capacity) {
+                queue.pollFirst().frame().release();
+                dropped.incrementAndGet();
+            }
+            queue.addLast(new Queued(frame.retain(), System.nanoTime()));
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Marks the end of the stream: no more frames are offered, and the subscription closes once the queue is drained.
+     */
+    void end() {
+        lock.lock();
+        try {
+            ended = true;
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            Frame frame;
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !closed && !ended) {
+                    notEmpty.await();
+                }
+                if (closed) {
+                    return;
+                }
+                if (queue.isEmpty()) {
+                    break;
+                }
+                frame = queue.pollFirst().frame();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try (frame) {
+                subscriber.accept(frame);
+            } catch (Exception e) {
+                log.warn("Subscriber {} could not accept frame: {}", subscriber, frame, e);
+            }
+            delivered.incrementAndGet();
+        }
+        close();
+    }
+
+    /**
+     * @return number of frames waiting for the subscriber
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return for how long the oldest waiting frame has been in the queue, {@code 0} when the subscriber keeps up
+     */
+    public long getLagNanos() {
+        lock.lock();
+        try {
+            var oldest = queue.peekFirst();
+            return oldest != null ? System.nanoTime() - oldest.offered() : 0;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of frames that were dropped (or replaced by a newer one) because the subscriber was too slow
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of frames that were passed to the subscriber
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * @return future completed when the subscription is closed, either by {@link #close()} or after the end of the
+     * camera stream
+     */
+    public CompletableFuture<Void> whenClosed() {
+        return closedFuture.copy();
+    }
+
+    public boolean isClosed() {
+        lock.lock();
+        try {
+            return closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Stops the delivery thread and unsubscribes from the broadcaster. Frames that are still in the queue are
+     * released; the frame that is currently being delivered is not interrupted.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            for (var queued : queue) {
+                queued.frame().release();
+            }
+            queue.clear();
+            notEmpty.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        onClose.accept(this);
+        closedFuture.complete(null);
+    }
+
+    @Override
+    public String toString() {
+        return "FrameSubscription{" +
+                "subscriber=" + subscriber +
+                ", policy=" + config.policy() +
+                ", queueDepth=" + getQueueDepth() +
+                ", delivered=" + delivered +
+                ", dropped=" + dropped +
+                '}';
+    }
+
+    private record Queued(Frame frame, long offered) {
+    }
+}
@@ -0,0 +1,43 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import java.util.concurrent.ThreadFactory;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @param policy        which frames are delivered to a slow subscriber
+ * @param queueCapacity max number of frames waiting for the subscriber; {@link FramePolicy#LATEST_FRAME} always keeps
+ *                      one
+ * @param threadFactory creates the thread that delivers frames to the subscriber
+ */
+public record FrameSubscriptionConfig(FramePolicy policy, int queueCapacity, ThreadFactory threadFactory) {
+    public static final int DEFAULT_QUEUE_CAPACITY = 64;
+    /**
+     * Shared by all default configs, so subscriber threads are numbered one after another.
+     */
+    private static final ThreadFactory DEFAULT_THREAD_FACTORY =
+            Thread.ofVirtual().name("jbambuapi-frame-subscriber-", 0).factory();
+
+    public FrameSubscriptionConfig {
+        requireNonNull(policy, "policy");
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity has to be positive, was " + queueCapacity);
+        }
+        requireNonNull(threadFactory, "threadFactory");
+    }
+
+    /**
+     * Builds config that delivers frames on a virtual thread.
+     */
+    public static FrameSubscriptionConfig withPolicy(FramePolicy policy) {
+        return new FrameSubscriptionConfig(policy, DEFAULT_QUEUE_CAPACITY, DEFAULT_THREAD_FACTORY);
+    }
+
+    public static FrameSubscriptionConfig everyFrame() {
+        return withPolicy(FramePolicy.EVERY_FRAME);
+    }
+
+    public static FrameSubscriptionConfig latestFrame() {
+        return withPolicy(FramePolicy.LATEST_FRAME);
+    }
+}
@@ -0,0 +1,249 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Serves cameras of many printers as MJPEG over HTTP to any number of viewers.
+ * <p>
+ * Every camera is read by one {@link FrameBroadcaster}, so the printer sees a single connection however many viewers
+ * there are. A frame is read once into a pooled array and the same {@link Frame} is written to every viewer, each of
+ * which is a {@link FramePolicy#LATEST_FRAME} subscription: a viewer on a slow network skips frames instead of falling
+ * behind or slowing down others. When the camera stream ends, its viewers are disconnected.
+ * <pre>{@code
+ * try (var server = new MjpegServer(new InetSocketAddress(8080))) {
+ *     camera.connect();
+ *     server.addCamera("SERIAL", camera);
+ *     server.start();
+ *     // open http://localhost:8080/camera/SERIAL in a browser
+ * }
+ * }</pre>
+ */
+@Slf4j
+public final class MjpegServer implements AutoCloseable {
+    public static final String CONTEXT = "/camera/";
+    private static final String BOUNDARY = "jbambuapi-frame";
+    private static final byte[] PART_END = "\r\n".getBytes(US_ASCII);
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Map<String, Stream> streams = new ConcurrentHashMap<>();
+
+    public MjpegServer(InetSocketAddress address) throws IOException {
+        server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext(CONTEXT, this::handle);
+    }
+
+    /**
+     * Starts serving a connected camera under {@code /camera/<name>}. The server owns the camera from now on.
+     */
+    public void addCamera(String name, TlsCamera camera) {
+        var broadcaster = new FrameBroadcaster(camera);
+        addCamera(name, broadcaster, true);
+        broadcaster.start();
+    }
+
+    /**
+     * Serves frames published to the broadcaster under {@code /camera/<name>}. The broadcaster is not closed by the
+     * server.
+     */
+    public void addCamera(String name, FrameBroadcaster broadcaster) {
+        addCamera(name, broadcaster, false);
+    }
+
+    private void addCamera(String name, FrameBroadcaster broadcaster, boolean owned) {
+        requireNonNull(name, "name");
+        requireNonNull(broadcaster, "broadcaster");
+        if (name.isEmpty() || name.contains("/")) {
+            throw new IllegalArgumentException("name has to be a non empty path segment, was " + name);
+        }
+        if (streams.putIfAbsent(name, new Stream(broadcaster, owned)) != null) {
+            throw new IllegalArgumentException("Camera " + name + " is already served");
+        }
+    }
+
+    /**
+     * Disconnects viewers of the camera and stops serving it.
+     */
+    public void removeCamera(String name) throws IOException {
+        var stream = streams.remove(name);
+        if (stream != null) {
+            stream.close();
+        }
+    }
+
+    public void start() {
+        server.start();
+        log.info("Serving MJPEG on {}", server.getAddress());
+    }
+
+    /**
+     * @return address of the stream of the camera
+     */
+    public URI uri(String name) {
+        var address = server.getAddress();
+        return URI.create("http://%s:%s%s%s".formatted(
+                address.getAddress().getHostAddress(), address.getPort(), CONTEXT, name));
+    }
+
+    /**
+     * @return viewer counts and per viewer lag of every served camera
+     */
+    public List<MjpegStats> stats() {
+        return streams.entrySet()
+                .stream()
+                .map(entry -> entry.getValue().stats(entry.getKey()))
+                .toList();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            var name = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+            var stream = streams.get(name);
+            if (stream == null || !exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(stream == null ? 404 : 405, -1);
+                return;
+            }
+            var headers = exchange.getResponseHeaders();
+            headers.set("Content-Type", "multipart/x-mixed-replace; boundary=" + BOUNDARY);
+            headers.set("Cache-Control", "no-cache, no-store");
+            exchange.sendResponseHeaders(200, 0);
+            var viewer = new Viewer(stream, exchange.getRemoteAddress().toString(), exchange.getResponseBody());
+            stream.watch(viewer);
+            // the exchange stays open until the viewer goes away or the camera is removed
+            viewer.closed.join();
+        }
+    }
+
+    /**
+     * Disconnects all viewers, stops the HTTP server and closes cameras passed as {@link TlsCamera}.
+     */
+    @Override
+    public void close() throws IOException {
+        server.stop(0);
+        for (var name : List.copyOf(streams.keySet())) {
+            removeCamera(name);
+        }
+        executor.close();
+    }
+
+    private static final class Stream {
+        private final FrameBroadcaster broadcaster;
+        private final boolean owned;
+        private final Set<Viewer> viewers = ConcurrentHashMap.newKeySet();
+        private volatile Part part;
+        private volatile boolean closed;
+
+        private Stream(FrameBroadcaster broadcaster, boolean owned) {
+            this.broadcaster = broadcaster;
+            this.owned = owned;
+        }
+
+        void watch(Viewer viewer) {
+            viewers.add(viewer);
+            viewer.closed.whenComplete((__, ___) -> viewers.remove(viewer));
+            var subscription = broadcaster.subscribe(viewer::write, FrameSubscriptionConfig.latestFrame());
+            viewer.subscription = subscription;
+            // the broadcaster closes the subscription when the camera stream ends
+            subscription.whenClosed().thenRun(viewer::close);
+            // close() could have run after the viewer was added, but before it got its subscription
+            if (closed || viewer.closed.isDone()) {
+                viewer.close();
+            }
+        }
+
+        /**
+         * @return multipart header of the frame, built once and shared by all viewers
+         */
+        byte[] partHeader(Frame frame) {
+            var local = part;
+            if (local == null || local.frame() != frame) {
+                var header = "--" + BOUNDARY + "\r\n"
+                        + "Content-Type: image/jpeg\r\n"
+                        + "Content-Length: " + frame.length() + "\r\n\r\n";
+                local = new Part(frame, header.getBytes(US_ASCII));
+                part = local;
+            }
+            return local.header();
+        }
+
+        MjpegStats stats(String name) {
+            var viewerStats = viewers.stream()
+                    .filter(viewer -> viewer.subscription != null)
+                    .map(viewer -> new MjpegStats.ViewerStats(
+                            viewer.address,
+                            viewer.subscription.getDeliveredCount(),
+                            viewer.subscription.getDroppedCount(),
+                            viewer.subscription.getLagNanos()))
+                    .toList();
+            return new MjpegStats(name, broadcaster.getPublishedCount(), viewerStats);
+        }
+
+        void close() throws IOException {
+            closed = true;
+            for (var viewer : viewers) {
+                viewer.close();
+            }
+            if (owned) {
+                broadcaster.close();
+            }
+        }
+
+        private record Part(Frame frame, byte[] header) {
+        }
+    }
+
+    private static final class Viewer {
+        private final Stream stream;
+        private final String address;
+        private final OutputStream out;
+        private final CompletableFuture<Void> closed = new CompletableFuture<>();
+        private volatile FrameSubscription subscription;
+
+        private Viewer(Stream stream, String address, OutputStream out) {
+            this.stream = stream;
+            this.address = address;
+            this.out = out;
+        }
+
+        /**
+         * Called on the thread of the subscription, so a viewer on a slow network only blocks itself.
+         */
+        void write(Frame frame) {
+            try {
+                out.write(stream.partHeader(frame));
+                frame.writeTo(out);
+                out.write(PART_END);
+                out.flush();
+            } catch (IOException e) {
+                log.debug("Viewer {} disconnected", address, e);
+                close();
+            }
+        }
+
+        void close() {
+            var localSubscription = subscription;
+            if (localSubscription != null) {
+                localSubscription.close();
+            }
+            closed.complete(null);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import java.util.List;
+
+/**
+ * @param camera  name of the camera in {@link MjpegServer}
+ * @param frames  number of frames read from the camera
+ * @param viewers viewers watching the camera right now
+ */
+public record MjpegStats(String camera, long frames, List<ViewerStats> viewers) {
+    public int viewerCount() {
+        return viewers.size();
+    }
+
+    /**
+     * @return lag of the viewer that is the most behind, in nanoseconds
+     */
+    public long maxLagNanos() {
+        return viewers.stream().mapToLong(ViewerStats::lagNanos).max().orElse(0);
+    }
+
+    /**
+     * @param address   remote address of the viewer
+     * @param delivered frames written to the viewer
+     * @param dropped   frames skipped because the viewer was still busy with a previous one
+     * @param lagNanos  for how long the newest frame has been waiting for the viewer
+     */
+    public record ViewerStats(String address, long delivered, long dropped, long lagNanos) {
+    }
+}
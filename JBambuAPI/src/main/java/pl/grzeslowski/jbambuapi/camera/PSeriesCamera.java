@@ -4,4 +4,8 @@ public class PSeriesCamera extends TlsCamera {
     public PSeriesCamera(CameraConfig cameraConfig) {
         super(cameraConfig);
     }
+
+    public PSeriesCamera(CameraConfig cameraConfig, FramePool framePool) {
+        super(cameraConfig, framePool);
+    }
 }
@@ -1,8 +1,11 @@
 package pl.grzeslowski.jbambuapi.camera;
 
+import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.grzeslowski.jbambuapi.jfr.CameraFrameEvent;
+import pl.grzeslowski.jbambuapi.metrics.Metrics;
 
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.TrustManagerFactory;
@@ -24,6 +27,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import static java.nio.ByteOrder.LITTLE_ENDIAN;
 import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.util.Objects.requireNonNull;
 
 /**
  * This object supports camera for A-series and P-series (without X-series)
@@ -35,12 +39,22 @@ public abstract class TlsCamera implements AutoCloseable, Iterable<byte[]> {
     public static final byte END_MAGIC_NUMBER = (byte) 0xD8;
     private final Logger log;
     private final CameraConfig cameraConfig;
+    @Getter
+    private final FramePool framePool;
     private Socket socket;
     private final ReadWriteLock socketLock = new ReentrantReadWriteLock();
 
     public TlsCamera(CameraConfig cameraConfig) {
+        this(cameraConfig, new FramePool());
+    }
+
+    /**
+     * @param framePool pool that frames are read into; it can be shared with other cameras
+     */
+    public TlsCamera(CameraConfig cameraConfig, FramePool framePool) {
         log = LoggerFactory.getLogger(getClass() + "." + cameraConfig.host().replaceAll("\\.", "_"));
         this.cameraConfig = cameraConfig;
+        this.framePool = requireNonNull(framePool, "framePool");
     }
 
     public void connect() throws IOException, CertificateException, KeyStoreException, NoSuchAlgorithmException, KeyManagementException {
@@ -75,8 +89,16 @@ public abstract class TlsCamera implements AutoCloseable, Iterable<byte[]> {
     }
 
     public SSLContext createSSLContext() throws CertificateException, KeyStoreException, IOException, NoSuchAlgorithmException, KeyManagementException {
+        return createSSLContext(cameraConfig.certificate());
+    }
+
+    /**
+     * @param pemCertificate certificate of the printer in PEM format
+     * @return context that trusts only the given certificate
+     */
+    static SSLContext createSSLContext(String pemCertificate) throws CertificateException, KeyStoreException, IOException, NoSuchAlgorithmException, KeyManagementException {
         var certFactory = CertificateFactory.getInstance("X.509");
-        var rawCert = cameraConfig.certificate().replaceAll("-----BEGIN CERTIFICATE-----|-----END CERTIFICATE-----|\\s", "");
+        var rawCert = pemCertificate.replaceAll("-----BEGIN CERTIFICATE-----|-----END CERTIFICATE-----|\\s", "");
         var certInput = new ByteArrayInputStream(
                 Base64.getMimeDecoder().decode(rawCert)
         );
@@ -96,6 +118,15 @@ public abstract class TlsCamera implements AutoCloseable, Iterable<byte[]> {
 
     private void authenticate(OutputStream out) throws IOException {
         log.debug("Authenticating");
+        out.write(authenticationPacket(cameraConfig).array());
+        out.flush();
+        log.debug("Authentication packet sent");
+    }
+
+    /**
+     * @return 80 byte packet that a client sends right after connecting, ready to be read
+     */
+    static ByteBuffer authenticationPacket(CameraConfig cameraConfig) {
         var buffer = ByteBuffer.allocate(80).order(LITTLE_ENDIAN);
         buffer.putInt(0x40); // Payload size
         buffer.putInt(0x3000); // Type
@@ -107,20 +138,20 @@ public abstract class TlsCamera implements AutoCloseable, Iterable<byte[]> {
 
         buffer.put(usernameBytes);
         buffer.put(passwordBytes);
-
-        out.write(buffer.array());
-        out.flush();
-        log.debug("Authentication packet sent");
+        return buffer.flip();
     }
 
-    @Override
-    public Iterator<byte[]> iterator() {
+    /**
+     * Returns an iterator over frames read into arrays of the {@link FramePool} of this camera. Every returned frame
+     * has to be released.
+     */
+    public Iterator<Frame> frames() {
         socketLock.readLock().lock();
         try {
             if (socket == null) {
                 throw new IllegalStateException("Camera is not connected! Please use `connect` method before!");
             }
-            return new ImageIterator(new DataInputStream(socket.getInputStream()));
+            return new FrameIterator(new DataInputStream(socket.getInputStream()));
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         } finally {
@@ -128,6 +159,29 @@ public abstract class TlsCamera implements AutoCloseable, Iterable<byte[]> {
         }
     }
 
+    /**
+     * Returns an iterator over copies of frames, which callers own and never release.
+     *
+     * @see #frames()
+     */
+    @Override
+    public Iterator<byte[]> iterator() {
+        var frames = frames();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return frames.hasNext();
+            }
+
+            @Override
+            public byte[] next() {
+                try (var frame = frames.next()) {
+                    return frame.toByteArray();
+                }
+            }
+        };
+    }
+
     @Override
     public void close() throws IOException {
         socketLock.writeLock().lock();
@@ -143,8 +197,10 @@ public abstract class TlsCamera implements AutoCloseable, Iterable<byte[]> {
     }
 
     @RequiredArgsConstructor
-    private class ImageIterator implements Iterator<byte[]> {
+    private class FrameIterator implements Iterator<Frame> {
         private final DataInputStream in;
+        private final byte[] header = new byte[16];
+        private final ByteBuffer headerBuffer = ByteBuffer.wrap(header).order(LITTLE_ENDIAN);
 
         @Override
         public boolean hasNext() {
@@ -152,11 +208,27 @@ public abstract class TlsCamera implements AutoCloseable, Iterable<byte[]> {
         }
 
         @Override
-        public byte[] next() {
-            socketLock.readLock().lock();
+        public Frame next() {
             try {
-                return internalNext();
+                socketLock.readLock().lock();
+                try {
+                    var event = new CameraFrameEvent();
+                    event.begin();
+                    var start = System.nanoTime();
+                    var frame = internalNext();
+                    Metrics.recorder().frameRead(cameraConfig.host(), frame.length(), System.nanoTime() - start);
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.host = cameraConfig.host();
+                        event.bytes = frame.length();
+                        event.commit();
+                    }
+                    return frame;
+                } finally {
+                    socketLock.readLock().unlock();
+                }
             } catch (Exception e) {
+                // closing takes the write lock, so the read lock has to be released before
                 try {
                     TlsCamera.this.close();
                 } catch (Exception ex) {
@@ -166,45 +238,40 @@ public abstract class TlsCamera implements AutoCloseable, Iterable<byte[]> {
                     throw nse;
                 }
                 throw new NoSuchElementException(e);
-            } finally {
-                socketLock.readLock().unlock();
             }
         }
 
-        private byte[] internalNext() throws IOException {
+        private Frame internalNext() throws IOException {
             log.debug("Reading next image...");
-            byte[] header = new byte[16];
             in.readFully(header);
 
-            var buffer = ByteBuffer.wrap(header).order(LITTLE_ENDIAN);
-            int payloadSize = buffer.getInt();
-            int itrack = buffer.getInt();
-            int flags = buffer.getInt();
-            int reserved = buffer.getInt();
+            int payloadSize = headerBuffer.getInt(0);
+            int itrack = headerBuffer.getInt(4);
+            int flags = headerBuffer.getInt(8);
+            int reserved = headerBuffer.getInt(12);
 
             if (payloadSize <= 0) {
                 throw new NoSuchElementException("There is no payload! Breaking connection!");
             }
 
-            var imageData = new byte[payloadSize];
-            var bytesRead = 0;
-            while (bytesRead < payloadSize) {
-                int result = in.read(imageData, bytesRead, payloadSize - bytesRead);
-                if (result == -1) {
-                    log.error("End of stream reached. Breaking connection!");
-                    break;
-                }
-                bytesRead += result;
-            }
+            var frame = framePool.acquire(payloadSize);
+            try {
+                var imageData = frame.array();
+                // pooled array can hold a previous frame, so a partially read frame cannot be returned
+                in.readFully(imageData, 0, payloadSize);
 
-            if (imageData.length <= 2
-                    || imageData[0] != START_MAGIC_NUMBER
-                    || imageData[1] != END_MAGIC_NUMBER) {
-                throw new NoSuchElementException("Invalid image data.");
+                if (payloadSize <= 2
+                        || imageData[0] != START_MAGIC_NUMBER
+                        || imageData[1] != END_MAGIC_NUMBER) {
+                    throw new NoSuchElementException("Invalid image data.");
+                }
+            } catch (IOException | RuntimeException e) {
+                frame.release();
+                throw e;
             }
 
-            log.debug("JPEG image received, size: " + imageData.length);
-            return imageData;
+            log.debug("JPEG image received, size: {}", payloadSize);
+            return frame;
         }
     }
 }
@@ -0,0 +1,37 @@
+package pl.grzeslowski.jbambuapi.dispatch;
+
+import java.util.concurrent.ThreadFactory;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @param queueCapacity  max number of events waiting for the subscriber
+ * @param overflowPolicy what to do when the queue is full
+ * @param threadFactory  creates the thread that delivers events to the subscriber
+ */
+public record DispatchConfig(int queueCapacity, OverflowPolicy overflowPolicy, ThreadFactory threadFactory) {
+    public static final int DEFAULT_QUEUE_CAPACITY = 1_024;
+    public static final OverflowPolicy DEFAULT_OVERFLOW_POLICY = OverflowPolicy.DROP_OLDEST;
+
+    public DispatchConfig {
+        if (queueCapacity <= 0) {
+            throw new IllegalArgumentException("queueCapacity has to be positive, was " + queueCapacity);
+        }
+        requireNonNull(overflowPolicy, "overflowPolicy");
+        requireNonNull(threadFactory, "threadFactory");
+    }
+
+    /**
+     * Builds config that delivers events on a virtual thread.
+     */
+    public static DispatchConfig buildDefault() {
+        return withPolicy(DEFAULT_OVERFLOW_POLICY);
+    }
+
+    public static DispatchConfig withPolicy(OverflowPolicy overflowPolicy) {
+        return new DispatchConfig(
+                DEFAULT_QUEUE_CAPACITY,
+                overflowPolicy,
+                Thread.ofVirtual().name("jbambuapi-dispatch-", 0).factory());
+    }
+}
@@ -0,0 +1,164 @@
+package pl.grzeslowski.jbambuapi.dispatch;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Delivers events to a single subscriber on its own thread, through a bounded queue.
+ * <p>
+ * The producer only enqueues the event, so a slow subscriber never stalls the thread that produced it (unless
+ * {@link OverflowPolicy#BLOCK} is used). Events are delivered one by one, in the order they were accepted.
+ *
+ * @param <E> type of event
+ */
+@Slf4j
+public final class Dispatcher<E> implements AutoCloseable {
+    private final Consumer<? super E> subscriber;
+    @Getter
+    private final DispatchConfig config;
+    private final ArrayDeque<E> queue;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final Thread worker;
+    private boolean closed;
+
+    public Dispatcher(Consumer<? super E> subscriber, DispatchConfig config) {
+        this.subscriber = requireNonNull(subscriber, "subscriber");
+        this.config = requireNonNull(config, "config");
+        this.queue = new ArrayDeque<>(Math.min(config.queueCapacity(), 64));
+        this.worker = config.threadFactory().newThread(this::run);
+        this.worker.start();
+    }
+
+    /**
+     * Enqueues the event for the subscriber. When the queue is full {@link DispatchConfig#overflowPolicy()} decides
+     * what happens. Events offered after {@link #close()} are ignored.
+     */
+    public void offer(E event) {
+        requireNonNull(event, "event");
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            switch (config.overflowPolicy()) {
+                case BLOCK -> {
+                    while (queue.size() >= config.queueCapacity() && !closed) {
+                        notFull.await();
+                    }
+                    if (closed) {
+                        return;
+                    }
+                }
+                case DROP_OLDEST -> {
+                    if (queue.size() >= config.queueCapacity()) {
+                        queue.pollFirst();
+                        dropped.incrementAndGet();
+                    }
+                }
+                case CONFLATE -> {
+                    dropped.addAndGet(queue.size());
+                    queue.clear();
+                }
+            }
+            queue.addLast(event);
+            notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            dropped.incrementAndGet();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            E event;
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !closed) {
+                    notEmpty.await();
+                }
+                if (closed) {
+                    return;
+                }
+                event = queue.pollFirst();
+                notFull.signal();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            try {
+                subscriber.accept(event);
+            } catch (Exception e) {
+                log.warn("Subscriber {} could not accept event: {}", subscriber, event, e);
+            }
+            delivered.incrementAndGet();
+        }
+    }
+
+    /**
+     * @return number of events waiting for the subscriber
+     */
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return number of events that were dropped (or replaced by a newer one) because the queue was full
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return number of events that were passed to the subscriber
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Stops the delivery thread. Events that are still in the queue are discarded; the event that is currently being
+     * delivered is not interrupted.
+     */
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            queue.clear();
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Dispatcher{" +
+                "subscriber=" + subscriber +
+                ", queueDepth=" + getQueueDepth() +
+                ", delivered=" + delivered +
+                ", dropped=" + dropped +
+                '}';
+    }
+}
@@ -0,0 +1,21 @@
+package pl.grzeslowski.jbambuapi.dispatch;
+
+/**
+ * What {@link Dispatcher} does with a new event when the subscriber queue is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * Producer waits until there is a free slot in the queue. Nothing is lost, but a slow subscriber slows down the
+     * producer (e.g. MQTT callback thread).
+     */
+    BLOCK,
+    /**
+     * The oldest queued event is dropped to make room for the new one.
+     */
+    DROP_OLDEST,
+    /**
+     * All queued events are dropped and only the newest one is kept. Use it when only the latest value matters, like
+     * the full printer state.
+     */
+    CONFLATE
+}
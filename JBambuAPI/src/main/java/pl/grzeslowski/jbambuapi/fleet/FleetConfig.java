@@ -0,0 +1,43 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @param callbackThreads       max number of threads delivering messages to fleet subscribers, for all printers together
+ * @param callbackQueueCapacity max number of messages of one printer waiting for fleet subscribers; newer messages are
+ *                              dropped when it is full
+ * @param pingThreads           threads sending keep alive pings of all printers
+ * @param reconnect             how printers are connected and reconnected
+ * @param pushall               how full state of printers is requested and refreshed
+ */
+public record FleetConfig(int callbackThreads, int callbackQueueCapacity, int pingThreads, ReconnectConfig reconnect,
+                          PushallConfig pushall) {
+    public static final int DEFAULT_CALLBACK_QUEUE_CAPACITY = 256;
+    public static final int DEFAULT_PING_THREADS = 1;
+
+    public FleetConfig {
+        if (callbackThreads <= 0) {
+            throw new IllegalArgumentException("callbackThreads has to be positive, was " + callbackThreads);
+        }
+        if (callbackQueueCapacity <= 0) {
+            throw new IllegalArgumentException("callbackQueueCapacity has to be positive, was " + callbackQueueCapacity);
+        }
+        if (pingThreads <= 0) {
+            throw new IllegalArgumentException("pingThreads has to be positive, was " + pingThreads);
+        }
+        requireNonNull(reconnect, "reconnect");
+        requireNonNull(pushall, "pushall");
+    }
+
+    /**
+     * Builds config with one callback thread per available processor.
+     */
+    public static FleetConfig buildDefault() {
+        return new FleetConfig(
+                Runtime.getRuntime().availableProcessors(),
+                DEFAULT_CALLBACK_QUEUE_CAPACITY,
+                DEFAULT_PING_THREADS,
+                ReconnectConfig.buildDefault(),
+                PushallConfig.buildDefault());
+    }
+}
@@ -0,0 +1,32 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import java.util.List;
+
+/**
+ * Health of all printers in a {@link PrinterFleet}.
+ *
+ * @param printers  health of every printer
+ * @param connected number of connected printers
+ * @param messages  number of messages received from all printers
+ * @param dropped   number of messages not delivered to fleet subscribers
+ * @param reconnect connection attempts, losses and times to recover of all printers
+ */
+public record FleetHealth(List<PrinterHealth> printers, int connected, long messages, long dropped,
+                          ReconnectStats reconnect) {
+    public FleetHealth {
+        printers = List.copyOf(printers);
+    }
+
+    static FleetHealth of(List<PrinterHealth> printers) {
+        return new FleetHealth(
+                printers,
+                (int) printers.stream().filter(PrinterHealth::connected).count(),
+                printers.stream().mapToLong(PrinterHealth::messages).sum(),
+                printers.stream().mapToLong(PrinterHealth::dropped).sum(),
+                ReconnectStats.sum(printers.stream().map(PrinterHealth::reconnect).toList()));
+    }
+
+    public int disconnected() {
+        return printers.size() - connected;
+    }
+}
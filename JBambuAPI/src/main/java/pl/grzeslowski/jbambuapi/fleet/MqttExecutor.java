@@ -0,0 +1,64 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Executor shared by MQTT connections of all printers in a fleet.
+ * <p>
+ * Paho schedules keep alive pings and submits the long-running network reader, writer and callback loop of every
+ * connection. Pings run on a few scheduler threads; loops are executed by a cached pool, so they never wait behind each
+ * other and their threads are reused when a printer reconnects.
+ * <p>
+ * Loops run on platform threads: they block in {@link Object#wait()}, which pins a virtual thread to its carrier, so
+ * a few hundred connections would starve the carrier pool.
+ */
+final class MqttExecutor extends ScheduledThreadPoolExecutor {
+    private final ExecutorService loops;
+
+    MqttExecutor(int pingThreads) {
+        super(pingThreads, Thread.ofPlatform().daemon().name("jbambuapi-fleet-ping-", 0).factory());
+        loops = Executors.newCachedThreadPool(Thread.ofPlatform().daemon().name("jbambuapi-fleet-mqtt-", 0).factory());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        loops.execute(command);
+    }
+
+    @Override
+    public Future<?> submit(Runnable task) {
+        return loops.submit(task);
+    }
+
+    @Override
+    public <T> Future<T> submit(Runnable task, T result) {
+        return loops.submit(task, result);
+    }
+
+    @Override
+    public <T> Future<T> submit(Callable<T> task) {
+        return loops.submit(task);
+    }
+
+    @Override
+    public void shutdown() {
+        super.shutdown();
+        loops.shutdown();
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        var pending = new ArrayList<>(super.shutdownNow());
+        pending.addAll(loops.shutdownNow());
+        return pending;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        var deadline = System.nanoTime() + unit.toNanos(timeout);
+        return super.awaitTermination(timeout, unit)
+               && loops.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+}
@@ -0,0 +1,309 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import pl.grzeslowski.jbambuapi.mqtt.ChannelMessageConsumer;
+import pl.grzeslowski.jbambuapi.mqtt.CommunicationException;
+import pl.grzeslowski.jbambuapi.mqtt.ConnectionCallback;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClient;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClientConfig;
+
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Manages many printers that share threads, JSON mappers and the TLS socket factory.
+ * <p>
+ * Every {@link PrinterClient} of the fleet runs its MQTT connection on one shared executor: keep alive pings of all
+ * printers are sent by {@link FleetConfig#pingThreads()} threads and connections do not persist messages on disk.
+ * Fleet subscribers get messages of all printers on a bounded pool of {@link FleetConfig#callbackThreads()} threads;
+ * messages of one printer are delivered in order and never concurrently, and a slow subscriber never blocks MQTT
+ * connections. Printers are connected and kept connected by a {@link ReconnectSupervisor}, and their full state is
+ * requested and periodically refreshed by a {@link PushallScheduler}.
+ * <pre>{@code
+ * try (var fleet = new PrinterFleet(FleetConfig.buildDefault())) {
+ *     fleet.add(PrinterClientConfig.buildDefault("192.168.0.10", "SERIAL-1", accessCode1));
+ *     fleet.add(PrinterClientConfig.buildDefault("192.168.0.11", "SERIAL-2", accessCode2));
+ *     fleet.subscribe((topic, data) -> journal.consume(topic, data));
+ *     fleet.connectAll();
+ *     // later
+ *     log.info("{} of {} printers are connected", fleet.health().connected(), fleet.size());
+ * }
+ * }</pre>
+ * Consumers subscribed directly to a {@link PrinterClient} are still called on its MQTT callback thread.
+ */
+@Slf4j
+public final class PrinterFleet implements AutoCloseable {
+    /**
+     * Max number of messages delivered by one task, so printers with many messages do not starve the others.
+     */
+    private static final int DRAIN_BATCH = 64;
+
+    @Getter
+    private final FleetConfig config;
+    private final MqttExecutor mqttExecutor;
+    private final ExecutorService callbacks;
+    private final PushallScheduler pushall;
+    private final ReconnectSupervisor supervisor;
+    private final Map<String, Member> members = new ConcurrentHashMap<>();
+    private final List<ChannelMessageConsumer> subscribers = new CopyOnWriteArrayList<>();
+
+    public PrinterFleet(FleetConfig config) {
+        this.config = requireNonNull(config, "config");
+        mqttExecutor = new MqttExecutor(config.pingThreads());
+        callbacks = Executors.newFixedThreadPool(
+                config.callbackThreads(),
+                Thread.ofPlatform().daemon().name("jbambuapi-fleet-callback-", 0).factory());
+        pushall = new PushallScheduler(config.pushall());
+        supervisor = new ReconnectSupervisor(config.reconnect(), pushall::resync);
+    }
+
+    /**
+     * Adds the printer to the fleet. The printer is not connected.
+     *
+     * @throws IllegalArgumentException when there already is a printer with the same serial
+     */
+    public PrinterClient add(PrinterClientConfig printerConfig) {
+        requireNonNull(printerConfig, "printerConfig");
+        var member = members.compute(printerConfig.serial(), (serial, existing) -> {
+            if (existing != null) {
+                throw new IllegalArgumentException("Printer %s is already in the fleet!".formatted(serial));
+            }
+            return new Member(serial, PrinterClient.withExecutor(printerConfig, mqttExecutor));
+        });
+        member.client.subscribe(member);
+        pushall.register(member.client);
+        return member.client;
+    }
+
+    public Optional<PrinterClient> find(String serial) {
+        return Optional.ofNullable(members.get(serial)).map(member -> member.client);
+    }
+
+    public Set<String> serials() {
+        return Collections.unmodifiableSet(members.keySet());
+    }
+
+    public int size() {
+        return members.size();
+    }
+
+    /**
+     * Starts connecting the printer in the background and keeps it connected until it is removed. Errors are available
+     * in {@link PrinterHealth#lastError()}.
+     */
+    public void connect(String serial) {
+        member(serial).supervise();
+    }
+
+    /**
+     * Starts connecting all printers that are not connected yet; first connects are staggered by
+     * {@link ReconnectConfig#startupStagger()}.
+     *
+     * @see #connect(String)
+     */
+    public void connectAll() {
+        members.values().forEach(Member::supervise);
+    }
+
+    /**
+     * Closes the printer and removes it from the fleet.
+     *
+     * @return {@code false} if there was no printer with the serial
+     */
+    public boolean remove(String serial) {
+        var member = members.remove(serial);
+        if (member == null) {
+            return false;
+        }
+        supervisor.unsupervise(member.client);
+        pushall.unregister(member.client);
+        member.close();
+        return true;
+    }
+
+    /**
+     * Subscribes to messages of all printers. The serial of the printer is part of the topic
+     * ({@code device/<serial>/report}).
+     */
+    public void subscribe(ChannelMessageConsumer subscriber) {
+        subscribers.add(requireNonNull(subscriber, "subscriber"));
+    }
+
+    public boolean unsubscribe(ChannelMessageConsumer subscriber) {
+        return subscribers.remove(subscriber);
+    }
+
+    /**
+     * Asks the printer for full state. Requests are merged, so use it instead of sending {@code pushall} directly.
+     *
+     * @see PushallScheduler#request(PrinterClient)
+     */
+    public CompletableFuture<Void> requestFullState(String serial) {
+        return pushall.request(member(serial).client);
+    }
+
+    public PushallStats pushallStats() {
+        return pushall.stats();
+    }
+
+    public PrinterHealth health(String serial) {
+        return member(serial).health();
+    }
+
+    public FleetHealth health() {
+        return FleetHealth.of(members.values().stream().map(Member::health).toList());
+    }
+
+    private Member member(String serial) {
+        var member = members.get(serial);
+        if (member == null) {
+            throw new IllegalArgumentException("There is no printer %s in the fleet!".formatted(serial));
+        }
+        return member;
+    }
+
+    @Override
+    public void close() {
+        supervisor.close();
+        pushall.close();
+        members.values().forEach(Member::close);
+        members.clear();
+        subscribers.clear();
+        callbacks.shutdown();
+        mqttExecutor.shutdown();
+    }
+
+    @Override
+    public String toString() {
+        return "PrinterFleet{" +
+                "config=" + config +
+                ", printers=" + members.size() +
+                '}';
+    }
+
+    private record Message(String topic, byte[] data) {
+    }
+
+    /**
+     * Printer in the fleet with its health counters and the queue of messages for fleet subscribers.
+     */
+    private final class Member implements ChannelMessageConsumer, ConnectionCallback {
+        final String serial;
+        final PrinterClient client;
+        final BlockingQueue<Message> queue = new ArrayBlockingQueue<>(config.callbackQueueCapacity());
+        final AtomicBoolean draining = new AtomicBoolean();
+        final AtomicLong messages = new AtomicLong();
+        final AtomicLong dropped = new AtomicLong();
+        final AtomicBoolean supervised = new AtomicBoolean();
+        volatile long lastMessageMillis;
+        volatile Throwable lastError;
+
+        Member(String serial, PrinterClient client) {
+            this.serial = serial;
+            this.client = client;
+        }
+
+        void supervise() {
+            if (supervised.compareAndSet(false, true)) {
+                supervisor.supervise(client, this);
+            }
+        }
+
+        @Override
+        public void connectComplete(boolean reconnect) {
+            log.debug("Printer {} connected, reconnect={}", serial, reconnect);
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+            lastError = cause;
+            log.warn("Lost connection to printer {}", serial, cause);
+        }
+
+        @Override
+        public void connectFailed(Throwable cause) {
+            lastError = cause;
+        }
+
+        @Override
+        public void consume(String topic, byte[] data) {
+            messages.incrementAndGet();
+            lastMessageMillis = System.currentTimeMillis();
+            if (subscribers.isEmpty()) {
+                return;
+            }
+            if (!queue.offer(new Message(topic, data))) {
+                dropped.incrementAndGet();
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    callbacks.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    // fleet is closed
+                    queue.clear();
+                }
+            }
+        }
+
+        private void drain() {
+            for (var i = 0; i < DRAIN_BATCH; i++) {
+                var message = queue.poll();
+                if (message == null) {
+                    break;
+                }
+                deliver(message);
+            }
+            draining.set(false);
+            // a message could have been offered after the last poll but before draining was reset
+            if (!queue.isEmpty()) {
+                schedule();
+            }
+        }
+
+        private void deliver(Message message) {
+            for (var subscriber : subscribers) {
+                try {
+                    subscriber.consume(message.topic(), message.data());
+                } catch (Exception e) {
+                    if (log.isWarnEnabled()) {
+                        log.warn("Fleet subscriber {} could not accept message: {}",
+                                subscriber, new String(message.data(), UTF_8), e);
+                    }
+                }
+            }
+        }
+
+        PrinterHealth health() {
+            var lastMessage = lastMessageMillis;
+            return new PrinterHealth(
+                    serial,
+                    client.isConnected(),
+                    messages.get(),
+                    dropped.get(),
+                    lastMessage != 0 ? Instant.ofEpochMilli(lastMessage) : null,
+                    lastError,
+                    supervisor.stats(client));
+        }
+
+        void close() {
+            queue.clear();
+            try {
+                client.close();
+            } catch (CommunicationException e) {
+                log.warn("Cannot close printer {}", serial, e);
+            }
+        }
+    }
+}
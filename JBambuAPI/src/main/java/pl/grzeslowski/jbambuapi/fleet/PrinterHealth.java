@@ -0,0 +1,16 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import java.time.Instant;
+
+/**
+ * @param serial      serial number of the printer
+ * @param connected   whether the MQTT connection is up
+ * @param messages    number of messages received from the printer
+ * @param dropped     number of messages not delivered to fleet subscribers because they were too slow
+ * @param lastMessage when the last message was received ({@code null} if none was)
+ * @param lastError   last connection error or failed connection attempt ({@code null} if there was none)
+ * @param reconnect   connection attempts, losses and times to recover
+ */
+public record PrinterHealth(String serial, boolean connected, long messages, long dropped, Instant lastMessage,
+                            Throwable lastError, ReconnectStats reconnect) {
+}
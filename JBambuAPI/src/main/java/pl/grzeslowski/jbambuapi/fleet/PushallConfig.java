@@ -0,0 +1,54 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @param refreshPeriod   how often every printer is asked for full state ({@code pushall}); {@link Duration#ZERO}
+ *                        disables periodic refreshes
+ * @param freshness       full report younger than this satisfies a request without sending {@code pushall}, and
+ *                        periodic refresh of the printer is skipped
+ * @param responseTimeout how long requests wait for the full report; later requests send {@code pushall} again
+ * @param tick            resolution of the timing wheel that spreads periodic refreshes over the period
+ */
+public record PushallConfig(Duration refreshPeriod, Duration freshness, Duration responseTimeout, Duration tick) {
+    /**
+     * P1 printers lag when asked for full state more often than every 5 minutes.
+     */
+    public static final Duration DEFAULT_REFRESH_PERIOD = Duration.ofMinutes(5);
+    public static final Duration DEFAULT_FRESHNESS = Duration.ofSeconds(30);
+    public static final Duration DEFAULT_RESPONSE_TIMEOUT = Duration.ofSeconds(10);
+    public static final Duration DEFAULT_TICK = Duration.ofSeconds(1);
+
+    public PushallConfig {
+        requireNonNull(refreshPeriod, "refreshPeriod");
+        requireNonNull(freshness, "freshness");
+        requireNonNull(responseTimeout, "responseTimeout");
+        requireNonNull(tick, "tick");
+        if (refreshPeriod.isNegative()) {
+            throw new IllegalArgumentException("refreshPeriod cannot be negative, was " + refreshPeriod);
+        }
+        if (freshness.isNegative()) {
+            throw new IllegalArgumentException("freshness cannot be negative, was " + freshness);
+        }
+        if (responseTimeout.isNegative() || responseTimeout.isZero()) {
+            throw new IllegalArgumentException("responseTimeout has to be positive, was " + responseTimeout);
+        }
+        if (tick.isNegative() || tick.isZero()) {
+            throw new IllegalArgumentException("tick has to be positive, was " + tick);
+        }
+        if (!refreshPeriod.isZero() && refreshPeriod.compareTo(tick) < 0) {
+            throw new IllegalArgumentException("refreshPeriod (%s) cannot be shorter than tick (%s)"
+                    .formatted(refreshPeriod, tick));
+        }
+    }
+
+    public static PushallConfig buildDefault() {
+        return new PushallConfig(
+                DEFAULT_REFRESH_PERIOD,
+                DEFAULT_FRESHNESS,
+                DEFAULT_RESPONSE_TIMEOUT,
+                DEFAULT_TICK);
+    }
+}
@@ -0,0 +1,354 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import pl.grzeslowski.jbambuapi.mqtt.ChannelMessageConsumer;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClient;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.fasterxml.jackson.core.JsonToken.*;
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static pl.grzeslowski.jbambuapi.mqtt.PrinterClient.Channel.PushingCommand.defaultPushingCommand;
+
+/**
+ * Sends {@code pushall} on behalf of everything that wants full state of printers.
+ * <p>
+ * Requests for one printer that come while a {@code pushall} is waiting for the full report join it, and requests that
+ * come shortly after a full report arrived ({@link PushallConfig#freshness()}) do not send anything. A full report is
+ * a report with {@code print.msg == 0}; P1 printers send only changed values ({@code msg == 1}) otherwise.
+ * <p>
+ * Every printer is also refreshed once per {@link PushallConfig#refreshPeriod()}. Printers are placed in slots of a
+ * timing wheel with one slot per {@link PushallConfig#tick()}, so refreshes of the fleet are spread evenly over the
+ * period instead of being sent at once. Refresh of a printer that recently sent a full report is skipped.
+ * <pre>{@code
+ * try (var pushall = new PushallScheduler(PushallConfig.buildDefault())) {
+ *     pushall.register(printerClient);
+ *     pushall.request(printerClient).thenRun(() -> log.info("Watcher has full state"));
+ * }
+ * }</pre>
+ */
+@Slf4j
+public final class PushallScheduler implements AutoCloseable {
+    private static final JsonFactory JSON = new JsonFactory();
+    private static final long NEVER = Long.MIN_VALUE;
+
+    @Getter
+    private final PushallConfig config;
+    private final Map<PrinterClient, Printer> printers = new ConcurrentHashMap<>();
+    /**
+     * Slots of the timing wheel; empty when periodic refreshes are disabled.
+     */
+    private final List<Set<Printer>> wheel;
+    private final ScheduledExecutorService ticker;
+    /**
+     * Slot refreshed by the next tick; touched only by the ticker.
+     */
+    private int cursor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong fresh = new AtomicLong();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong skippedRefreshes = new AtomicLong();
+    private final AtomicLong fullReports = new AtomicLong();
+
+    public PushallScheduler(PushallConfig config) {
+        this.config = requireNonNull(config, "config");
+        if (config.refreshPeriod().isZero()) {
+            wheel = List.of();
+            ticker = null;
+            return;
+        }
+        var tick = config.tick().toNanos();
+        var slots = (int) Math.min(Integer.MAX_VALUE, config.refreshPeriod().toNanos() / tick);
+        var wheel = new ArrayList<Set<Printer>>(slots);
+        for (var i = 0; i < slots; i++) {
+            wheel.add(ConcurrentHashMap.newKeySet());
+        }
+        this.wheel = List.copyOf(wheel);
+        ticker = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("jbambuapi-pushall").factory());
+        ticker.scheduleAtFixedRate(this::tick, tick, tick, NANOSECONDS);
+    }
+
+    /**
+     * Starts watching reports of the client and refreshing it periodically.
+     *
+     * @throws IllegalArgumentException when the client is already registered
+     */
+    public void register(PrinterClient client) {
+        requireNonNull(client, "client");
+        var printer = new Printer(client);
+        if (printers.putIfAbsent(client, printer) != null) {
+            throw new IllegalArgumentException("Printer %s is already registered!".formatted(client.getSerial()));
+        }
+        client.subscribe(printer);
+        if (!wheel.isEmpty()) {
+            synchronized (wheel) {
+                printer.slot = freeSlot();
+                wheel.get(printer.slot).add(printer);
+            }
+        }
+    }
+
+    /**
+     * Picks one of the least occupied slots. Slots are tried in bit-reversed order (0, 1/2, 1/4, 3/4, 1/8...), so
+     * any number of printers registered one after another is spread evenly over the whole period.
+     */
+    private int freeSlot() {
+        var min = wheel.stream().mapToInt(Set::size).min().orElseThrow();
+        var bits = 32 - Integer.numberOfLeadingZeros(wheel.size() - 1);
+        for (var i = 0; i < 1 << bits; i++) {
+            var reversed = bits > 0 ? Integer.reverse(i) >>> (32 - bits) : 0;
+            var slot = (int) ((long) reversed * wheel.size() >> bits);
+            if (wheel.get(slot).size() == min) {
+                return slot;
+            }
+        }
+        throw new IllegalStateException("There is no slot with %s printers!".formatted(min));
+    }
+
+    /**
+     * Stops watching the client. Requests waiting for its full report are cancelled.
+     *
+     * @return {@code false} if the client was not registered
+     */
+    public boolean unregister(PrinterClient client) {
+        var printer = printers.remove(client);
+        if (printer == null) {
+            return false;
+        }
+        client.unsubscribe(printer);
+        if (printer.slot >= 0) {
+            wheel.get(printer.slot).remove(printer);
+        }
+        printer.cancel();
+        return true;
+    }
+
+    /**
+     * Asks the printer for full state, unless it recently sent it or is already asked.
+     *
+     * @return future completed when the full report arrives (on the MQTT callback thread, after subscribers of the
+     * client got it), exceptionally with {@link TimeoutException} after {@link PushallConfig#responseTimeout()} or
+     * with {@link pl.grzeslowski.jbambuapi.mqtt.CommunicationException} when {@code pushall} cannot be sent
+     * @throws IllegalArgumentException when the client is not registered
+     */
+    public CompletableFuture<Void> request(PrinterClient client) {
+        requests.incrementAndGet();
+        return printer(client).request();
+    }
+
+    /**
+     * Sends {@code pushall} even when one is waiting for the full report, because responses to commands sent over a
+     * lost connection never come. Requests that were waiting are completed by the response to this one. Meant to be
+     * called after the client (re)connects.
+     *
+     * @throws IllegalArgumentException when the client is not registered
+     */
+    public void resync(PrinterClient client) {
+        printer(client).resync();
+    }
+
+    public PushallStats stats() {
+        return new PushallStats(
+                requests.get(),
+                coalesced.get(),
+                fresh.get(),
+                sent.get(),
+                skippedRefreshes.get(),
+                fullReports.get());
+    }
+
+    /**
+     * @return number of registered printers in every slot of the timing wheel
+     */
+    int[] slotSizes() {
+        return wheel.stream().mapToInt(Set::size).toArray();
+    }
+
+    private Printer printer(PrinterClient client) {
+        var printer = printers.get(client);
+        if (printer == null) {
+            throw new IllegalArgumentException("Printer %s is not registered!".formatted(client.getSerial()));
+        }
+        return printer;
+    }
+
+    private void tick() {
+        var slot = wheel.get(cursor);
+        cursor = (cursor + 1) % wheel.size();
+        var now = System.nanoTime();
+        for (var printer : slot) {
+            try {
+                printer.refresh(now);
+            } catch (RuntimeException e) {
+                log.debug("Cannot refresh printer {}", printer.client.getSerial(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        printers.keySet().forEach(this::unregister);
+    }
+
+    /**
+     * Looks for {@code print.msg} without building any objects.
+     */
+    static boolean isFullReport(byte[] data) {
+        try (var parser = JSON.createParser(data)) {
+            if (parser.nextToken() != START_OBJECT) {
+                return false;
+            }
+            while (parser.nextToken() == FIELD_NAME) {
+                var section = parser.currentName();
+                if (parser.nextToken() == START_OBJECT && "print".equals(section)) {
+                    while (parser.nextToken() == FIELD_NAME) {
+                        var name = parser.currentName();
+                        var token = parser.nextToken();
+                        if ("msg".equals(name)) {
+                            return token == VALUE_NUMBER_INT && parser.getIntValue() == 0;
+                        }
+                        parser.skipChildren();
+                    }
+                    return false;
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            log.debug("Cannot check if message is a full report", e);
+        }
+        return false;
+    }
+
+    private final class Printer implements ChannelMessageConsumer {
+        final PrinterClient client;
+        /**
+         * Slot in the timing wheel, {@code -1} when periodic refreshes are disabled.
+         */
+        int slot = -1;
+        volatile long lastFullReportNanos = NEVER;
+        /**
+         * Response to the last {@code pushall}, {@code null} when nothing waits for the full report.
+         */
+        private CompletableFuture<Void> waiting;
+
+        Printer(PrinterClient client) {
+            this.client = client;
+        }
+
+        CompletableFuture<Void> request() {
+            CompletableFuture<Void> response;
+            synchronized (this) {
+                if (isFresh(System.nanoTime())) {
+                    fresh.incrementAndGet();
+                    return CompletableFuture.completedFuture(null);
+                }
+                if (waiting != null) {
+                    coalesced.incrementAndGet();
+                    return waiting.copy();
+                }
+                response = await();
+            }
+            send(response);
+            return response.copy();
+        }
+
+        void resync() {
+            CompletableFuture<Void> response;
+            synchronized (this) {
+                response = waiting != null ? waiting : await();
+            }
+            send(response);
+        }
+
+        void refresh(long now) {
+            if (!client.isConnected()) {
+                return;
+            }
+            if (isFresh(now)) {
+                skippedRefreshes.incrementAndGet();
+                return;
+            }
+            CompletableFuture<Void> response;
+            synchronized (this) {
+                if (waiting != null) {
+                    return;
+                }
+                response = await();
+            }
+            send(response);
+        }
+
+        private boolean isFresh(long now) {
+            var last = lastFullReportNanos;
+            return last != NEVER && now - last < config.freshness().toNanos();
+        }
+
+        /**
+         * Has to be called while holding the lock.
+         */
+        private CompletableFuture<Void> await() {
+            var response = new CompletableFuture<Void>();
+            waiting = response;
+            response.orTimeout(config.responseTimeout().toNanos(), NANOSECONDS)
+                    .whenComplete((__, throwable) -> {
+                        synchronized (this) {
+                            if (waiting == response) {
+                                waiting = null;
+                            }
+                        }
+                    });
+            return response;
+        }
+
+        private void send(CompletableFuture<Void> response) {
+            try {
+                client.getChannel().sendCommand(defaultPushingCommand());
+                sent.incrementAndGet();
+            } catch (RuntimeException e) {
+                response.completeExceptionally(e);
+            }
+        }
+
+        @Override
+        public void consume(String topic, byte[] data) {
+            if (!isFullReport(data)) {
+                return;
+            }
+            lastFullReportNanos = System.nanoTime();
+            fullReports.incrementAndGet();
+            CompletableFuture<Void> response;
+            synchronized (this) {
+                response = waiting;
+                waiting = null;
+            }
+            if (response != null) {
+                response.complete(null);
+            }
+        }
+
+        void cancel() {
+            CompletableFuture<Void> response;
+            synchronized (this) {
+                response = waiting;
+                waiting = null;
+            }
+            if (response != null) {
+                response.cancel(false);
+            }
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+/**
+ * Full state requests of all printers of a {@link PushallScheduler}.
+ *
+ * @param requests         number of requests for full state
+ * @param coalesced        requests that joined a {@code pushall} that was already waiting for the full report
+ * @param fresh            requests satisfied by a recent full report without sending anything
+ * @param sent             number of sent {@code pushall} commands
+ * @param skippedRefreshes periodic refreshes skipped because of a recent full report
+ * @param fullReports      number of received full reports
+ */
+public record PushallStats(long requests, long coalesced, long fresh, long sent, long skippedRefreshes,
+                           long fullReports) {
+}
@@ -0,0 +1,49 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @param initialBackoff          upper bound of the delay before the first reconnect attempt; it doubles with every
+ *                                failed attempt and the actual delay is a random value between zero and the bound
+ * @param maxBackoff              max upper bound of the delay between attempts
+ * @param maxConcurrentHandshakes max number of connection attempts in progress, for all printers together
+ * @param startupStagger          delay between first connects of consecutive printers
+ * @param resync                  whether to request full state ({@code pushall}) after every successful connect
+ */
+public record ReconnectConfig(Duration initialBackoff, Duration maxBackoff, int maxConcurrentHandshakes,
+                              Duration startupStagger, boolean resync) {
+    public static final Duration DEFAULT_INITIAL_BACKOFF = Duration.ofSeconds(1);
+    public static final Duration DEFAULT_MAX_BACKOFF = Duration.ofMinutes(2);
+    public static final int DEFAULT_MAX_CONCURRENT_HANDSHAKES = 8;
+    public static final Duration DEFAULT_STARTUP_STAGGER = Duration.ofMillis(50);
+
+    public ReconnectConfig {
+        requireNonNull(initialBackoff, "initialBackoff");
+        requireNonNull(maxBackoff, "maxBackoff");
+        requireNonNull(startupStagger, "startupStagger");
+        if (initialBackoff.isNegative() || initialBackoff.isZero()) {
+            throw new IllegalArgumentException("initialBackoff has to be positive, was " + initialBackoff);
+        }
+        if (maxBackoff.compareTo(initialBackoff) < 0) {
+            throw new IllegalArgumentException("maxBackoff (%s) cannot be shorter than initialBackoff (%s)"
+                    .formatted(maxBackoff, initialBackoff));
+        }
+        if (maxConcurrentHandshakes <= 0) {
+            throw new IllegalArgumentException("maxConcurrentHandshakes has to be positive, was " + maxConcurrentHandshakes);
+        }
+        if (startupStagger.isNegative()) {
+            throw new IllegalArgumentException("startupStagger cannot be negative, was " + startupStagger);
+        }
+    }
+
+    public static ReconnectConfig buildDefault() {
+        return new ReconnectConfig(
+                DEFAULT_INITIAL_BACKOFF,
+                DEFAULT_MAX_BACKOFF,
+                DEFAULT_MAX_CONCURRENT_HANDSHAKES,
+                DEFAULT_STARTUP_STAGGER,
+                true);
+    }
+}
@@ -0,0 +1,46 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import java.time.Duration;
+import java.util.Collection;
+
+/**
+ * Connection attempts of one printer or of all printers of a {@link ReconnectSupervisor}.
+ *
+ * @param connectionLosses   how many times an established connection was lost
+ * @param attempts           number of connection attempts
+ * @param failedAttempts     number of connection attempts that failed
+ * @param recoveries         how many times a lost connection was established again
+ * @param lastTimeToRecover  time from losing the connection to establishing it again, for the last recovery
+ * @param maxTimeToRecover   longest time to recover
+ * @param totalTimeToRecover sum of times to recover
+ */
+public record ReconnectStats(long connectionLosses, long attempts, long failedAttempts, long recoveries,
+                             Duration lastTimeToRecover, Duration maxTimeToRecover, Duration totalTimeToRecover) {
+    public static final ReconnectStats EMPTY = new ReconnectStats(0, 0, 0, 0, Duration.ZERO, Duration.ZERO, Duration.ZERO);
+
+    public Duration meanTimeToRecover() {
+        return recoveries > 0 ? totalTimeToRecover.dividedBy(recoveries) : Duration.ZERO;
+    }
+
+    /**
+     * Sums counters and times of all stats; {@link #lastTimeToRecover()} is the longest of the last ones.
+     */
+    public static ReconnectStats sum(Collection<ReconnectStats> stats) {
+        var sum = EMPTY;
+        for (var s : stats) {
+            sum = new ReconnectStats(
+                    sum.connectionLosses + s.connectionLosses,
+                    sum.attempts + s.attempts,
+                    sum.failedAttempts + s.failedAttempts,
+                    sum.recoveries + s.recoveries,
+                    max(sum.lastTimeToRecover, s.lastTimeToRecover),
+                    max(sum.maxTimeToRecover, s.maxTimeToRecover),
+                    sum.totalTimeToRecover.plus(s.totalTimeToRecover));
+        }
+        return sum;
+    }
+
+    private static Duration max(Duration a, Duration b) {
+        return a.compareTo(b) >= 0 ? a : b;
+    }
+}
@@ -0,0 +1,256 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import pl.grzeslowski.jbambuapi.mqtt.ConnectionCallback;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClient;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static java.util.Objects.requireNonNull;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static pl.grzeslowski.jbambuapi.mqtt.PrinterClient.Channel.PushingCommand.defaultPushingCommand;
+
+/**
+ * Keeps printers connected.
+ * <p>
+ * First connects are staggered by {@link ReconnectConfig#startupStagger()}. When a connection attempt fails or an
+ * established connection is lost, the next attempt is scheduled with exponential backoff and full jitter (a random delay
+ * between zero and the current backoff), so printers that lost connection at the same moment do not reconnect at the
+ * same moment. At most {@link ReconnectConfig#maxConcurrentHandshakes()} attempts run at once for all printers.
+ * <p>
+ * Every attempt goes through {@link PrinterClient#connect(ConnectionCallback)}, which subscribes to reports again.
+ * With {@link ReconnectConfig#resync()} full state is requested after connecting, so subscribers catch up with changes
+ * they missed while the printer was disconnected.
+ * <pre>{@code
+ * var supervisor = new ReconnectSupervisor(ReconnectConfig.buildDefault());
+ * supervisor.supervise(printerClient, connectionCallback);
+ * // later
+ * log.info("Mean time to recover: {}", supervisor.stats().meanTimeToRecover());
+ * }</pre>
+ * Do not combine it with {@link pl.grzeslowski.jbambuapi.mqtt.PrinterClientConfig#automaticReconnect()}.
+ */
+@Slf4j
+public final class ReconnectSupervisor implements AutoCloseable {
+    @Getter
+    private final ReconnectConfig config;
+    /**
+     * Runs connection attempts; the number of threads is the cap on concurrent handshakes.
+     */
+    private final ScheduledThreadPoolExecutor scheduler;
+    private final Consumer<PrinterClient> resync;
+    private final Map<PrinterClient, Supervised> supervised = new ConcurrentHashMap<>();
+    private final AtomicLong nextStartNanos = new AtomicLong(System.nanoTime());
+
+    public ReconnectSupervisor(ReconnectConfig config) {
+        this(config, client -> client.getChannel().sendCommand(defaultPushingCommand()));
+    }
+
+    /**
+     * @param resync requests full state of a printer that connected, when {@link ReconnectConfig#resync()} is on
+     *               (see {@link PushallScheduler#resync(PrinterClient)})
+     */
+    public ReconnectSupervisor(ReconnectConfig config, Consumer<PrinterClient> resync) {
+        this.config = requireNonNull(config, "config");
+        this.resync = requireNonNull(resync, "resync");
+        scheduler = new ScheduledThreadPoolExecutor(
+                config.maxConcurrentHandshakes(),
+                Thread.ofPlatform().daemon().name("jbambuapi-reconnect-", 0).factory());
+        scheduler.setKeepAliveTime(30, SECONDS);
+        scheduler.allowCoreThreadTimeOut(true);
+        scheduler.setRemoveOnCancelPolicy(true);
+    }
+
+    /**
+     * Starts connecting the client and keeps it connected until {@link #unsupervise(PrinterClient)} is called.
+     *
+     * @param callback notified about connection events, including failed attempts (optional)
+     * @throws IllegalArgumentException when the client is already supervised
+     */
+    public void supervise(PrinterClient client, ConnectionCallback callback) {
+        requireNonNull(client, "client");
+        var printer = new Supervised(client, callback);
+        if (supervised.putIfAbsent(client, printer) != null) {
+            throw new IllegalArgumentException("Printer %s is already supervised!".formatted(client.getSerial()));
+        }
+        var stagger = config.startupStagger().toNanos();
+        var slot = nextStartNanos.getAndAccumulate(System.nanoTime(), (last, now) -> Math.max(last, now) + stagger);
+        printer.schedule(Math.max(0, slot - System.nanoTime()));
+    }
+
+    /**
+     * Stops reconnecting the client. The client is not disconnected.
+     *
+     * @return {@code false} if the client was not supervised
+     */
+    public boolean unsupervise(PrinterClient client) {
+        var printer = supervised.remove(client);
+        if (printer == null) {
+            return false;
+        }
+        printer.stop();
+        return true;
+    }
+
+    public ReconnectStats stats(PrinterClient client) {
+        var printer = supervised.get(client);
+        return printer != null ? printer.stats() : ReconnectStats.EMPTY;
+    }
+
+    /**
+     * @return stats of all supervised printers together
+     */
+    public ReconnectStats stats() {
+        return ReconnectStats.sum(supervised.values().stream().map(Supervised::stats).toList());
+    }
+
+    /**
+     * @return number of connection attempts that are in progress
+     */
+    public int handshakesInProgress() {
+        return scheduler.getActiveCount();
+    }
+
+    @Override
+    public void close() {
+        supervised.values().forEach(Supervised::stop);
+        supervised.clear();
+        scheduler.shutdownNow();
+    }
+
+    /**
+     * Upper bound of the delay grows as {@code initialBackoff * 2^failures} up to {@code maxBackoff}; the delay itself is
+     * uniformly random below it.
+     */
+    long backoffNanos(int failures) {
+        var max = config.maxBackoff().toNanos();
+        var bound = config.initialBackoff().toNanos();
+        for (var i = 0; i < failures && bound < max; i++) {
+            bound *= 2;
+        }
+        return ThreadLocalRandom.current().nextLong(Math.min(bound, max) + 1);
+    }
+
+    private final class Supervised implements ConnectionCallback {
+        final PrinterClient client;
+        final ConnectionCallback callback;
+        final AtomicLong connectionLosses = new AtomicLong();
+        final AtomicLong attempts = new AtomicLong();
+        final AtomicLong failedAttempts = new AtomicLong();
+        final AtomicLong recoveries = new AtomicLong();
+        final AtomicLong lastTimeToRecoverNanos = new AtomicLong();
+        final AtomicLong maxTimeToRecoverNanos = new AtomicLong();
+        final AtomicLong totalTimeToRecoverNanos = new AtomicLong();
+        /**
+         * Consecutive failed attempts; touched only by the attempt that is in progress.
+         */
+        int failures;
+        /**
+         * When the connection was lost, {@code 0} while connected.
+         */
+        volatile long lostAtNanos;
+        volatile boolean stopped;
+        ScheduledFuture<?> pending;
+
+        Supervised(PrinterClient client, ConnectionCallback callback) {
+            this.client = client;
+            this.callback = callback;
+        }
+
+        synchronized void schedule(long delayNanos) {
+            if (stopped || (pending != null && !pending.isDone())) {
+                return;
+            }
+            try {
+                pending = scheduler.schedule(this::connect, delayNanos, NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                // supervisor is closed
+            }
+        }
+
+        private void connect() {
+            synchronized (this) {
+                pending = null;
+            }
+            if (stopped || client.isConnected()) {
+                return;
+            }
+            attempts.incrementAndGet();
+            try {
+                client.connect(this);
+            } catch (Exception e) {
+                failedAttempts.incrementAndGet();
+                var delay = backoffNanos(failures++);
+                log.debug("Cannot connect to printer {}, next attempt in {}", client.getSerial(), Duration.ofNanos(delay), e);
+                if (callback != null) {
+                    callback.connectFailed(e);
+                }
+                schedule(delay);
+                return;
+            }
+            failures = 0;
+            var lostAt = lostAtNanos;
+            if (lostAt != 0) {
+                lostAtNanos = 0;
+                recovered(System.nanoTime() - lostAt);
+            }
+            if (config.resync()) {
+                try {
+                    resync.accept(client);
+                } catch (RuntimeException e) {
+                    log.debug("Cannot request full state of printer {}", client.getSerial(), e);
+                }
+            }
+        }
+
+        private void recovered(long nanos) {
+            recoveries.incrementAndGet();
+            lastTimeToRecoverNanos.set(nanos);
+            maxTimeToRecoverNanos.accumulateAndGet(nanos, Math::max);
+            totalTimeToRecoverNanos.addAndGet(nanos);
+            log.info("Printer {} recovered connection in {}", client.getSerial(), Duration.ofNanos(nanos));
+        }
+
+        @Override
+        public void connectComplete(boolean reconnect) {
+            if (callback != null) {
+                callback.connectComplete(reconnect);
+            }
+        }
+
+        @Override
+        public void connectionLost(Throwable cause) {
+            connectionLosses.incrementAndGet();
+            if (lostAtNanos == 0) {
+                lostAtNanos = System.nanoTime();
+            }
+            if (callback != null) {
+                callback.connectionLost(cause);
+            }
+            schedule(backoffNanos(0));
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if (pending != null) {
+                pending.cancel(false);
+            }
+        }
+
+        ReconnectStats stats() {
+            return new ReconnectStats(
+                    connectionLosses.get(),
+                    attempts.get(),
+                    failedAttempts.get(),
+                    recoveries.get(),
+                    Duration.ofNanos(lastTimeToRecoverNanos.get()),
+                    Duration.ofNanos(maxTimeToRecoverNanos.get()),
+                    Duration.ofNanos(totalTimeToRecoverNanos.get()));
+        }
+    }
+}
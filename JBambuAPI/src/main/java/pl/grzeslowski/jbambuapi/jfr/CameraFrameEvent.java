@@ -0,0 +1,19 @@
+package pl.grzeslowski.jbambuapi.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * JPEG frame read from {@link pl.grzeslowski.jbambuapi.camera.TlsCamera}, including waiting for the camera, or by
+ * {@link pl.grzeslowski.jbambuapi.camera.CameraReactor}, from the first byte of the frame to the last.
+ */
+@Name("pl.grzeslowski.jbambuapi.CameraFrame")
+@Label("Camera Frame")
+@Category({"JBambuAPI", "Camera"})
+@StackTrace(false)
+public final class CameraFrameEvent extends Event {
+    @Label("Host")
+    public String host;
+    @Label("Size")
+    @DataAmount
+    public int bytes;
+}
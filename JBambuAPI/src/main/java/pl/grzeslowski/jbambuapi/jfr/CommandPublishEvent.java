@@ -0,0 +1,24 @@
+package pl.grzeslowski.jbambuapi.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Command published by {@link pl.grzeslowski.jbambuapi.mqtt.PrinterClient.Channel}.
+ */
+@Name("pl.grzeslowski.jbambuapi.CommandPublish")
+@Label("Command Publish")
+@Category({"JBambuAPI", "MQTT"})
+@StackTrace(false)
+public final class CommandPublishEvent extends Event {
+    @Label("Serial")
+    public String serial;
+    @Label("Topic")
+    public String topic;
+    @Label("Command")
+    public String command;
+    @Label("Sequence Id")
+    public int sequenceId;
+    @Label("Size")
+    @DataAmount
+    public int bytes;
+}
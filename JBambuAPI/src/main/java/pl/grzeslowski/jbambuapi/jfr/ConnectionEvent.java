@@ -0,0 +1,44 @@
+package pl.grzeslowski.jbambuapi.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * MQTT connection of {@link pl.grzeslowski.jbambuapi.mqtt.PrinterClient} was established, lost or could not be
+ * established.
+ */
+@Name("pl.grzeslowski.jbambuapi.Connection")
+@Label("MQTT Connection")
+@Category({"JBambuAPI", "MQTT"})
+@StackTrace(false)
+public final class ConnectionEvent extends Event {
+    public static final String CONNECTED = "CONNECTED";
+    public static final String LOST = "LOST";
+    public static final String FAILED = "FAILED";
+
+    @Label("Serial")
+    public String serial;
+    @Label("Host")
+    public String host;
+    @Label("Type")
+    @Description("CONNECTED, LOST or FAILED")
+    public String type;
+    @Label("Reconnect")
+    public boolean reconnect;
+    @Label("Cause")
+    public String cause;
+
+    /**
+     * Connection changes are rare, so unlike the other events it is emitted with one call.
+     */
+    public static void emit(String serial, String host, String type, boolean reconnect, Throwable cause) {
+        var event = new ConnectionEvent();
+        if (event.shouldCommit()) {
+            event.serial = serial;
+            event.host = host;
+            event.type = type;
+            event.reconnect = reconnect;
+            event.cause = cause != null ? cause.toString() : null;
+            event.commit();
+        }
+    }
+}
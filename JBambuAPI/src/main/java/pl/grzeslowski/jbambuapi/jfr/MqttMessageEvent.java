@@ -0,0 +1,20 @@
+package pl.grzeslowski.jbambuapi.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Message received by {@link pl.grzeslowski.jbambuapi.mqtt.PrinterClient}; lasts as long as its subscribers.
+ */
+@Name("pl.grzeslowski.jbambuapi.MqttMessage")
+@Label("MQTT Message")
+@Category({"JBambuAPI", "MQTT"})
+@StackTrace(false)
+public final class MqttMessageEvent extends Event {
+    @Label("Serial")
+    public String serial;
+    @Label("Topic")
+    public String topic;
+    @Label("Size")
+    @DataAmount
+    public int bytes;
+}
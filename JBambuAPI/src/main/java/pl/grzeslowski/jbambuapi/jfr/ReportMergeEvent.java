@@ -0,0 +1,17 @@
+package pl.grzeslowski.jbambuapi.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Report merged into the full state by {@link pl.grzeslowski.jbambuapi.mqtt.PrinterWatcher}.
+ */
+@Name("pl.grzeslowski.jbambuapi.ReportMerge")
+@Label("Report Merge")
+@Category({"JBambuAPI", "MQTT"})
+@StackTrace(false)
+public final class ReportMergeEvent extends Event {
+    @Label("Serial")
+    public String serial;
+    @Label("Changed Fields")
+    public int changes;
+}
@@ -0,0 +1,19 @@
+package pl.grzeslowski.jbambuapi.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * JSON payload turned into a {@link pl.grzeslowski.jbambuapi.mqtt.Report} by
+ * {@link pl.grzeslowski.jbambuapi.mqtt.PrinterWatcher}.
+ */
+@Name("pl.grzeslowski.jbambuapi.ReportParse")
+@Label("Report Parse")
+@Category({"JBambuAPI", "MQTT"})
+@StackTrace(false)
+public final class ReportParseEvent extends Event {
+    @Label("Serial")
+    public String serial;
+    @Label("Size")
+    @DataAmount
+    public int bytes;
+}
@@ -0,0 +1,22 @@
+package pl.grzeslowski.jbambuapi.jfr;
+
+import jdk.jfr.*;
+
+/**
+ * Call of a subscriber of {@link pl.grzeslowski.jbambuapi.mqtt.PrinterClient} or
+ * {@link pl.grzeslowski.jbambuapi.mqtt.PrinterWatcher}.
+ */
+@Name("pl.grzeslowski.jbambuapi.SubscriberCall")
+@Label("Subscriber Call")
+@Category({"JBambuAPI", "MQTT"})
+@StackTrace(false)
+public final class SubscriberCallEvent extends Event {
+    @Label("Serial")
+    public String serial;
+    @Label("Subscriber")
+    @Description("Class of the subscriber")
+    public String subscriber;
+    @Label("Failed")
+    @Description("Subscriber threw an exception")
+    public boolean failed;
+}
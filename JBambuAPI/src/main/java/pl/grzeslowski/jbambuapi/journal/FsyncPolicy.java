@@ -0,0 +1,24 @@
+package pl.grzeslowski.jbambuapi.journal;
+
+/**
+ * When {@link ReportJournal} forces written records to the storage device.
+ */
+public enum FsyncPolicy {
+    /**
+     * Never; the operating system writes dirty pages back whenever it wants. Records survive a crash of the JVM, but not
+     * of the machine.
+     */
+    NEVER,
+    /**
+     * When a segment is sealed and when the journal is closed.
+     */
+    ON_SEAL,
+    /**
+     * At most once per {@link JournalConfig#fsyncInterval()}, checked when a record is appended.
+     */
+    INTERVAL,
+    /**
+     * After every record. Safest and by far the slowest.
+     */
+    EVERY_RECORD
+}
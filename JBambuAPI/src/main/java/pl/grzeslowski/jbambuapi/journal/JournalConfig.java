@@ -0,0 +1,44 @@
+package pl.grzeslowski.jbambuapi.journal;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @param directory              where segment files are kept
+ * @param segmentSize            size of one memory mapped segment in bytes
+ * @param fsyncPolicy            when records are forced to the storage device
+ * @param fsyncInterval          used only with {@link FsyncPolicy#INTERVAL}
+ * @param compressSealedSegments if {@code true} full segments are compressed with {@link java.util.zip.Deflater} in
+ *                               the background
+ */
+public record JournalConfig(
+        Path directory,
+        int segmentSize,
+        FsyncPolicy fsyncPolicy,
+        Duration fsyncInterval,
+        boolean compressSealedSegments) {
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    public static final FsyncPolicy DEFAULT_FSYNC_POLICY = FsyncPolicy.ON_SEAL;
+    public static final Duration DEFAULT_FSYNC_INTERVAL = Duration.ofSeconds(1);
+    public static final boolean DEFAULT_COMPRESS_SEALED_SEGMENTS = true;
+
+    public JournalConfig {
+        requireNonNull(directory, "directory");
+        requireNonNull(fsyncPolicy, "fsyncPolicy");
+        requireNonNull(fsyncInterval, "fsyncInterval");
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("segmentSize has to be at least 1 KiB, was " + segmentSize);
+        }
+    }
+
+    public static JournalConfig buildDefault(Path directory) {
+        return new JournalConfig(
+                directory,
+                DEFAULT_SEGMENT_SIZE,
+                DEFAULT_FSYNC_POLICY,
+                DEFAULT_FSYNC_INTERVAL,
+                DEFAULT_COMPRESS_SEALED_SEGMENTS);
+    }
+}
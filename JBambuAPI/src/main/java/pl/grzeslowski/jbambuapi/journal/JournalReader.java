@@ -0,0 +1,164 @@
+package pl.grzeslowski.jbambuapi.journal;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.zip.InflaterInputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Reads records written by {@link ReportJournal}, oldest first, from plain and compressed segments.
+ * <pre>{@code
+ * try (var reader = JournalReader.open(Path.of("journal"))) {
+ *     while (reader.hasNext()) {
+ *         var record = reader.next();
+ *         ...
+ *     }
+ * }
+ * }</pre>
+ * Segments are listed when the reader is opened; records appended to the active segment after that may or may not be
+ * visible.
+ */
+public final class JournalReader implements Iterator<JournalRecord>, AutoCloseable {
+    private final Iterator<Path> segments;
+    private DataInputStream input;
+    /**
+     * Bytes left in the plain segment being read; {@link Long#MAX_VALUE} for a compressed one, which has no known size.
+     */
+    private long remaining;
+    private JournalRecord next;
+
+    private JournalReader(List<Path> segments) {
+        this.segments = segments.iterator();
+    }
+
+    public static JournalReader open(Path directory) throws IOException {
+        return new JournalReader(Segments.list(directory));
+    }
+
+    /**
+     * @throws UncheckedIOException when a segment cannot be read
+     */
+    @Override
+    public boolean hasNext() {
+        if (next != null) {
+            return true;
+        }
+        try {
+            next = readNext();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return next != null;
+    }
+
+    @Override
+    public JournalRecord next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        var record = next;
+        next = null;
+        return record;
+    }
+
+    private JournalRecord readNext() throws IOException {
+        while (true) {
+            if (input == null) {
+                if (!segments.hasNext()) {
+                    return null;
+                }
+                openSegment(segments.next());
+            }
+            var record = readRecord();
+            if (record != null) {
+                return record;
+            }
+            input.close();
+            input = null;
+        }
+    }
+
+    private void openSegment(Path segment) throws IOException {
+        InputStream stream;
+        try {
+            stream = Files.newInputStream(segment);
+        } catch (NoSuchFileException e) {
+            // segment was compressed after it had been listed
+            var compressed = Segments.path(segment.getParent(), Segments.index(segment), true);
+            if (Segments.isCompressed(segment) || !Files.exists(compressed)) {
+                throw e;
+            }
+            segment = compressed;
+            stream = Files.newInputStream(segment);
+        }
+        if (Segments.isCompressed(segment)) {
+            stream = new InflaterInputStream(stream);
+            remaining = Long.MAX_VALUE;
+        } else {
+            remaining = Files.size(segment) - Segments.HEADER_SIZE;
+        }
+        var segmentInput = new DataInputStream(new BufferedInputStream(stream, 64 * 1024));
+        try {
+            var magic = segmentInput.readInt();
+            var version = segmentInput.readInt();
+            if (magic != Segments.MAGIC || version != Segments.VERSION) {
+                throw new IOException("%s is not a journal segment (magic=%x, version=%s)".formatted(segment, magic, version));
+            }
+            input = segmentInput;
+        } catch (IOException e) {
+            segmentInput.close();
+            throw e;
+        }
+    }
+
+    /**
+     * A length that does not fit in the segment ends it like a torn record, instead of allocating whatever it says.
+     *
+     * @return record or {@code null} when the segment has ended
+     */
+    private JournalRecord readRecord() throws IOException {
+        try {
+            var length = input.readInt();
+            if (length < Long.BYTES + Short.BYTES || length > remaining - Integer.BYTES) {
+                return null;
+            }
+            var timestamp = input.readLong();
+            var topicLength = input.readShort();
+            var payloadLength = length - Long.BYTES - Short.BYTES - topicLength;
+            if (topicLength < 0 || payloadLength < 0) {
+                return null;
+            }
+            var topic = new byte[topicLength];
+            input.readFully(topic);
+            // reads in chunks as bytes arrive, so a corrupt length in a compressed segment cannot exhaust the heap
+            var payload = input.readNBytes(payloadLength);
+            if (payload.length < payloadLength) {
+                return null;
+            }
+            remaining -= Integer.BYTES + length;
+            return new JournalRecord(Instant.ofEpochMilli(timestamp), new String(topic, UTF_8), payload);
+        } catch (EOFException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (input != null) {
+            input.close();
+            input = null;
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package pl.grzeslowski.jbambuapi.journal;
+
+import java.time.Instant;
+
+/**
+ * One MQTT message read back from {@link ReportJournal}.
+ *
+ * @param timestamp when the message was appended
+ * @param topic     MQTT topic, like {@code device/<serial>/report}
+ * @param payload   raw payload
+ */
+public record JournalRecord(Instant timestamp, String topic, byte[] payload) {
+}
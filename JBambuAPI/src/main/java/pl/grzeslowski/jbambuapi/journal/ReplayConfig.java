@@ -0,0 +1,29 @@
+package pl.grzeslowski.jbambuapi.journal;
+
+/**
+ * @param speed    replay speed multiplier; {@code 1} keeps the recorded pace, {@code 10} is ten times faster and
+ *                 {@link Double#POSITIVE_INFINITY} replays as fast as possible
+ * @param printers number of synthetic printers; when more than one, every message is delivered once per printer with
+ *                 serial in the topic rewritten to {@code <serial>-<n>}
+ */
+public record ReplayConfig(double speed, int printers) {
+    public static final double RECORDED_PACE = 1;
+    public static final double AS_FAST_AS_POSSIBLE = Double.POSITIVE_INFINITY;
+
+    public ReplayConfig {
+        if (!(speed > 0)) {
+            throw new IllegalArgumentException("speed has to be positive, was " + speed);
+        }
+        if (printers <= 0) {
+            throw new IllegalArgumentException("printers has to be positive, was " + printers);
+        }
+    }
+
+    public static ReplayConfig recordedPace() {
+        return new ReplayConfig(RECORDED_PACE, 1);
+    }
+
+    public static ReplayConfig asFastAsPossible() {
+        return new ReplayConfig(AS_FAST_AS_POSSIBLE, 1);
+    }
+}
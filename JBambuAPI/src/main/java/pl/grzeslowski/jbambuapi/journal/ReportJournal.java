@@ -0,0 +1,272 @@
+package pl.grzeslowski.jbambuapi.journal;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import pl.grzeslowski.jbambuapi.mqtt.ChannelMessageConsumer;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.InstantSource;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Append only journal of raw MQTT messages, written to rolling memory mapped segment files.
+ * <p>
+ * Appending is a couple of writes into a mapped buffer, so the journal can be subscribed directly to
+ * {@link pl.grzeslowski.jbambuapi.mqtt.PrinterClient}:
+ * <pre>{@code
+ * var journal = new ReportJournal(JournalConfig.buildDefault(Path.of("journal")));
+ * printerClient.subscribe(journal);
+ * }</pre>
+ * When a segment is full it is sealed (truncated to its content) and optionally compressed in the background. Records
+ * can be read back with {@link JournalReader}. Segments left unsealed by a crash are sealed when the journal is opened
+ * again; a record that was being written during the crash is dropped.
+ */
+@Slf4j
+public final class ReportJournal implements ChannelMessageConsumer, AutoCloseable {
+    @Getter
+    private final JournalConfig config;
+    private final InstantSource clock;
+    private final ExecutorService compressor;
+
+    private long segmentIndex;
+    private FileChannel channel;
+    private MappedByteBuffer segment;
+    private long lastFsync;
+    private String lastTopic;
+    private byte[] lastTopicBytes;
+    private boolean closed;
+
+    public ReportJournal(JournalConfig config) throws IOException {
+        this(config, InstantSource.system());
+    }
+
+    ReportJournal(JournalConfig config, InstantSource clock) throws IOException {
+        this.config = config;
+        this.clock = clock;
+        this.compressor = config.compressSealedSegments()
+                ? Executors.newSingleThreadExecutor(Thread.ofVirtual().name("jbambuapi-journal-compressor").factory())
+                : null;
+        Files.createDirectories(config.directory());
+        var segments = Segments.list(config.directory());
+        for (var existing : segments) {
+            recover(existing);
+        }
+        openSegment(segments.isEmpty() ? 0 : Segments.index(segments.getLast()) + 1, config.segmentSize());
+    }
+
+    @Override
+    public synchronized void consume(String topic, byte[] data) {
+        if (closed) {
+            return;
+        }
+        try {
+            append(clock.millis(), topic, data);
+        } catch (IOException e) {
+            log.warn("Cannot append message from {} to journal {}", topic, config.directory(), e);
+        }
+    }
+
+    private void append(long timestamp, String topic, byte[] payload) throws IOException {
+        var topicBytes = topicBytes(topic);
+        var length = Long.BYTES + Short.BYTES + topicBytes.length + payload.length;
+        if (segment.remaining() < Integer.BYTES + length) {
+            rollSegment(Math.max(config.segmentSize(), Segments.HEADER_SIZE + Integer.BYTES + length));
+        }
+        // length goes in last, so a record interrupted by a crash is never visible to readers
+        var start = segment.position();
+        segment.position(start + Integer.BYTES);
+        segment.putLong(timestamp)
+                .putShort((short) topicBytes.length)
+                .put(topicBytes)
+                .put(payload);
+        segment.putInt(start, length);
+        switch (config.fsyncPolicy()) {
+            case EVERY_RECORD -> segment.force();
+            case INTERVAL -> {
+                var now = clock.millis();
+                if (now - lastFsync >= config.fsyncInterval().toMillis()) {
+                    segment.force();
+                    lastFsync = now;
+                }
+            }
+            case NEVER, ON_SEAL -> {
+            }
+        }
+    }
+
+    private byte[] topicBytes(String topic) {
+        // one journal usually records only one or a few printers, so topics repeat
+        if (!topic.equals(lastTopic)) {
+            var bytes = topic.getBytes(UTF_8);
+            if (bytes.length > Short.MAX_VALUE) {
+                throw new IllegalArgumentException("Topic is too long: " + bytes.length + " bytes");
+            }
+            lastTopic = topic;
+            lastTopicBytes = bytes;
+        }
+        return lastTopicBytes;
+    }
+
+    /**
+     * Opens the next segment before sealing the current one, so when opening fails the journal keeps the current
+     * segment and tries again with the next record.
+     */
+    private void rollSegment(int size) throws IOException {
+        var previousIndex = segmentIndex;
+        var previousChannel = channel;
+        var previousSegment = segment;
+        openSegment(segmentIndex + 1, size);
+        try {
+            sealSegment(previousIndex, previousChannel, previousSegment);
+        } catch (IOException e) {
+            // readers stop at the zero padding, and the segment is sealed again on the next start
+            log.warn("Cannot seal journal segment {}", Segments.path(config.directory(), previousIndex, false), e);
+        }
+    }
+
+    private void openSegment(long newIndex, int size) throws IOException {
+        var path = Segments.path(config.directory(), newIndex, false);
+        var newChannel = FileChannel.open(path, CREATE_NEW, READ, WRITE);
+        MappedByteBuffer newSegment;
+        try {
+            newSegment = newChannel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            newChannel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        newSegment.putInt(Segments.MAGIC).putInt(Segments.VERSION);
+        segmentIndex = newIndex;
+        channel = newChannel;
+        segment = newSegment;
+        lastFsync = clock.millis();
+        log.debug("Opened journal segment {}", path);
+    }
+
+    private void sealSegment(long sealedIndex, FileChannel sealedChannel, MappedByteBuffer sealedSegment) throws IOException {
+        var path = Segments.path(config.directory(), sealedIndex, false);
+        if (config.fsyncPolicy() != FsyncPolicy.NEVER) {
+            sealedSegment.force();
+        }
+        var end = sealedSegment.position();
+        try {
+            sealedChannel.truncate(end);
+        } catch (IOException e) {
+            // some platforms do not allow to truncate mapped files; readers stop at the zero padding anyway
+            log.debug("Cannot truncate journal segment {}", path, e);
+        } finally {
+            sealedChannel.close();
+        }
+        log.debug("Sealed journal segment {}", path);
+        if (compressor != null) {
+            compressor.execute(() -> compress(path));
+        }
+    }
+
+    private void recover(Path path) throws IOException {
+        if (Segments.isCompressed(path)) {
+            return;
+        }
+        var compressed = Segments.path(config.directory(), Segments.index(path), true);
+        if (Files.exists(compressed)) {
+            // crashed after compressing but before deleting the original
+            Files.delete(path);
+            return;
+        }
+        try (var fileChannel = FileChannel.open(path, READ, WRITE)) {
+            var end = findEnd(fileChannel);
+            if (end < fileChannel.size()) {
+                log.info("Sealing journal segment {} left open at {} bytes", path, end);
+                fileChannel.truncate(end);
+            }
+        }
+        if (compressor != null) {
+            compressor.execute(() -> compress(path));
+        }
+    }
+
+    private static long findEnd(FileChannel fileChannel) throws IOException {
+        var size = fileChannel.size();
+        var length = ByteBuffer.allocate(Integer.BYTES);
+        var position = (long) Segments.HEADER_SIZE;
+        while (position + Integer.BYTES <= size) {
+            length.clear();
+            fileChannel.read(length, position);
+            var recordLength = length.getInt(0);
+            if (recordLength <= 0 || position + Integer.BYTES + recordLength > size) {
+                break;
+            }
+            position += Integer.BYTES + recordLength;
+        }
+        return Math.min(position, size);
+    }
+
+    private void compress(Path path) {
+        var target = Segments.path(config.directory(), Segments.index(path), true);
+        var temporary = target.resolveSibling(target.getFileName() + ".tmp");
+        var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            try (var output = new DeflaterOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary, CREATE, TRUNCATE_EXISTING, WRITE)),
+                    deflater, 64 * 1024)) {
+                Files.copy(path, output);
+            }
+            Files.move(temporary, target, ATOMIC_MOVE, REPLACE_EXISTING);
+            Files.delete(path);
+            log.debug("Compressed journal segment {}", target);
+        } catch (IOException e) {
+            log.warn("Cannot compress journal segment {}", path, e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Forces all appended records to the storage device.
+     */
+    public synchronized void flush() {
+        if (!closed) {
+            segment.force();
+            lastFsync = clock.millis();
+        }
+    }
+
+    /**
+     * Seals the current segment and waits for pending compressions.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            sealSegment(segmentIndex, channel, segment);
+        }
+        if (compressor != null) {
+            compressor.shutdown();
+            try {
+                if (!compressor.awaitTermination(1, TimeUnit.MINUTES)) {
+                    log.warn("Journal segments are still being compressed in {}", config.directory());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package pl.grzeslowski.jbambuapi.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import pl.grzeslowski.jbambuapi.mqtt.ChannelMessageConsumer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Iterator;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Pattern;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Feeds recorded messages into a {@link ChannelMessageConsumer} (like
+ * {@link pl.grzeslowski.jbambuapi.mqtt.PrinterWatcher}), without a printer.
+ * <p>
+ * The recording is either a {@link ReportJournal} directory or a directory of report files named like
+ * {@code 250228204328---device_03919C461204912_report.json} (recording time, {@code ---} and topic with {@code /}
+ * replaced by {@code _}), such as {@code src/test/resources/example/A1}.
+ * <pre>{@code
+ * var replayer = new ReportReplayer(Path.of("journal"), new ReplayConfig(10, 100));
+ * replayer.replay(watcher);
+ * }</pre>
+ * Messages are delivered on the calling thread, in recorded order, and for every message to synthetic printers in
+ * their order, so two replays of the same recording deliver exactly the same sequence.
+ */
+@Slf4j
+public final class ReportReplayer {
+    private static final Pattern FILE_NAME = Pattern.compile("(\\d{12})---(.+)\\.json");
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyMMddHHmmss");
+    private static final Pattern SERIAL = Pattern.compile("^device/([^/]+)/");
+
+    private final Path directory;
+    private final ReplayConfig config;
+
+    public ReportReplayer(Path directory, ReplayConfig config) {
+        this.directory = requireNonNull(directory, "directory");
+        this.config = requireNonNull(config, "config");
+    }
+
+    /**
+     * Replays the whole recording. Blocks until all messages are delivered.
+     *
+     * @return number of delivered messages
+     * @throws InterruptedException when the thread was interrupted while waiting for the next message
+     */
+    public long replay(ChannelMessageConsumer consumer) throws IOException, InterruptedException {
+        if (!Segments.list(directory).isEmpty()) {
+            try (var reader = JournalReader.open(directory)) {
+                return replay(reader, consumer);
+            }
+        }
+        try (var files = Files.list(directory)) {
+            var records = files
+                    .filter(path -> FILE_NAME.matcher(path.getFileName().toString()).matches())
+                    .sorted()
+                    .map(ReportReplayer::readFile)
+                    .iterator();
+            return replay(records, consumer);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private long replay(Iterator<JournalRecord> records, ChannelMessageConsumer consumer) throws InterruptedException {
+        var topics = new TopicRewriter(config.printers());
+        var start = System.nanoTime();
+        var first = Long.MIN_VALUE;
+        var delivered = 0L;
+        while (records.hasNext()) {
+            var record = records.next();
+            var timestamp = record.timestamp().toEpochMilli();
+            if (first == Long.MIN_VALUE) {
+                first = timestamp;
+            }
+            awaitDue(start, timestamp - first);
+            for (var printer = 0; printer < config.printers(); printer++) {
+                var topic = topics.topic(record.topic(), printer);
+                try {
+                    consumer.consume(topic, record.payload());
+                } catch (Exception e) {
+                    log.warn("Consumer {} could not accept message from {}", consumer, topic, e);
+                }
+                delivered++;
+            }
+        }
+        return delivered;
+    }
+
+    private void awaitDue(long start, long offsetMillis) throws InterruptedException {
+        if (Double.isInfinite(config.speed())) {
+            return;
+        }
+        var due = start + (long) (offsetMillis * 1_000_000 / config.speed());
+        for (var now = System.nanoTime(); now < due; now = System.nanoTime()) {
+            LockSupport.parkNanos(due - now);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+        }
+    }
+
+    private static JournalRecord readFile(Path path) {
+        var matcher = FILE_NAME.matcher(path.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a recorded report: " + path);
+        }
+        var timestamp = LocalDateTime.parse(matcher.group(1), FILE_TIMESTAMP).toInstant(ZoneOffset.UTC);
+        var topic = matcher.group(2).replace('_', '/');
+        try {
+            return new JournalRecord(timestamp, topic, Files.readAllBytes(path));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Caches rewritten topics, so delivering to many synthetic printers does not build strings for every message.
+     */
+    private static final class TopicRewriter {
+        private final String[] rewritten;
+        private String original;
+
+        private TopicRewriter(int printers) {
+            this.rewritten = new String[printers];
+        }
+
+        String topic(String topic, int printer) {
+            if (rewritten.length == 1) {
+                return topic;
+            }
+            if (!topic.equals(original)) {
+                original = topic;
+                var matcher = SERIAL.matcher(topic);
+                for (var i = 0; i < rewritten.length; i++) {
+                    rewritten[i] = matcher.find(0)
+                            ? matcher.replaceFirst("device/" + matcher.group(1) + "-" + i + "/")
+                            : topic;
+                }
+            }
+            return rewritten[printer];
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package pl.grzeslowski.jbambuapi.journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Names of segment files in a directory: {@code segment-<index><suffix>}, with the index zero padded to 19 digits, so
+ * file names sort like indexes. Shared by the journal and by {@link pl.grzeslowski.jbambuapi.timelapse timelapse}
+ * recordings.
+ */
+public final class SegmentFiles {
+    private final String description;
+    private final Pattern name;
+
+    /**
+     * @param description what the segments hold, used in error messages
+     * @param suffixes    suffixes of segment files, for example {@code .journal} and {@code .journal.deflate}
+     */
+    public SegmentFiles(String description, String... suffixes) {
+        if (suffixes.length == 0) {
+            throw new IllegalArgumentException("suffixes cannot be empty");
+        }
+        this.description = description;
+        name = Pattern.compile("segment-(\\d{19})(?:%s)".formatted(
+                Arrays.stream(suffixes).map(Pattern::quote).collect(joining("|"))));
+    }
+
+    public static Path path(Path directory, long index, String suffix) {
+        return directory.resolve("segment-%019d%s".formatted(index, suffix));
+    }
+
+    /**
+     * @return segment files sorted by index (oldest first)
+     */
+    public List<Path> list(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (var files = Files.list(directory)) {
+            return files
+                    .filter(path -> name.matcher(path.getFileName().toString()).matches())
+                    .sorted()
+                    .toList();
+        }
+    }
+
+    public long index(Path segment) {
+        var matcher = name.matcher(segment.getFileName().toString());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a %s segment: %s".formatted(description, segment));
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+}
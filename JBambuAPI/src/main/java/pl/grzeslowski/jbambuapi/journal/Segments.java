@@ -0,0 +1,45 @@
+package pl.grzeslowski.jbambuapi.journal;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * On disk layout of journal segments.
+ * <p>
+ * Segment file: {@code int magic, int version} followed by records. Record: {@code int length} (of the rest of the
+ * record), {@code long timestamp} (epoch millis), {@code short topicLength}, topic in UTF-8 and the payload. Length
+ * {@code 0} (or end of file) ends the segment. Sealed segments can be compressed as a whole with
+ * {@link java.util.zip.Deflater}.
+ */
+final class Segments {
+    static final int MAGIC = 0x4A424A31;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = Integer.BYTES * 2;
+    static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES + Short.BYTES;
+    static final String SUFFIX = ".journal";
+    static final String COMPRESSED_SUFFIX = ".journal.deflate";
+    private static final SegmentFiles FILES = new SegmentFiles("journal", SUFFIX, COMPRESSED_SUFFIX);
+
+    private Segments() {
+    }
+
+    static Path path(Path directory, long index, boolean compressed) {
+        return SegmentFiles.path(directory, index, compressed ? COMPRESSED_SUFFIX : SUFFIX);
+    }
+
+    /**
+     * @return segment files sorted by index (oldest first)
+     */
+    static List<Path> list(Path directory) throws IOException {
+        return FILES.list(directory);
+    }
+
+    static long index(Path segment) {
+        return FILES.index(segment);
+    }
+
+    static boolean isCompressed(Path segment) {
+        return segment.getFileName().toString().endsWith(COMPRESSED_SUFFIX);
+    }
+}
@@ -0,0 +1,87 @@
+package pl.grzeslowski.jbambuapi.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of non-negative values with fixed, power of two buckets.
+ * <p>
+ * Bucket {@code 0} counts zeros and bucket {@code i} counts values in {@code [2^(i-1), 2^i)}, so any {@code long} fits
+ * in 64 buckets with at most 2x relative error. Every bucket is a {@link LongAdder}, so threads recording at the same
+ * time do not contend on one cache line, and recording never allocates.
+ */
+public final class Histogram {
+    static final int BUCKETS = 64;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (var i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * @param value value to record; negative values are recorded as {@code 0}
+     */
+    public void record(long value) {
+        var positive = Math.max(0, value);
+        buckets[bucket(positive)].increment();
+        sum.add(positive);
+        max.accumulate(positive);
+    }
+
+    static int bucket(long value) {
+        return 64 - Long.numberOfLeadingZeros(value);
+    }
+
+    /**
+     * Buckets are read one after another, so values recorded during the call may be partially visible.
+     */
+    public Snapshot snapshot() {
+        var counts = new long[BUCKETS];
+        var count = 0L;
+        for (var i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            count += counts[i];
+        }
+        return new Snapshot(count, sum.sum(), max.get(), counts);
+    }
+
+    /**
+     * @param count   number of recorded values
+     * @param sum     sum of recorded values
+     * @param max     largest recorded value
+     * @param buckets number of values in every bucket
+     */
+    public record Snapshot(long count, long sum, long max, long[] buckets) {
+        public double mean() {
+            return count > 0 ? (double) sum / count : 0;
+        }
+
+        /**
+         * @param percentile between {@code 0} and {@code 100}
+         * @return upper bound of the bucket that holds the percentile, but never more than {@link #max()}
+         */
+        public long percentile(double percentile) {
+            if (percentile < 0 || percentile > 100) {
+                throw new IllegalArgumentException("percentile has to be between 0 and 100, was " + percentile);
+            }
+            var rank = (long) Math.ceil(count * percentile / 100);
+            var seen = 0L;
+            for (var i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(max, upperBound(i));
+                }
+            }
+            return max;
+        }
+
+        private static long upperBound(int bucket) {
+            return bucket >= 63 ? Long.MAX_VALUE : (1L << bucket) - 1;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package pl.grzeslowski.jbambuapi.metrics;
+
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps counters and {@link Histogram}s of everything reported to {@link MetricsRecorder}, per printer and per camera.
+ * Time spent in subscribers is kept per printer and subscriber class, so short-lived subscribers (lambdas, conflating
+ * wrappers) neither pile up nor are kept alive by the metrics.
+ * <p>
+ * Recording is lock-free: counters are {@link LongAdder}s and metrics of a printer, subscriber class or camera are
+ * created once, on their first measurement. After that recording does not allocate. Metrics of printers and cameras
+ * that are gone can be dropped with {@link #removePrinter(String)} and {@link #removeCamera(String)}.
+ * <pre>{@code
+ * var metrics = new HotPathMetrics();
+ * Metrics.install(metrics);
+ * // later
+ * var parse = metrics.printer("SERIAL").getParseNanos().snapshot();
+ * log.info("Parsing p99: {} ns", parse.percentile(99));
+ * }</pre>
+ */
+public final class HotPathMetrics implements MetricsRecorder {
+    private final Map<String, PrinterMetrics> printers = new ConcurrentHashMap<>();
+    private final Map<String, CameraMetrics> cameras = new ConcurrentHashMap<>();
+
+    @Override
+    public void messageReceived(String serial, int bytes) {
+        var printer = printer(serial);
+        printer.messages.increment();
+        printer.payloadBytes.record(bytes);
+    }
+
+    @Override
+    public void reportParsed(String serial, long nanos) {
+        printer(serial).parseNanos.record(nanos);
+    }
+
+    @Override
+    public void reportMerged(String serial, long nanos) {
+        printer(serial).mergeNanos.record(nanos);
+    }
+
+    @Override
+    public void subscriberNotified(String serial, Object subscriber, long nanos) {
+        printer(serial).subscriber(subscriber.getClass().getName()).record(nanos);
+    }
+
+    @Override
+    public void subscriberFailed(String serial, Object subscriber) {
+        printer(serial).subscriberFailures.increment();
+    }
+
+    @Override
+    public void commandSent(String serial, long nanos) {
+        var printer = printer(serial);
+        printer.commands.increment();
+        printer.publishNanos.record(nanos);
+    }
+
+    @Override
+    public void frameRead(String host, int bytes, long nanos) {
+        var camera = cameras.get(host);
+        if (camera == null) {
+            camera = cameras.computeIfAbsent(host, __ -> new CameraMetrics());
+        }
+        camera.frames.increment();
+        camera.frameBytes.record(bytes);
+        camera.readNanos.record(nanos);
+    }
+
+    /**
+     * @return metrics of the printer; created empty if nothing was recorded for it yet
+     */
+    public PrinterMetrics printer(String serial) {
+        var printer = printers.get(serial);
+        return printer != null ? printer : printers.computeIfAbsent(serial, __ -> new PrinterMetrics());
+    }
+
+    public Map<String, PrinterMetrics> printers() {
+        return Collections.unmodifiableMap(printers);
+    }
+
+    /**
+     * Drops metrics of the printer, for example after it was removed from a fleet.
+     *
+     * @return {@code true} when there were metrics of the printer
+     */
+    public boolean removePrinter(String serial) {
+        return printers.remove(serial) != null;
+    }
+
+    public Map<String, CameraMetrics> cameras() {
+        return Collections.unmodifiableMap(cameras);
+    }
+
+    /**
+     * @return {@code true} when there were metrics of the camera
+     */
+    public boolean removeCamera(String host) {
+        return cameras.remove(host) != null;
+    }
+
+    @Getter
+    public static final class PrinterMetrics {
+        private final LongAdder messages = new LongAdder();
+        private final Histogram payloadBytes = new Histogram();
+        private final Histogram parseNanos = new Histogram();
+        private final Histogram mergeNanos = new Histogram();
+        private final LongAdder subscriberFailures = new LongAdder();
+        private final LongAdder commands = new LongAdder();
+        private final Histogram publishNanos = new Histogram();
+        private final Map<String, Histogram> subscriberNanos = new ConcurrentHashMap<>();
+
+        private PrinterMetrics() {
+        }
+
+        private Histogram subscriber(String className) {
+            var histogram = subscriberNanos.get(className);
+            return histogram != null ? histogram : subscriberNanos.computeIfAbsent(className, __ -> new Histogram());
+        }
+
+        /**
+         * @return time spent in subscribers of the printer, keyed by the class name of the subscriber
+         */
+        public Map<String, Histogram> getSubscriberNanos() {
+            return Collections.unmodifiableMap(subscriberNanos);
+        }
+    }
+
+    @Getter
+    public static final class CameraMetrics {
+        private final LongAdder frames = new LongAdder();
+        private final Histogram frameBytes = new Histogram();
+        private final Histogram readNanos = new Histogram();
+
+        private CameraMetrics() {
+        }
+    }
+}
@@ -0,0 +1,32 @@
+package pl.grzeslowski.jbambuapi.metrics;
+
+import java.util.ServiceLoader;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Holds the {@link MetricsRecorder} used by all clients, watchers and cameras in the JVM.
+ * <p>
+ * At start it is the first recorder registered in {@code META-INF/services/pl.grzeslowski.jbambuapi.metrics.MetricsRecorder}
+ * or {@link MetricsRecorder#NOOP} when there is none. Instrumented code reads it once per message with a single volatile
+ * read.
+ */
+public final class Metrics {
+    private static volatile MetricsRecorder recorder = ServiceLoader.load(MetricsRecorder.class)
+            .findFirst()
+            .orElse(MetricsRecorder.NOOP);
+
+    private Metrics() {
+    }
+
+    public static MetricsRecorder recorder() {
+        return recorder;
+    }
+
+    /**
+     * Replaces the recorder; pass {@link MetricsRecorder#NOOP} to stop recording.
+     */
+    public static void install(MetricsRecorder recorder) {
+        Metrics.recorder = requireNonNull(recorder, "recorder");
+    }
+}
@@ -0,0 +1,68 @@
+package pl.grzeslowski.jbambuapi.metrics;
+
+/**
+ * Receives measurements from hot paths of the library: MQTT message arrival, report parsing and merging, subscriber
+ * callbacks, command publishing and camera frame reading.
+ * <p>
+ * Methods are called on MQTT callback and camera threads for every message, so implementations have to be
+ * thread-safe and should neither block nor allocate. Every method does nothing by default, so an implementation
+ * overrides only what it is interested in.
+ *
+ * @see Metrics#install(MetricsRecorder)
+ * @see HotPathMetrics
+ */
+public interface MetricsRecorder {
+    MetricsRecorder NOOP = new MetricsRecorder() {
+        @Override
+        public String toString() {
+            return "MetricsRecorder.NOOP";
+        }
+    };
+
+    /**
+     * @param serial serial number of the printer
+     * @param bytes  size of the payload
+     */
+    default void messageReceived(String serial, int bytes) {
+    }
+
+    /**
+     * @param nanos time to turn the payload into a {@link pl.grzeslowski.jbambuapi.mqtt.Report}
+     */
+    default void reportParsed(String serial, long nanos) {
+    }
+
+    /**
+     * @param nanos time to merge the report into the full state
+     */
+    default void reportMerged(String serial, long nanos) {
+    }
+
+    /**
+     * @param subscriber {@link pl.grzeslowski.jbambuapi.mqtt.ChannelMessageConsumer} or
+     *                   {@link pl.grzeslowski.jbambuapi.mqtt.PrinterWatcher.StateSubscriber} that was called
+     * @param nanos      time spent in the subscriber
+     */
+    default void subscriberNotified(String serial, Object subscriber, long nanos) {
+    }
+
+    /**
+     * Subscriber threw an exception which was logged and swallowed.
+     */
+    default void subscriberFailed(String serial, Object subscriber) {
+    }
+
+    /**
+     * @param nanos time to publish the command to the MQTT client
+     */
+    default void commandSent(String serial, long nanos) {
+    }
+
+    /**
+     * @param host  host of the camera
+     * @param bytes size of the JPEG frame
+     * @param nanos time to read the frame, including waiting for the camera
+     */
+    default void frameRead(String host, int bytes, long nanos) {
+    }
+}
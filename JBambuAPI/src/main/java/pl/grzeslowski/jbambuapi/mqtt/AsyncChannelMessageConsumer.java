@@ -0,0 +1,55 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import pl.grzeslowski.jbambuapi.dispatch.DispatchConfig;
+import pl.grzeslowski.jbambuapi.dispatch.Dispatcher;
+
+/**
+ * Passes MQTT messages to the delegate on its own thread, so a slow consumer does not block the MQTT callback thread
+ * (and with it keep alive handling of the connection).
+ * <pre>{@code
+ * printerClient.subscribe(new AsyncChannelMessageConsumer(consumer, DispatchConfig.buildDefault()));
+ * }</pre>
+ * Remember to {@link #close()} it after unsubscribing.
+ */
+public final class AsyncChannelMessageConsumer implements ChannelMessageConsumer, AutoCloseable {
+    private final ChannelMessageConsumer delegate;
+    private final Dispatcher<Message> dispatcher;
+
+    public AsyncChannelMessageConsumer(ChannelMessageConsumer delegate, DispatchConfig config) {
+        this.delegate = delegate;
+        this.dispatcher = new Dispatcher<>(message -> delegate.consume(message.topic(), message.data()), config);
+    }
+
+    @Override
+    public void consume(String topic, byte[] data) {
+        dispatcher.offer(new Message(topic, data));
+    }
+
+    public int getQueueDepth() {
+        return dispatcher.getQueueDepth();
+    }
+
+    public long getDroppedCount() {
+        return dispatcher.getDroppedCount();
+    }
+
+    public long getDeliveredCount() {
+        return dispatcher.getDeliveredCount();
+    }
+
+    @Override
+    public void close() {
+        dispatcher.close();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncChannelMessageConsumer{" +
+                "delegate=" + delegate +
+                ", dispatcher=" + dispatcher +
+                '}';
+    }
+
+    private record Message(String topic, byte[] data) {
+    }
+}
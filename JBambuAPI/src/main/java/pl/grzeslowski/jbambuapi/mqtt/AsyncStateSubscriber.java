@@ -0,0 +1,70 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import pl.grzeslowski.jbambuapi.dispatch.DispatchConfig;
+import pl.grzeslowski.jbambuapi.dispatch.Dispatcher;
+import pl.grzeslowski.jbambuapi.dispatch.OverflowPolicy;
+
+import java.util.Set;
+
+/**
+ * Passes state updates to the delegate on its own thread, so a slow subscriber does not block
+ * {@link PrinterWatcher#consume(String, byte[])}.
+ * <pre>{@code
+ * watcher.subscribe(new AsyncStateSubscriber(subscriber, DispatchConfig.withPolicy(OverflowPolicy.CONFLATE)));
+ * }</pre>
+ * If the delegate is a {@link PrinterWatcher.ChangeSubscriber} it also receives changed fields. With
+ * {@link OverflowPolicy#CONFLATE} the delegate always gets the latest full state, but deltas (and changes) of replaced
+ * updates are lost.
+ * <p>
+ * Remember to {@link #close()} it after unsubscribing.
+ */
+public final class AsyncStateSubscriber implements PrinterWatcher.ChangeSubscriber, AutoCloseable {
+    private final PrinterWatcher.StateSubscriber delegate;
+    private final Dispatcher<Update> dispatcher;
+
+    public AsyncStateSubscriber(PrinterWatcher.StateSubscriber delegate, DispatchConfig config) {
+        this.delegate = delegate;
+        this.dispatcher = new Dispatcher<>(this::deliver, config);
+    }
+
+    private void deliver(Update update) {
+        if (delegate instanceof PrinterWatcher.ChangeSubscriber changeSubscriber) {
+            changeSubscriber.newState(update.delta(), update.fullState(), update.changes());
+        } else {
+            delegate.newState(update.delta(), update.fullState());
+        }
+    }
+
+    @Override
+    public void newState(Report delta, Report fullState, Set<ReportField> changes) {
+        dispatcher.offer(new Update(delta, fullState, changes));
+    }
+
+    public int getQueueDepth() {
+        return dispatcher.getQueueDepth();
+    }
+
+    public long getDroppedCount() {
+        return dispatcher.getDroppedCount();
+    }
+
+    public long getDeliveredCount() {
+        return dispatcher.getDeliveredCount();
+    }
+
+    @Override
+    public void close() {
+        dispatcher.close();
+    }
+
+    @Override
+    public String toString() {
+        return "AsyncStateSubscriber{" +
+                "delegate=" + delegate +
+                ", dispatcher=" + dispatcher +
+                '}';
+    }
+
+    private record Update(Report delta, Report fullState, Set<ReportField> changes) {
+    }
+}
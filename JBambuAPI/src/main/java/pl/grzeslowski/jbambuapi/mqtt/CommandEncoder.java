@@ -0,0 +1,403 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClient.Channel.*;
+
+import java.util.Arrays;
+import java.util.function.Function;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Encodes {@link PrinterClient.Channel.Command}s straight into JSON bytes.
+ * <p>
+ * Every command is published as an object with all six sections ({@code info}, {@code pushing}, {@code print},
+ * {@code camera}, {@code xcam} and {@code system}), where only one of them is not {@code null}. Everything around the
+ * sequence id and the command parameters is precompiled into byte templates, so encoding is a couple of array copies
+ * into a reusable buffer. Strings are escaped the same way Jackson does it.
+ * <p>
+ * Instances are thread safe.
+ */
+final class CommandEncoder {
+    private static final String[] SECTIONS = {"info", "pushing", "print", "camera", "xcam", "system"};
+    private static final int INFO = 0;
+    private static final int PUSHING = 1;
+    private static final int PRINT = 2;
+    private static final int CAMERA = 3;
+    private static final int XCAM = 4;
+    private static final int SYSTEM = 5;
+    /**
+     * Everything from the start of the payload to the value of {@code sequence_id} in the given section.
+     */
+    private static final byte[][] OPEN = new byte[SECTIONS.length][];
+    /**
+     * Everything from the end of the given section to the end of the payload.
+     */
+    private static final byte[][] CLOSE = new byte[SECTIONS.length][];
+
+    static {
+        for (var section = 0; section < SECTIONS.length; section++) {
+            var open = new StringBuilder("{");
+            for (var i = 0; i < section; i++) {
+                open.append('"').append(SECTIONS[i]).append("\":null,");
+            }
+            open.append('"').append(SECTIONS[section]).append("\":{\"sequence_id\":\"");
+            OPEN[section] = bytes(open.toString());
+
+            var close = new StringBuilder("}");
+            for (var i = section + 1; i < SECTIONS.length; i++) {
+                close.append(",\"").append(SECTIONS[i]).append("\":null");
+            }
+            CLOSE[section] = bytes(close.append('}').toString());
+        }
+    }
+
+    private static final byte[][] INFO_COMMANDS = fields(InfoCommand.values(), info -> command(info));
+    private static final byte[][] PRINT_COMMANDS = fields(PrintCommand.values(), print -> command(print) + param(""));
+    private static final byte[][] AMS_CONTROL_COMMANDS = fields(AmsControlCommand.values(), ams -> command(ams) + param(switch (ams) {
+        case RESUME -> "resume";
+        case RESET -> "reset";
+        case PAUSE -> "pause";
+    }));
+    private static final byte[][] SYSTEM_COMMANDS = fields(SystemCommand.values(), system -> command(system));
+    private static final byte[][] PRINT_SPEED_COMMANDS = fields(
+            new PrintSpeedCommand[]{PrintSpeedCommand.SILENT, PrintSpeedCommand.STANDARD, PrintSpeedCommand.SPORT, PrintSpeedCommand.LUDICROUS},
+            speed -> command(speed) + param(speed.getLevel() + ""));
+    private static final byte[] IP_CAM_RECORD_ENABLE = bytes(command(new IpCamRecordCommand(true)) + ",\"control\":\"enable\"");
+    private static final byte[] IP_CAM_RECORD_DISABLE = bytes(command(new IpCamRecordCommand(false)) + ",\"control\":\"disable\"");
+    private static final byte[] IP_CAM_TIMELAPSE_ENABLE = bytes(command(new IpCamTimelapsCommand(true)) + ",\"control\":\"enable\"");
+    private static final byte[] IP_CAM_TIMELAPSE_DISABLE = bytes(command(new IpCamTimelapsCommand(false)) + ",\"control\":\"disable\"");
+    private static final byte[][] LED_NODES = fields(LedControlCommand.LedNode.values(), node -> switch (node) {
+        case CHAMBER_LIGHT -> ",\"led_node\":\"chamber_light\"";
+        case WORK_LIGHT -> ",\"led_node\":\"work_light\"";
+    });
+    private static final byte[][] LED_MODES = fields(LedControlCommand.LedMode.values(), mode -> switch (mode) {
+        case ON -> ",\"led_mode\":\"on\"";
+        case OFF -> ",\"led_mode\":\"off\"";
+        case FLASHING -> ",\"led_mode\":\"flashing\"";
+    });
+    private static final byte[][] XCAM_MODULES = fields(XCamControlCommand.Module.values(), module -> switch (module) {
+        case FIRST_LAYER_INSPECTOR -> ",\"module_name\":\"first_layer_inspector\"";
+        case SPAGHETTI_DETECTOR -> ",\"module_name\":\"spaghetti_detector\"";
+    });
+    private static final byte[] PUSHALL = bytes(command("pushall"));
+    private static final byte[] AMS_CHANGE_FILAMENT = bytes(command("ams_change_filament"));
+    private static final byte[] AMS_USER_SETTING = bytes(command("ams_user_setting"));
+    private static final byte[] AMS_FILAMENT_SETTING = bytes(command("ams_filament_setting"));
+    private static final byte[] GCODE_FILE = bytes(command("gcode_file"));
+    private static final byte[] GCODE_LINE = bytes(command("gcode_line"));
+    private static final byte[] LEDCTRL = bytes(command("ledctrl"));
+    private static final byte[] XCAM_CONTROL_SET = bytes(command("xcam_control_set"));
+    private static final byte[] VERSION = name("version");
+    private static final byte[] PUSH_TARGET = name("push_target");
+    private static final byte[] TARGET = name("target");
+    private static final byte[] CURR_TEMP = name("curr_temp");
+    private static final byte[] TAR_TEMP = name("tar_temp");
+    private static final byte[] AMS_ID = name("ams_id");
+    private static final byte[] STARTUP_READ_OPTION = name("startup_read_option");
+    private static final byte[] TRAY_READ_OPTION = name("tray_read_option");
+    private static final byte[] TRAY_ID = name("tray_id");
+    private static final byte[] TRAY_INFO_IDX = name("tray_info_idx");
+    private static final byte[] TRAY_COLOR = name("tray_color");
+    private static final byte[] NOZZLE_TEMP_MIN = name("nozzle_temp_min");
+    private static final byte[] NOZZLE_TEMP_MAX = name("nozzle_temp_max");
+    private static final byte[] TRAY_TYPE = name("tray_type");
+    private static final byte[] PARAM = name("param");
+    private static final byte[] USER_ID = name("user_id");
+    private static final byte[] LED_ON_TIME = name("led_on_time");
+    private static final byte[] LED_OFF_TIME = name("led_off_time");
+    private static final byte[] LOOP_TIMES = name("loop_times");
+    private static final byte[] INTERVAL_TIME = name("interval_time");
+    private static final byte[] CONTROL = name("control");
+    private static final byte[] PRINT_HALT = name("print_halt");
+    private static final byte[] NULL = bytes("null");
+    private static final byte[] TRUE = bytes("true");
+    private static final byte[] FALSE = bytes("false");
+    /**
+     * Lines of {@link GCodeLineCommand} are joined with a literal backslash and {@code n}, escaped for JSON.
+     */
+    private static final byte[] GCODE_LINE_SEPARATOR = bytes("\\\\n");
+    private static final byte[] HEX = bytes("0123456789ABCDEF");
+
+    private byte[] buffer = new byte[512];
+    private int size;
+
+    /**
+     * @return JSON payload of the command; a new array that is not touched by the encoder afterwards
+     * @throws IllegalArgumentException when the command cannot be sent (e.g. unknown print speed) or is a
+     *                                  {@link RawCommand}
+     */
+    synchronized byte[] encode(Command command, int sequenceId) {
+        size = 0;
+        switch (command) {
+            case InfoCommand info -> fixed(INFO, sequenceId, INFO_COMMANDS[info.ordinal()]);
+            case PrintCommand print -> fixed(PRINT, sequenceId, PRINT_COMMANDS[print.ordinal()]);
+            case AmsControlCommand ams -> fixed(PRINT, sequenceId, AMS_CONTROL_COMMANDS[ams.ordinal()]);
+            case SystemCommand system -> fixed(SYSTEM, sequenceId, SYSTEM_COMMANDS[system.ordinal()]);
+            case PrintSpeedCommand speed -> {
+                if (!speed.canSend()) {
+                    throw new IllegalArgumentException("Cannot send %s command!".formatted(speed));
+                }
+                fixed(PRINT, sequenceId, PRINT_SPEED_COMMANDS[speed.getLevel() - 1]);
+            }
+            case IpCamRecordCommand record ->
+                    fixed(CAMERA, sequenceId, record.enable() ? IP_CAM_RECORD_ENABLE : IP_CAM_RECORD_DISABLE);
+            case IpCamTimelapsCommand timelapse ->
+                    fixed(CAMERA, sequenceId, timelapse.enable() ? IP_CAM_TIMELAPSE_ENABLE : IP_CAM_TIMELAPSE_DISABLE);
+            case PushingCommand pushing -> {
+                open(PUSHING, sequenceId);
+                write(PUSHALL);
+                field(VERSION, pushing.version());
+                field(PUSH_TARGET, pushing.pushTarget());
+                write(CLOSE[PUSHING]);
+            }
+            case ChangeFilamentCommand change -> {
+                open(PRINT, sequenceId);
+                write(AMS_CHANGE_FILAMENT);
+                field(TARGET, change.target());
+                field(CURR_TEMP, change.currentTemperature());
+                field(TAR_TEMP, change.targetTemperature());
+                write(CLOSE[PRINT]);
+            }
+            case AmsUserSettingCommand ams -> {
+                open(PRINT, sequenceId);
+                write(AMS_USER_SETTING);
+                field(AMS_ID, ams.amsId());
+                field(STARTUP_READ_OPTION, ams.startupReadOption());
+                field(TRAY_READ_OPTION, ams.trayReadOption());
+                write(CLOSE[PRINT]);
+            }
+            case AmsFilamentSettingCommand ams -> {
+                open(PRINT, sequenceId);
+                write(AMS_FILAMENT_SETTING);
+                field(AMS_ID, ams.amsId());
+                field(TRAY_ID, ams.trayId());
+                field(TRAY_INFO_IDX, ams.trayInfoIdx());
+                field(TRAY_COLOR, ams.trayColor());
+                field(NOZZLE_TEMP_MIN, ams.nozzleTempMin());
+                field(NOZZLE_TEMP_MAX, ams.nozzleTempMax());
+                field(TRAY_TYPE, ams.trayType());
+                write(CLOSE[PRINT]);
+            }
+            case GCodeFileCommand file -> {
+                open(PRINT, sequenceId);
+                write(GCODE_FILE);
+                field(PARAM, file.filename());
+                write(CLOSE[PRINT]);
+            }
+            case GCodeLineCommand gCode -> {
+                open(PRINT, sequenceId);
+                write(GCODE_LINE);
+                write(PARAM);
+                write('"');
+                var lines = gCode.lines();
+                for (var i = 0; i < lines.size(); i++) {
+                    if (i > 0) {
+                        write(GCODE_LINE_SEPARATOR);
+                    }
+                    escaped(String.valueOf(lines.get(i)));
+                }
+                write('"');
+                field(USER_ID, gCode.userId());
+                write(CLOSE[PRINT]);
+            }
+            case LedControlCommand led -> {
+                open(SYSTEM, sequenceId);
+                write(LEDCTRL);
+                write(LED_NODES[led.ledNode().ordinal()]);
+                write(LED_MODES[led.ledMode().ordinal()]);
+                // only for flashing
+                field(LED_ON_TIME, orZero(led.ledOnTime()));
+                field(LED_OFF_TIME, orZero(led.ledOffTime()));
+                field(LOOP_TIMES, orZero(led.loopTimes()));
+                field(INTERVAL_TIME, orZero(led.intervalTime()));
+                write(CLOSE[SYSTEM]);
+            }
+            case XCamControlCommand xCam -> {
+                open(XCAM, sequenceId);
+                write(XCAM_CONTROL_SET);
+                write(XCAM_MODULES[xCam.module().ordinal()]);
+                field(CONTROL, xCam.control());
+                field(PRINT_HALT, xCam.printHalt());
+                write(CLOSE[XCAM]);
+            }
+            case RawCommand raw -> throw new IllegalArgumentException("Raw command %s encodes itself!".formatted(raw));
+        }
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /**
+     * @return value of {@code command} in the payload of the command (and in the printer's echo) or {@code null} for
+     * a {@link RawCommand}
+     */
+    static String commandName(Command command) {
+        return switch (command) {
+            case InfoCommand info -> switch (info) {
+                case GET_VERSION -> "get_version";
+            };
+            case PrintCommand print -> switch (print) {
+                case STOP -> "stop";
+                case PAUSE -> "pause";
+                case RESUME -> "resume";
+                case CALIBRATION -> "calibration";
+                case UNLOAD_FILAMENT -> "unload_filament";
+            };
+            case SystemCommand system -> switch (system) {
+                case GET_ACCESS_CODE -> "get_access_code";
+            };
+            case AmsControlCommand ignored -> "ams_control";
+            case PrintSpeedCommand ignored -> "print_speed";
+            case IpCamRecordCommand ignored -> "ipcam_record_set";
+            case IpCamTimelapsCommand ignored -> "ipcam_timelapse";
+            case PushingCommand ignored -> "pushall";
+            case ChangeFilamentCommand ignored -> "ams_change_filament";
+            case AmsUserSettingCommand ignored -> "ams_user_setting";
+            case AmsFilamentSettingCommand ignored -> "ams_filament_setting";
+            case GCodeFileCommand ignored -> "gcode_file";
+            case GCodeLineCommand ignored -> "gcode_line";
+            case LedControlCommand ignored -> "ledctrl";
+            case XCamControlCommand ignored -> "xcam_control_set";
+            case RawCommand ignored -> null;
+        };
+    }
+
+    private void fixed(int section, int sequenceId, byte[] fields) {
+        open(section, sequenceId);
+        write(fields);
+        write(CLOSE[section]);
+    }
+
+    private void open(int section, int sequenceId) {
+        write(OPEN[section]);
+        number(sequenceId);
+        write('"');
+    }
+
+    private void field(byte[] name, int value) {
+        write(name);
+        number(value);
+    }
+
+    private void field(byte[] name, boolean value) {
+        write(name);
+        write(value ? TRUE : FALSE);
+    }
+
+    private void field(byte[] name, String value) {
+        write(name);
+        if (value == null) {
+            write(NULL);
+            return;
+        }
+        write('"');
+        escaped(value);
+        write('"');
+    }
+
+    private void number(int value) {
+        var remaining = (long) value;
+        if (remaining < 0) {
+            write('-');
+            remaining = -remaining;
+        }
+        var digits = 1;
+        for (var i = remaining; i >= 10; i /= 10) {
+            digits++;
+        }
+        ensureCapacity(digits);
+        for (var i = size + digits - 1; i >= size; i--) {
+            buffer[i] = (byte) ('0' + remaining % 10);
+            remaining /= 10;
+        }
+        size += digits;
+    }
+
+    private void escaped(String value) {
+        var length = value.length();
+        for (var i = 0; i < length; i++) {
+            var c = value.charAt(i);
+            if (c >= 0x80) {
+                // multibyte characters are rare (file names), let the JDK deal with UTF-8 and surrogate pairs
+                var end = i + 1;
+                while (end < length && value.charAt(end) >= 0x80) {
+                    end++;
+                }
+                write(value.substring(i, end).getBytes(UTF_8));
+                i = end - 1;
+            } else if (c == '"' || c == '\\') {
+                write('\\');
+                write((byte) c);
+            } else if (c < 0x20) {
+                write('\\');
+                switch (c) {
+                    case '\b' -> write('b');
+                    case '\t' -> write('t');
+                    case '\n' -> write('n');
+                    case '\f' -> write('f');
+                    case '\r' -> write('r');
+                    default -> {
+                        write('u');
+                        write('0');
+                        write('0');
+                        write(HEX[c >> 4]);
+                        write(HEX[c & 0xF]);
+                    }
+                }
+            } else {
+                write((byte) c);
+            }
+        }
+    }
+
+    private void write(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void write(char c) {
+        write((byte) c);
+    }
+
+    private void write(byte b) {
+        ensureCapacity(1);
+        buffer[size++] = b;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+
+    private static int orZero(Integer value) {
+        return value != null ? value : 0;
+    }
+
+    private static String command(Command command) {
+        return command(commandName(command));
+    }
+
+    private static String command(String command) {
+        return ",\"command\":\"" + command + "\"";
+    }
+
+    private static String param(String param) {
+        return ",\"param\":\"" + param + "\"";
+    }
+
+    private static byte[] name(String name) {
+        return bytes(",\"" + name + "\":");
+    }
+
+    private static <T> byte[][] fields(T[] values, Function<T, String> fields) {
+        var result = new byte[values.length][];
+        for (var i = 0; i < values.length; i++) {
+            result[i] = bytes(fields.apply(values[i]));
+        }
+        return result;
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(UTF_8);
+    }
+}
@@ -33,4 +33,8 @@ public class CommunicationException extends RuntimeException{
     public static CommunicationException fromJsonException(String cause, JsonProcessingException exception) {
         return new CommunicationException(cause, exception);
     }
+
+    public static CommunicationException fromPrinterResponse(String cause) {
+        return new CommunicationException(cause);
+    }
 }
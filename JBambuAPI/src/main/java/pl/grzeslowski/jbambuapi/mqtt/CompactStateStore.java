@@ -0,0 +1,38 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Keeps the printer state in a {@link CompactReport} instead of a tree of {@link Report} records. Use it instead of
+ * {@link PrinterWatcher} when many printer states are kept in memory and nobody needs to be notified about changes.
+ * <pre>{@code
+ * var store = new CompactStateStore();
+ * printerClient.subscribe(store);
+ * double nozzle = store.getState().printNozzleTemper();
+ * }</pre>
+ */
+@Slf4j
+public class CompactStateStore implements ChannelMessageConsumer {
+    @Getter
+    private final CompactReport state = new CompactReport();
+
+    @Override
+    public void consume(String topic, byte[] data) {
+        if (!topic.endsWith("/report")) {
+            return;
+        }
+
+        try (var parser = JsonMappers.LENIENT.createParser(data)) {
+            state.apply(Report.parse(parser));
+        } catch (IOException e) {
+            if (log.isWarnEnabled()) {
+                log.warn("Cannot parse JSON: {}", new String(data, UTF_8), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.Collections.unmodifiableSet;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Delivers state to the delegate at most once per {@code interval}.
+ * <p>
+ * All deltas that arrive between two deliveries are merged into one delta, and their changed fields are combined, so
+ * the delegate sees one update with everything that changed since its previous call plus the current full state.
+ * Updates are delivered on a separate thread, so {@link PrinterWatcher#consume(String, byte[])} never waits for the
+ * delegate.
+ * <pre>{@code
+ * // refresh dashboard at most 5 times per second
+ * watcher.subscribe(new ConflatingStateSubscriber(dashboard, Duration.ofMillis(200)));
+ * }</pre>
+ * Remember to {@link #close()} it after unsubscribing.
+ */
+@Slf4j
+public final class ConflatingStateSubscriber implements PrinterWatcher.ChangeSubscriber, AutoCloseable {
+    private final PrinterWatcher.StateSubscriber delegate;
+    private final long intervalNanos;
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownScheduler;
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+
+    private final Object lock = new Object();
+    private Report pendingDelta;
+    private Report pendingState;
+    private Set<ReportField> pendingChanges = EnumSet.noneOf(ReportField.class);
+    private boolean scheduled;
+    private long lastDelivery;
+    private boolean closed;
+
+    public ConflatingStateSubscriber(PrinterWatcher.StateSubscriber delegate, Duration interval) {
+        this(delegate, interval,
+                Executors.newSingleThreadScheduledExecutor(Thread.ofVirtual().name("jbambuapi-conflating").factory()),
+                true);
+    }
+
+    /**
+     * @param scheduler executor used to deliver updates; it is not shut down by {@link #close()}
+     */
+    public ConflatingStateSubscriber(PrinterWatcher.StateSubscriber delegate, Duration interval, ScheduledExecutorService scheduler) {
+        this(delegate, interval, scheduler, false);
+    }
+
+    private ConflatingStateSubscriber(PrinterWatcher.StateSubscriber delegate, Duration interval, ScheduledExecutorService scheduler, boolean ownScheduler) {
+        if (interval.isNegative() || interval.isZero()) {
+            throw new IllegalArgumentException("interval has to be positive, was " + interval);
+        }
+        this.delegate = requireNonNull(delegate, "delegate");
+        this.intervalNanos = interval.toNanos();
+        this.scheduler = requireNonNull(scheduler, "scheduler");
+        this.ownScheduler = ownScheduler;
+        this.lastDelivery = System.nanoTime() - intervalNanos;
+    }
+
+    @Override
+    public void newState(Report delta, Report fullState, Set<ReportField> changes) {
+        received.incrementAndGet();
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            if (delta != null) {
+                pendingDelta = pendingDelta != null ? pendingDelta.merge(delta) : delta;
+            }
+            pendingState = fullState;
+            pendingChanges.addAll(changes);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+            var delay = Math.max(0, lastDelivery + intervalNanos - System.nanoTime());
+            scheduler.schedule(this::deliver, delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private void deliver() {
+        Report delta;
+        Report state;
+        Set<ReportField> changes;
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            delta = pendingDelta;
+            state = pendingState;
+            changes = unmodifiableSet(pendingChanges);
+            pendingDelta = null;
+            pendingState = null;
+            pendingChanges = EnumSet.noneOf(ReportField.class);
+            scheduled = false;
+            lastDelivery = System.nanoTime();
+        }
+        try {
+            if (delegate instanceof PrinterWatcher.ChangeSubscriber changeSubscriber) {
+                changeSubscriber.newState(delta, state, changes);
+            } else {
+                delegate.newState(delta, state);
+            }
+            delivered.incrementAndGet();
+        } catch (Exception e) {
+            log.warn("Subscriber {} could not accept state: {}", delegate, delta, e);
+        }
+    }
+
+    /**
+     * @return number of updates received from {@link PrinterWatcher}
+     */
+    public long getReceivedCount() {
+        return received.get();
+    }
+
+    /**
+     * @return number of (merged) updates passed to the delegate
+     */
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    /**
+     * Stops delivering updates. Pending update is discarded.
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            pendingDelta = null;
+            pendingState = null;
+        }
+        if (ownScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ConflatingStateSubscriber{" +
+                "delegate=" + delegate +
+                ", interval=" + Duration.ofNanos(intervalNanos) +
+                ", received=" + received +
+                ", delivered=" + delivered +
+                '}';
+    }
+}
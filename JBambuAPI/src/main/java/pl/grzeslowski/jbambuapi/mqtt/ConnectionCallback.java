@@ -28,4 +28,13 @@ public interface ConnectionCallback {
      * @param cause the exception or reason for the connection loss.
      */
     void connectionLost(Throwable cause);
+
+    /**
+     * Called when an attempt to connect made by {@link pl.grzeslowski.jbambuapi.fleet.ReconnectSupervisor} fails.
+     * {@link PrinterClient#connect(ConnectionCallback)} throws the exception instead.
+     *
+     * @param cause the reason why the attempt failed.
+     */
+    default void connectFailed(Throwable cause) {
+    }
 }
@@ -0,0 +1,34 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @param maxChunkBytes max length of G-code sent in one message; a single longer line is sent on its own
+ * @param window        max number of chunks sent without the printer echoing them back
+ * @param ackTimeout    how long to wait for the echo of the oldest chunk before failing the stream
+ * @param userId        {@code user_id} sent with every chunk (optional)
+ */
+public record GCodeStreamConfig(int maxChunkBytes, int window, Duration ackTimeout, String userId) {
+    public static final int DEFAULT_MAX_CHUNK_BYTES = 4 * 1024;
+    public static final int DEFAULT_WINDOW = 4;
+    public static final Duration DEFAULT_ACK_TIMEOUT = Duration.ofSeconds(10);
+
+    public GCodeStreamConfig {
+        if (maxChunkBytes <= 0) {
+            throw new IllegalArgumentException("maxChunkBytes has to be positive, was " + maxChunkBytes);
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("window has to be positive, was " + window);
+        }
+        requireNonNull(ackTimeout, "ackTimeout");
+        if (ackTimeout.isNegative() || ackTimeout.isZero()) {
+            throw new IllegalArgumentException("ackTimeout has to be positive, was " + ackTimeout);
+        }
+    }
+
+    public static GCodeStreamConfig buildDefault() {
+        return new GCodeStreamConfig(DEFAULT_MAX_CHUNK_BYTES, DEFAULT_WINDOW, DEFAULT_ACK_TIMEOUT, null);
+    }
+}
@@ -0,0 +1,30 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import java.time.Duration;
+
+/**
+ * Summary of one {@link GCodeStreamer} run.
+ *
+ * @param lines         number of sent G-code lines (without comments and blank lines)
+ * @param chunks        number of sent messages
+ * @param bytes         length of sent G-code
+ * @param elapsed       time from sending the first chunk to receiving the echo of the last one
+ * @param stalls        how many times the window was full and sending had to wait for an echo
+ * @param stalled       total time spent waiting for a free window slot
+ * @param maxAckLatency longest time between sending a chunk and receiving its echo
+ */
+public record GCodeStreamStats(long lines, long chunks, long bytes, Duration elapsed, long stalls, Duration stalled,
+                               Duration maxAckLatency) {
+    public double linesPerSecond() {
+        return perSecond(lines);
+    }
+
+    public double bytesPerSecond() {
+        return perSecond(bytes);
+    }
+
+    private double perSecond(long value) {
+        var nanos = elapsed.toNanos();
+        return nanos > 0 ? value * 1_000_000_000.0 / nanos : 0;
+    }
+}
@@ -0,0 +1,187 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClient.Channel.GCodeLineCommand;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Streams G-code to the printer in chunks of {@code gcode_line} commands with windowed flow control.
+ * <p>
+ * Comments and blank lines are dropped and the remaining lines are packed into messages of at most
+ * {@link GCodeStreamConfig#maxChunkBytes()}. At most {@link GCodeStreamConfig#window()} chunks are in flight; the next
+ * one is sent only after the printer echoes one of them back in a report ({@code print.command = gcode_line} with the
+ * same {@code sequence_id}), so the stream is paced by the printer and not by the MQTT connection.
+ * <pre>{@code
+ * var streamer = new GCodeStreamer(printerClient, GCodeStreamConfig.buildDefault());
+ * var stats = streamer.stream(Path.of("calibration.gcode"));
+ * log.info("Sent {} lines, {} lines/s", stats.lines(), stats.linesPerSecond());
+ * }</pre>
+ * Echoes are matched by {@link PrinterClient.Channel#sendCommandAsync(PrinterClient.Channel.Command, Duration)}. Only
+ * one stream can run at a time.
+ */
+public final class GCodeStreamer {
+    private static final String FAILED = "failed";
+    private static final int SEPARATOR_BYTES = 2;
+
+    private final PrinterClient client;
+    private final GCodeStreamConfig config;
+    private final ReentrantLock streamLock = new ReentrantLock();
+
+    public GCodeStreamer(PrinterClient client, GCodeStreamConfig config) {
+        this.client = requireNonNull(client, "client");
+        this.config = requireNonNull(config, "config");
+    }
+
+    public GCodeStreamStats stream(Path file) throws IOException, InterruptedException, TimeoutException {
+        try (var lines = Files.lines(file, UTF_8)) {
+            return stream(lines);
+        }
+    }
+
+    public GCodeStreamStats stream(Stream<String> lines) throws InterruptedException, TimeoutException {
+        return stream(lines.iterator());
+    }
+
+    /**
+     * Sends all lines and waits until the printer echoes the last chunk.
+     *
+     * @throws TimeoutException       when the printer did not echo a chunk within {@link GCodeStreamConfig#ackTimeout()}
+     * @throws CommunicationException when the printer responded that a chunk failed or the chunk cannot be published
+     * @throws IllegalStateException  when another stream is running
+     */
+    public GCodeStreamStats stream(Iterator<String> lines) throws InterruptedException, TimeoutException {
+        if (!streamLock.tryLock()) {
+            throw new IllegalStateException("Another G-code stream is in progress!");
+        }
+        try {
+            var run = new Run(config.window());
+            var start = System.nanoTime();
+            var chunk = new ArrayList<String>();
+            var chunkBytes = 0;
+            while (lines.hasNext()) {
+                var line = strip(lines.next());
+                if (line.isEmpty()) {
+                    continue;
+                }
+                if (!chunk.isEmpty() && chunkBytes + SEPARATOR_BYTES + line.length() > config.maxChunkBytes()) {
+                    send(run, chunk, chunkBytes);
+                    chunk = new ArrayList<>();
+                    chunkBytes = 0;
+                }
+                chunkBytes += (chunk.isEmpty() ? 0 : SEPARATOR_BYTES) + line.length();
+                chunk.add(line);
+            }
+            if (!chunk.isEmpty()) {
+                send(run, chunk, chunkBytes);
+            }
+            // wait for echoes of all chunks in flight
+            if (!run.window.tryAcquire(config.window(), config.ackTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                throw timeout(run);
+            }
+            checkFailure(run);
+            return new GCodeStreamStats(
+                    run.lines,
+                    run.chunks,
+                    run.bytes,
+                    Duration.ofNanos(System.nanoTime() - start),
+                    run.stalls,
+                    Duration.ofNanos(run.stalledNanos),
+                    Duration.ofNanos(run.maxAckLatencyNanos.get()));
+        } finally {
+            streamLock.unlock();
+        }
+    }
+
+    private void send(Run run, List<String> lines, int bytes) throws InterruptedException, TimeoutException {
+        if (!run.window.tryAcquire()) {
+            var stallStart = System.nanoTime();
+            run.stalls++;
+            if (!run.window.tryAcquire(config.ackTimeout().toNanos(), TimeUnit.NANOSECONDS)) {
+                throw timeout(run);
+            }
+            run.stalledNanos += System.nanoTime() - stallStart;
+        }
+        checkFailure(run);
+        var sent = System.nanoTime();
+        run.inFlight.incrementAndGet();
+        client.getChannel()
+                .sendCommandAsync(new GCodeLineCommand(lines, config.userId()), config.ackTimeout())
+                .whenComplete((report, throwable) -> run.echoed(report, throwable, sent));
+        run.lines += lines.size();
+        run.chunks++;
+        run.bytes += bytes;
+    }
+
+    private TimeoutException timeout(Run run) {
+        return new TimeoutException("Printer did not echo %s G-code chunks within %s!"
+                .formatted(run.inFlight.get(), config.ackTimeout()));
+    }
+
+    private void checkFailure(Run run) throws TimeoutException {
+        switch (run.failure) {
+            case null -> {
+            }
+            case TimeoutException e -> throw timeout(run);
+            case RuntimeException e -> throw e;
+            case Throwable e -> throw new IllegalStateException("Cannot stream G-code!", e);
+        }
+    }
+
+    private static String strip(String line) {
+        var comment = line.indexOf(';');
+        if (comment >= 0) {
+            line = line.substring(0, comment);
+        }
+        return line.strip();
+    }
+
+    /**
+     * State of one stream. Counters are touched only by the streaming thread; everything else is shared with the MQTT
+     * callback thread.
+     */
+    private static final class Run {
+        final Semaphore window;
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicLong maxAckLatencyNanos = new AtomicLong();
+        volatile Throwable failure;
+        long lines;
+        long chunks;
+        long bytes;
+        long stalls;
+        long stalledNanos;
+
+        Run(int window) {
+            this.window = new Semaphore(window);
+        }
+
+        void echoed(Report report, Throwable throwable, long sent) {
+            maxAckLatencyNanos.accumulateAndGet(System.nanoTime() - sent, Math::max);
+            var print = report != null ? report.print() : null;
+            if (throwable != null) {
+                failure = throwable;
+            } else if (print != null && FAILED.equals(print.result())) {
+                failure = CommunicationException.fromPrinterResponse(
+                        "Printer failed G-code chunk with sequence_id=%s, reason=%s!"
+                                .formatted(print.sequenceId(), print.reason()));
+            }
+            inFlight.decrementAndGet();
+            window.release();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.exc.MismatchedInputException;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Token level readers and writers used by the generated {@code parse(JsonParser)} and {@code write(JsonGenerator)}
+ * methods of {@link Report}.
+ * <p>
+ * Every reader handles the token the printer normally sends without touching {@code ObjectMapper}. Anything unusual
+ * (numbers sent as strings, empty strings, arrays...) is handed over to the parser codec, so coercion rules stay
+ * exactly the same as in the reflective {@code ObjectMapper.readValue(data, Report.class)} path. Lists, maps and
+ * untyped values are built with the same collection types that Jackson uses ({@link ArrayList} and
+ * {@link LinkedHashMap}).
+ */
+final class JsonFields {
+    private JsonFields() {
+    }
+
+    static String readString(JsonParser parser) throws IOException {
+        return switch (parser.currentToken()) {
+            case VALUE_NULL -> null;
+            case VALUE_STRING, VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT, VALUE_TRUE, VALUE_FALSE -> parser.getText();
+            default -> parser.readValueAs(String.class);
+        };
+    }
+
+    static Integer readInteger(JsonParser parser) throws IOException {
+        return switch (parser.currentToken()) {
+            case VALUE_NULL -> null;
+            case VALUE_NUMBER_INT -> parser.getIntValue();
+            default -> parser.readValueAs(Integer.class);
+        };
+    }
+
+    static Long readLong(JsonParser parser) throws IOException {
+        return switch (parser.currentToken()) {
+            case VALUE_NULL -> null;
+            case VALUE_NUMBER_INT -> parser.getLongValue();
+            default -> parser.readValueAs(Long.class);
+        };
+    }
+
+    static Double readDouble(JsonParser parser) throws IOException {
+        return switch (parser.currentToken()) {
+            case VALUE_NULL -> null;
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getDoubleValue();
+            default -> parser.readValueAs(Double.class);
+        };
+    }
+
+    static Boolean readBoolean(JsonParser parser) throws IOException {
+        return switch (parser.currentToken()) {
+            case VALUE_NULL -> null;
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            default -> parser.readValueAs(Boolean.class);
+        };
+    }
+
+    /**
+     * Reads value the same way as Jackson reads {@code Object} typed fields.
+     */
+    static Object readUntyped(JsonParser parser) throws IOException {
+        return switch (parser.currentToken()) {
+            case VALUE_NULL -> null;
+            case VALUE_STRING -> parser.getText();
+            case VALUE_NUMBER_INT, VALUE_NUMBER_FLOAT -> parser.getNumberValue();
+            case VALUE_TRUE -> Boolean.TRUE;
+            case VALUE_FALSE -> Boolean.FALSE;
+            case START_ARRAY -> readArray(parser, JsonFields::readUntyped);
+            case START_OBJECT -> readObject(parser, JsonFields::readUntyped);
+            default -> parser.readValueAs(Object.class);
+        };
+    }
+
+    static <T> Reader<List<T>> list(Reader<T> elementReader) {
+        return parser -> switch (parser.currentToken()) {
+            case VALUE_NULL -> null;
+            case START_ARRAY -> readArray(parser, elementReader);
+            default -> throw unexpectedToken(parser, List.class);
+        };
+    }
+
+    static <V> Reader<Map<String, V>> map(Reader<V> valueReader) {
+        return parser -> switch (parser.currentToken()) {
+            case VALUE_NULL -> null;
+            case START_OBJECT -> readObject(parser, valueReader);
+            default -> throw unexpectedToken(parser, Map.class);
+        };
+    }
+
+    private static <T> List<T> readArray(JsonParser parser, Reader<T> elementReader) throws IOException {
+        var list = new ArrayList<T>();
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            list.add(elementReader.read(parser));
+        }
+        return list;
+    }
+
+    private static <V> Map<String, V> readObject(JsonParser parser, Reader<V> valueReader) throws IOException {
+        var map = new LinkedHashMap<String, V>();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            var key = parser.currentName();
+            parser.nextToken();
+            map.put(key, valueReader.read(parser));
+        }
+        return map;
+    }
+
+    /**
+     * Moves the parser to the first token of the value, if it was not positioned yet.
+     *
+     * @return the current token or {@code null} when there is no content at all
+     */
+    static JsonToken startValue(JsonParser parser) throws IOException {
+        return parser.hasCurrentToken() ? parser.currentToken() : parser.nextToken();
+    }
+
+    static MismatchedInputException unexpectedToken(JsonParser parser, Class<?> type) {
+        var token = parser.currentToken();
+        var message = token == null
+                ? "No content to map due to end-of-input"
+                : "Cannot deserialize value of type `%s` from %s".formatted(type.getName(), token);
+        return MismatchedInputException.from(parser, type, message);
+    }
+
+    static void writeString(JsonGenerator generator, String value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value);
+        }
+    }
+
+    static void writeInteger(JsonGenerator generator, Integer value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+
+    static void writeLong(JsonGenerator generator, Long value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+
+    static void writeDouble(JsonGenerator generator, Double value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+
+    static void writeBoolean(JsonGenerator generator, Boolean value) throws IOException {
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeBoolean(value);
+        }
+    }
+
+    /**
+     * Writes value the same way as Jackson writes {@code Object} typed fields read by {@link #readUntyped}.
+     */
+    static void writeUntyped(JsonGenerator generator, Object value) throws IOException {
+        switch (value) {
+            case null -> generator.writeNull();
+            case String string -> generator.writeString(string);
+            case Integer number -> generator.writeNumber(number);
+            case Long number -> generator.writeNumber(number);
+            case Double number -> generator.writeNumber(number);
+            case BigInteger number -> generator.writeNumber(number);
+            case BigDecimal number -> generator.writeNumber(number);
+            case Boolean bool -> generator.writeBoolean(bool);
+            case List<?> list -> writeArray(generator, list, JsonFields::writeUntyped);
+            case Map<?, ?> map -> writeObject(generator, map, JsonFields::writeUntyped);
+            default -> generator.writeObject(value);
+        }
+    }
+
+    static <T> Writer<List<T>> listWriter(Writer<? super T> elementWriter) {
+        return (generator, value) -> {
+            if (value == null) {
+                generator.writeNull();
+            } else {
+                writeArray(generator, value, elementWriter);
+            }
+        };
+    }
+
+    static <V> Writer<Map<String, V>> mapWriter(Writer<? super V> valueWriter) {
+        return (generator, value) -> {
+            if (value == null) {
+                generator.writeNull();
+            } else {
+                writeObject(generator, value, valueWriter);
+            }
+        };
+    }
+
+    private static <T> void writeArray(JsonGenerator generator, List<T> list, Writer<? super T> elementWriter) throws IOException {
+        generator.writeStartArray(list, list.size());
+        for (var element : list) {
+            elementWriter.write(generator, element);
+        }
+        generator.writeEndArray();
+    }
+
+    private static <V> void writeObject(JsonGenerator generator, Map<?, V> map, Writer<? super V> valueWriter) throws IOException {
+        generator.writeStartObject(map);
+        for (var entry : map.entrySet()) {
+            generator.writeFieldName(String.valueOf(entry.getKey()));
+            valueWriter.write(generator, entry.getValue());
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * Copies untyped JSON value (as returned by {@link #readUntyped}) with all strings, including map keys, interned
+     * and collections sized exactly to their content. Used by {@link CompactReport}, where thousands of printers keep
+     * the same AMS/tray keys and values.
+     */
+    static Object compact(Object value) {
+        return switch (value) {
+            case String string -> string.intern();
+            case List<?> list -> {
+                var copy = new ArrayList<>(list.size());
+                for (var element : list) {
+                    copy.add(compact(element));
+                }
+                yield copy;
+            }
+            case Map<?, ?> map -> {
+                var copy = LinkedHashMap.newLinkedHashMap(map.size());
+                for (var entry : map.entrySet()) {
+                    copy.put(compact(entry.getKey()), compact(entry.getValue()));
+                }
+                yield copy;
+            }
+            case null, default -> value;
+        };
+    }
+
+    @FunctionalInterface
+    interface Reader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Writer<T> {
+        void write(JsonGenerator generator, T value) throws IOException;
+    }
+}
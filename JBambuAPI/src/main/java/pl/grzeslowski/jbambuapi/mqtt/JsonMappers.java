@@ -0,0 +1,20 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
+
+/**
+ * Jackson objects shared by all clients and consumers in the JVM.
+ * <p>
+ * A mapper caches serializers, deserializers and symbol tables. Configured once and never reconfigured it is
+ * thread-safe, so one instance per process is cheaper than one per printer.
+ */
+final class JsonMappers {
+    static final ObjectMapper LENIENT = new ObjectMapper().configure(FAIL_ON_UNKNOWN_PROPERTIES, false);
+    static final ObjectReader REPORT_READER = LENIENT.readerFor(Report.class);
+
+    private JsonMappers() {
+    }
+}
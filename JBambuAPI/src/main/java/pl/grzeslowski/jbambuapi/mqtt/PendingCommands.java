@@ -0,0 +1,171 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.core.JsonParser;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.fasterxml.jackson.core.JsonToken.*;
+
+/**
+ * Commands waiting for the printer to echo their {@code command} and {@code sequence_id} in a report.
+ * <p>
+ * Sequence ids are assigned one after another, so pending commands are kept in a ring of slots indexed by the id.
+ * Registering, matching and removing a command are single compare-and-set operations; the MQTT callback thread never
+ * waits for callers and callers never wait for each other. When there are no pending commands, reports are not even
+ * looked at.
+ */
+@Slf4j
+final class PendingCommands {
+    static final int DEFAULT_CAPACITY = 1_024;
+    /**
+     * Periodic reports have their own sequence ids that can collide with ids of sent commands.
+     */
+    private static final String PUSH_STATUS = "push_status";
+
+    private final AtomicReferenceArray<Pending> slots;
+    private final int mask;
+    private final AtomicInteger size = new AtomicInteger();
+
+    PendingCommands(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity has to be a power of two, was " + capacity);
+        }
+        slots = new AtomicReferenceArray<>(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Ids of all sent commands, also of those nobody waits for, move through the ring, so an id wraps onto the slot of
+     * an id sent {@code capacity} commands earlier. If that command is still waiting for its response, registering
+     * fails; it does not wait for the slot and does not evict the older command.
+     *
+     * @param command name of the command the printer echoes or {@code null} to match any command but
+     *                {@code push_status}
+     * @return future completed with the echoing report, exceptionally with {@link java.util.concurrent.TimeoutException}
+     * after {@code timeout} or failed immediately when the slot of the id is still taken by an older command
+     */
+    CompletableFuture<Report> register(int sequenceId, String command, Duration timeout) {
+        var pending = new Pending(sequenceId, command, new CompletableFuture<>());
+        var index = index(sequenceId);
+        while (!slots.compareAndSet(index, null, pending)) {
+            var owner = slots.get(index);
+            // the owner could have completed between the two reads
+            if (owner != null) {
+                return CompletableFuture.failedFuture(new IllegalStateException(
+                        "Cannot wait for response to sequence id %s, its slot is still owned by sequence id %s!"
+                                .formatted(sequenceId, owner.sequenceId)));
+            }
+        }
+        size.incrementAndGet();
+        pending.future
+                .orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS)
+                .whenComplete((report, throwable) -> remove(pending));
+        return pending.future;
+    }
+
+    private void remove(Pending pending) {
+        if (slots.compareAndSet(index(pending.sequenceId), pending, null)) {
+            size.decrementAndGet();
+        }
+    }
+
+    /**
+     * Completes commands echoed in the message.
+     */
+    void complete(byte[] payload) {
+        if (size.get() == 0) {
+            return;
+        }
+        try (var parser = JsonMappers.LENIENT.createParser(payload)) {
+            if (parser.nextToken() != START_OBJECT) {
+                return;
+            }
+            Report report = null;
+            // every section ("print", "info", "system", ...) can echo a command
+            while (parser.nextToken() == FIELD_NAME) {
+                if (parser.nextToken() != START_OBJECT) {
+                    parser.skipChildren();
+                    continue;
+                }
+                var pending = findPending(parser);
+                if (pending != null) {
+                    if (report == null) {
+                        report = parseReport(payload);
+                    }
+                    pending.future.complete(report);
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Cannot look for command responses in message", e);
+        }
+    }
+
+    private Pending findPending(JsonParser parser) throws IOException {
+        String command = null;
+        String sequenceId = null;
+        while (parser.nextToken() == FIELD_NAME) {
+            var name = parser.currentName();
+            var token = parser.nextToken();
+            if (token == VALUE_STRING || token == VALUE_NUMBER_INT) {
+                switch (name) {
+                    case "command" -> command = parser.getText();
+                    case "sequence_id" -> sequenceId = parser.getText();
+                    default -> {
+                    }
+                }
+            } else {
+                parser.skipChildren();
+            }
+        }
+        if (sequenceId == null) {
+            return null;
+        }
+        int id;
+        try {
+            id = Integer.parseInt(sequenceId);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        var pending = slots.get(index(id));
+        return pending != null && pending.sequenceId == id && pending.matches(command) ? pending : null;
+    }
+
+    private Report parseReport(byte[] payload) throws IOException {
+        try (var parser = JsonMappers.LENIENT.createParser(payload)) {
+            return Report.parse(parser);
+        }
+    }
+
+    /**
+     * Cancels all pending commands.
+     */
+    void cancelAll() {
+        for (var i = 0; i < slots.length(); i++) {
+            var pending = slots.get(i);
+            if (pending != null) {
+                pending.future.completeExceptionally(new CancellationException("Client was closed"));
+            }
+        }
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    private int index(int sequenceId) {
+        return sequenceId & mask;
+    }
+
+    private record Pending(int sequenceId, String command, CompletableFuture<Report> future) {
+        boolean matches(String echoed) {
+            return command != null ? command.equals(echoed) : !PUSH_STATUS.equals(echoed);
+        }
+    }
+}
@@ -1,41 +1,51 @@
 package pl.grzeslowski.jbambuapi.mqtt;
 
-import com.fasterxml.jackson.annotation.JsonInclude;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.*;
 import org.eclipse.paho.client.mqttv3.*;
+import org.eclipse.paho.client.mqttv3.persist.MemoryPersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import pl.grzeslowski.jbambuapi.jfr.CommandPublishEvent;
+import pl.grzeslowski.jbambuapi.jfr.ConnectionEvent;
+import pl.grzeslowski.jbambuapi.jfr.MqttMessageEvent;
+import pl.grzeslowski.jbambuapi.jfr.SubscriberCallEvent;
+import pl.grzeslowski.jbambuapi.metrics.Metrics;
 
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.X509TrustManager;
 import java.security.KeyManagementException;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static java.lang.String.join;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.Collections.synchronizedList;
-import static java.util.Collections.unmodifiableMap;
 import static java.util.Objects.requireNonNull;
-import static java.util.Optional.ofNullable;
-import static java.util.stream.Collectors.joining;
-import static pl.grzeslowski.jbambuapi.mqtt.CommunicationException.fromJsonException;
 import static pl.grzeslowski.jbambuapi.mqtt.CommunicationException.fromMqttException;
 import static pl.grzeslowski.jbambuapi.mqtt.PrinterClient.Channel.LedControlCommand.LedMode.*;
 
 public final class PrinterClient implements AutoCloseable {
+    /**
+     * Schemes that connect over TLS; plain {@code tcp} and {@code ws} brokers reject an SSL socket factory.
+     */
+    private static final Set<String> TLS_SCHEMES = Set.of("ssl", "tls", "wss");
+    private static final long FORCED_DISCONNECT_TIMEOUT_MS = 100;
+    private static SSLSocketFactory trustAllSocketFactory;
     private final AtomicInteger messageId = new AtomicInteger(1);
-    private final ObjectMapper jsonMapper = new ObjectMapper();
     private final Logger log;
     private final PrinterClientConfig config;
+    private final String requestTopic;
     private final MqttClient mqtt;
     private final List<ChannelMessageConsumer> subscribers = synchronizedList(new ArrayList<>());
+    private final PendingCommands pendingCommands = new PendingCommands(PendingCommands.DEFAULT_CAPACITY);
+    private volatile ConnectionCallback connectionCallback;
     @Getter
     private final Channel channel = new Channel();
 
@@ -44,12 +54,26 @@ public final class PrinterClient implements AutoCloseable {
         log.debug("Connecting to MQTT broker");
         this.config = config;
         this.mqtt = mqtt;
+        this.requestTopic = "device/%s/request".formatted(config.serial());
     }
 
     public PrinterClient(PrinterClientConfig config) throws CommunicationException {
         this(config, buildMqtt(config.uri().toString(), config.clientId()));
     }
 
+    /**
+     * Creates a client that runs its MQTT connection on the given executor instead of on threads of its own, so one
+     * executor can serve many clients (see {@link pl.grzeslowski.jbambuapi.fleet.PrinterFleet}).
+     * <p>
+     * Keep alive pings are scheduled on the executor. Every connected client also submits three tasks (network reader,
+     * writer and callback loop) that run until it disconnects, so {@code submit} and {@code execute} must never queue
+     * tasks behind each other. The executor is not shut down when the client is closed. Messages are not persisted,
+     * which is fine for QoS 0 used by the printers.
+     */
+    public static PrinterClient withExecutor(PrinterClientConfig config, ScheduledExecutorService executor) throws CommunicationException {
+        return new PrinterClient(config, buildMqtt(config.uri().toString(), config.clientId(), requireNonNull(executor, "executor")));
+    }
+
     private static MqttClient buildMqtt(String uri, String clientId) {
         try {
             return new MqttClient(uri, clientId);
@@ -58,64 +82,118 @@ public final class PrinterClient implements AutoCloseable {
         }
     }
 
+    private static MqttClient buildMqtt(String uri, String clientId, ScheduledExecutorService executor) {
+        try {
+            return new MqttClient(uri, clientId, new MemoryPersistence(), executor);
+        } catch (MqttException e) {
+            throw fromMqttException("Cannot create MQTT at %s! ".formatted(uri) + e.getLocalizedMessage(), e);
+        }
+    }
+
     public void connect() throws CommunicationException, NoSuchAlgorithmException, KeyManagementException {
         connect(null);
     }
 
     public void connect(ConnectionCallback connectionCallback) throws CommunicationException, NoSuchAlgorithmException, KeyManagementException {
         if (connectionCallback != null) {
-            mqtt.setCallback(new MqttCallbackExtended() {
-                @Override
-                public void connectComplete(boolean reconnect, String serverURI) {
-                    connectionCallback.connectComplete(reconnect);
+            this.connectionCallback = connectionCallback;
+        }
+        // set even without a callback, so connection events are recorded
+        mqtt.setCallback(new MqttCallbackExtended() {
+            @Override
+            public void connectComplete(boolean reconnect, String serverURI) {
+                ConnectionEvent.emit(config.serial(), config.uri().getHost(), ConnectionEvent.CONNECTED, reconnect, null);
+                var callback = PrinterClient.this.connectionCallback;
+                if (callback != null) {
+                    callback.connectComplete(reconnect);
                 }
+            }
 
-                @Override
-                public void connectionLost(Throwable cause) {
-                    connectionCallback.connectionLost(cause);
+            @Override
+            public void connectionLost(Throwable cause) {
+                ConnectionEvent.emit(config.serial(), config.uri().getHost(), ConnectionEvent.LOST, false, cause);
+                var callback = PrinterClient.this.connectionCallback;
+                if (callback != null) {
+                    callback.connectionLost(cause);
                 }
+            }
 
-                @Override
-                public void messageArrived(String topic, MqttMessage message) {
-                }
+            @Override
+            public void messageArrived(String topic, MqttMessage message) {
+            }
 
-                @Override
-                public void deliveryComplete(IMqttDeliveryToken token) {
-                }
-            });
-        }
+            @Override
+            public void deliveryComplete(IMqttDeliveryToken token) {
+            }
+        });
         var options = buildMqttOptions();
         try {
             log.debug("Connecting to MQTT {}", config.uri());
             mqtt.connect(options);
         } catch (MqttException e) {
+            ConnectionEvent.emit(config.serial(), config.uri().getHost(), ConnectionEvent.FAILED, false, e);
             throw fromMqttException("Cannot connect to MQTT at %s! ".formatted(config.uri()) + e.getLocalizedMessage(), e);
         }
 
         try {
             var topic = "device/%s/report".formatted(config.serial());
             log.debug("Subscribing to {}", topic);
-            mqtt.subscribe(topic, (finalTopic, msg) -> {
-                var payload = msg.getPayload();
-                if (log.isDebugEnabled()) {
-                    log.debug("Message received: {}", new String(payload, UTF_8));
-                }
-                subscribers.forEach(subscriber -> {
-                    try {
-                        subscriber.consume(finalTopic, payload);
-                    } catch (Exception e) {
-                        if (log.isWarnEnabled()) {
-                            log.warn("Consumer {} could not accept message: {}",
-                                    subscriber, new String(payload, UTF_8), e);
-                        }
-                    }
-                });
-            });
+            mqtt.subscribe(topic, (finalTopic, msg) -> messageArrived(finalTopic, msg.getPayload()));
         } catch (MqttException e) {
+            // a connection without the report subscription looks healthy to isConnected() but never delivers reports,
+            // so drop it and let the caller retry from scratch
+            mqtt.setCallback(null);
+            try {
+                // the broker has just refused us, so do not wait for it to acknowledge a DISCONNECT
+                mqtt.disconnectForcibly(0, FORCED_DISCONNECT_TIMEOUT_MS, false);
+            } catch (MqttException disconnectException) {
+                e.addSuppressed(disconnectException);
+            }
+            ConnectionEvent.emit(config.serial(), config.uri().getHost(), ConnectionEvent.FAILED, false, e);
             throw fromMqttException("Cannot subscribe to MQTT at %s!".formatted(config.uri()), e);
         }
     }
 
+    void messageArrived(String topic, byte[] payload) {
+        if (log.isDebugEnabled()) {
+            log.debug("Message received: {}", new String(payload, UTF_8));
+        }
+        var event = new MqttMessageEvent();
+        event.begin();
+        var metrics = Metrics.recorder();
+        metrics.messageReceived(config.serial(), payload.length);
+        pendingCommands.complete(payload);
+        subscribers.forEach(subscriber -> {
+            var call = new SubscriberCallEvent();
+            call.begin();
+            var start = System.nanoTime();
+            try {
+                subscriber.consume(topic, payload);
+                metrics.subscriberNotified(config.serial(), subscriber, System.nanoTime() - start);
+            } catch (Exception e) {
+                call.failed = true;
+                metrics.subscriberFailed(config.serial(), subscriber);
+                if (log.isWarnEnabled()) {
+                    log.warn("Consumer {} could not accept message: {}",
+                            subscriber, new String(payload, UTF_8), e);
+                }
+            }
+            call.end();
+            if (call.shouldCommit()) {
+                call.serial = config.serial();
+                call.subscriber = subscriber.getClass().getName();
+                call.commit();
+            }
+        });
+        event.end();
+        if (event.shouldCommit()) {
+            event.serial = config.serial();
+            event.topic = topic;
+            event.bytes = payload.length;
+            event.commit();
+        }
+    }
+
     private MqttConnectOptions buildMqttOptions() throws NoSuchAlgorithmException, KeyManagementException {
         var options = new MqttConnectOptions();
         options.setUserName(config.username());
@@ -123,27 +201,39 @@ public final class PrinterClient implements AutoCloseable {
         options.setConnectionTimeout(config.connectionTimeout());
         options.setKeepAliveInterval(config.keepAliveInterval());
         options.setAutomaticReconnect(config.automaticReconnect());
-        options.setSSLHostnameVerifier((hostname, session) -> true);
-        options.setHttpsHostnameVerificationEnabled(false);
-
-        SSLContext sslContext = SSLContext.getInstance("TLS");
-        sslContext.init(null, new TrustManager[]{new X509TrustManager() {
-            @Override
-            public X509Certificate[] getAcceptedIssuers() {
-                return null;
-            }
+        var scheme = config.uri().getScheme();
+        if (scheme != null && TLS_SCHEMES.contains(scheme.toLowerCase(Locale.ROOT))) {
+            options.setSSLHostnameVerifier((hostname, session) -> true);
+            options.setHttpsHostnameVerificationEnabled(false);
+            options.setSocketFactory(trustAllSocketFactory());
+        }
+        return options;
+    }
 
-            @Override
-            public void checkClientTrusted(X509Certificate[] certs, String authType) {
-            }
+    /**
+     * Printers use self-signed certificates. The factory (and with it the TLS session cache) is shared by all clients,
+     * because building an {@link SSLContext} is expensive and there is nothing client specific in it.
+     */
+    private static synchronized SSLSocketFactory trustAllSocketFactory() throws NoSuchAlgorithmException, KeyManagementException {
+        if (trustAllSocketFactory == null) {
+            SSLContext sslContext = SSLContext.getInstance("TLS");
+            sslContext.init(null, new TrustManager[]{new X509TrustManager() {
+                @Override
+                public X509Certificate[] getAcceptedIssuers() {
+                    return null;
+                }
 
-            @Override
-            public void checkServerTrusted(X509Certificate[] certs, String authType) {
-            }
-        }}, new SecureRandom());
+                @Override
+                public void checkClientTrusted(X509Certificate[] certs, String authType) {
+                }
 
-        options.setSocketFactory(sslContext.getSocketFactory());
-        return options;
+                @Override
+                public void checkServerTrusted(X509Certificate[] certs, String authType) {
+                }
+            }}, new SecureRandom());
+            trustAllSocketFactory = sslContext.getSocketFactory();
+        }
+        return trustAllSocketFactory;
     }
 
     public void subscribe(ChannelMessageConsumer subscriber) {
@@ -159,6 +249,10 @@ public final class PrinterClient implements AutoCloseable {
         return remove;
     }
 
+    public String getSerial() {
+        return config.serial();
+    }
+
     public boolean isConnected() {
         return mqtt.isConnected();
     }
@@ -166,6 +260,7 @@ public final class PrinterClient implements AutoCloseable {
     @Override
     public void close() {
         subscribers.clear();
+        pendingCommands.cancelAll();
         try {
             mqtt.setCallback(null);
             log.debug("Closing MQTT {}", config.uri());
@@ -178,42 +273,65 @@ public final class PrinterClient implements AutoCloseable {
     }
 
     public class Channel {
+        public static final Duration DEFAULT_RESPONSE_TIMEOUT = Duration.ofSeconds(10);
+        private final CommandEncoder encoder = new CommandEncoder();
+        private volatile RawTopic lastRawTopic;
+
         public void sendCommand(Command command) {
+            publish(command, messageId.getAndIncrement());
+        }
+
+        /**
+         * Sends the command and waits for the printer to echo it back, with {@link #DEFAULT_RESPONSE_TIMEOUT}.
+         *
+         * @see #sendCommandAsync(Command, Duration)
+         */
+        public CompletableFuture<Report> sendCommandAsync(Command command) {
+            return sendCommandAsync(command, DEFAULT_RESPONSE_TIMEOUT);
+        }
+
+        /**
+         * Sends the command and returns a future completed with the report in which the printer echoes its
+         * {@code command} and {@code sequence_id} (e.g. {@code print.result} of {@code gcode_line}). Echoes in sections
+         * that are not modeled by {@link Report} (like {@code system}) complete the future with a report without them.
+         * <p>
+         * Raw commands are matched only by {@code sequence_id}. Commands that the printer does not echo (like
+         * {@code pushall}, which is answered by a regular {@code push_status} report) complete exceptionally with
+         * {@link java.util.concurrent.TimeoutException}.
+         *
+         * @param timeout how long to wait for the response
+         * @return future completed on the MQTT callback thread; failed with {@link CommunicationException} when the
+         * command cannot be published, with {@link IllegalStateException} when the command sent 1024 commands
+         * earlier is still waiting for its response or with
+         * {@link java.util.concurrent.CancellationException} when the client is closed
+         */
+        public CompletableFuture<Report> sendCommandAsync(Command command, Duration timeout) {
+            requireNonNull(timeout, "timeout");
             var id = messageId.getAndIncrement();
-            String topicName;
+            // registered before publishing, so an immediate response finds it
+            var response = pendingCommands.register(id, CommandEncoder.commandName(command), timeout);
+            if (response.isDone()) {
+                return response;
+            }
+            try {
+                publish(command, id);
+            } catch (RuntimeException e) {
+                response.completeExceptionally(e);
+            }
+            return response;
+        }
+
+        private void publish(Command command, int id) {
+            String topic;
             byte[] json;
             if (command instanceof RawCommand rawCommand) {
-                topicName = requireNonNull(rawCommand.topic(), "RawCommand %s did returned null topic!".formatted(rawCommand));
+                var topicName = requireNonNull(rawCommand.topic(), "RawCommand %s did returned null topic!".formatted(rawCommand));
+                topic = rawTopic(topicName);
                 json = requireNonNull(rawCommand.buildRawCommand(id), "RawCommand %s did returned null payload!".formatted(rawCommand));
             } else {
-                var message = switch (command) {
-                    case InfoCommand info -> buildMessage(info);
-                    case AmsControlCommand amsControlCommand -> buildMessage(amsControlCommand);
-                    case AmsFilamentSettingCommand amsFilamentSettingCommand -> buildMessage(amsFilamentSettingCommand);
-                    case AmsUserSettingCommand amsUserSettingCommand -> buildMessage(amsUserSettingCommand);
-                    case ChangeFilamentCommand changeFilamentCommand -> buildMessage(changeFilamentCommand);
-                    case GCodeFileCommand gCodeFile -> buildMessage(gCodeFile);
-                    case GCodeLineCommand gCodeLine -> buildMessage(gCodeLine);
-                    case IpCamRecordCommand ipCamRecord -> buildMessage(ipCamRecord);
-                    case IpCamTimelapsCommand ipCamTimelaps -> buildMessage(ipCamTimelaps);
-                    case LedControlCommand ledControl -> buildMessage(ledControl);
-                    case PrintCommand printCommand -> buildMessage(printCommand);
-                    case PrintSpeedCommand printSpeedCommand -> buildMessage(printSpeedCommand);
-                    case PushingCommand pushingCommand -> buildMessage(pushingCommand);
-                    case SystemCommand systemCommand -> buildMessage(systemCommand);
-                    case XCamControlCommand xCamControl -> buildMessage(xCamControl);
-                    case RawCommand rawCommand -> throw new IllegalStateException("This branch is not possible!");
-                };
-                message = addSequenceId(message, id);
-                topicName = message.topic;
-                try {
-                    json = jsonMapper.writeValueAsBytes(message.payload);
-                } catch (JsonProcessingException e) {
-                    log.debug("Cannot convert to JSON: {}", message.payload, e);
-                    throw fromJsonException("Cannot write JSON payload as bytes! " + e.getLocalizedMessage(), e);
-                }
+                topic = requestTopic;
+                json = encoder.encode(command, id);
             }
-            var topic = "device/%s/%s".formatted(config.serial(), topicName);
 
             if (log.isDebugEnabled()) {
                 log.debug("Sending command {} to topic {} with json {}", command, topic, new String(json, UTF_8));
@@ -222,258 +340,38 @@ public final class PrinterClient implements AutoCloseable {
             mqttMessage.setId(id);
             // set QoS to 0 because in LAN mode the publish method was hanging for eternity
             mqttMessage.setQos(0);
+            var event = new CommandPublishEvent();
+            event.begin();
+            var start = System.nanoTime();
             try {
                 mqtt.publish(topic, mqttMessage);
+                Metrics.recorder().commandSent(config.serial(), System.nanoTime() - start);
             } catch (MqttException e) {
                 throw fromMqttException("Cannot publish command MQTT at %s! %s".formatted(config.uri(), e.getLocalizedMessage()), e);
             }
-        }
-
-        private Message addSequenceId(Message message, int id) {
-            var payload = message.payload;
-            return new Message(
-                    message.topic,
-                    new Message.Payload(
-                            addSequenceId(payload.info, id),
-                            addSequenceId(payload.pushing, id),
-                            addSequenceId(payload.print, id),
-                            addSequenceId(payload.camera, id),
-                            addSequenceId(payload.xcam, id),
-                            addSequenceId(payload.system, id)));
-        }
-
-        private Map<String, Object> addSequenceId(Map<String, Object> map, int id) {
-            if (map == null) {
-                return null;
-            }
-            var copy = new HashMap<>(map);
-            copy.put("sequence_id", id + "");
-            return unmodifiableMap(copy);
-        }
-
-        private Message buildMessage(InfoCommand info) {
-            var command = switch (info) {
-                case GET_VERSION -> "get_version";
-            };
-            return Message.request(Message.Payload.info(Map.of("command", command)));
-        }
-
-        private Message buildMessage(PushingCommand pushingCommand) {
-            return Message.request(Message.Payload.pushing(Map.of(
-                    "command", "pushall",
-                    "version", pushingCommand.version,
-                    "push_target", pushingCommand.pushTarget)));
-        }
-
-        private Message buildMessage(PrintCommand printCommand) {
-            var command = switch (printCommand) {
-                case STOP -> "stop";
-                case PAUSE -> "pause";
-                case RESUME -> "resume";
-                case CALIBRATION -> "calibration";
-                case UNLOAD_FILAMENT -> "unload_filament";
-            };
-
-            return Message.request(Message.Payload.print(Map.of(
-                    "command", command,
-                    "param", "")));
-        }
-
-        private Message buildMessage(ChangeFilamentCommand changeFilamentCommand) {
-            return Message.request(Message.Payload.print(Map.of(
-                    "command", "ams_change_filament",
-                    "target", changeFilamentCommand.target,
-                    "curr_temp", changeFilamentCommand.currentTemperature,
-                    "tar_temp", changeFilamentCommand.targetTemperature
-            )));
-        }
-
-        private Message buildMessage(AmsUserSettingCommand amsUserSettingCommand) {
-            return Message.request(Message.Payload.print(Map.of(
-                    "command", "ams_user_setting",
-                    "ams_id", amsUserSettingCommand.amsId,
-                    "startup_read_option", amsUserSettingCommand.startupReadOption,
-                    "tray_read_option", amsUserSettingCommand.trayReadOption
-            )));
-        }
-
-        private Message buildMessage(AmsFilamentSettingCommand ams) {
-            return Message.request(Message.Payload.print(Map.of(
-                    "command", "ams_filament_setting",
-                    "ams_id", ams.amsId,
-                    "tray_id", ams.trayId,
-                    "tray_info_idx", ams.trayInfoIdx,
-                    "tray_color", ams.trayColor,
-                    "nozzle_temp_min", ams.nozzleTempMin,
-                    "nozzle_temp_max", ams.nozzleTempMax,
-                    "tray_type", ams.trayType
-            )));
-        }
-
-        private Message buildMessage(AmsControlCommand amsControlCommand) {
-            var param = switch (amsControlCommand) {
-                case RESUME -> "resume";
-                case RESET -> "reset";
-                case PAUSE -> "pause";
-            };
-
-            return Message.request(Message.Payload.print(Map.of(
-                    "command", "ams_control",
-                    "param", param)));
-        }
-
-        private Message buildMessage(PrintSpeedCommand printSpeedCommand) {
-            if (!printSpeedCommand.canSend()) {
-                throw new IllegalArgumentException("Cannot send %s command!".formatted(printSpeedCommand));
+            event.end();
+            if (event.shouldCommit()) {
+                event.serial = config.serial();
+                event.topic = topic;
+                var name = CommandEncoder.commandName(command);
+                event.command = name != null ? name : command.getClass().getSimpleName();
+                event.sequenceId = id;
+                event.bytes = json.length;
+                event.commit();
             }
-            return Message.request(Message.Payload.print(Map.of(
-                    "command", "print_speed",
-                    "param", printSpeedCommand.level + "")));
-        }
-
-        private Message buildMessage(GCodeFileCommand gCodeFileCommand) {
-            return Message.request(Message.Payload.print(Map.of(
-                    "command", "gcode_file",
-                    "param", gCodeFileCommand.filename)));
-        }
-
-        private Message buildMessage(GCodeLineCommand gCodeLine) {
-            var gCode = join("\\n", gCodeLine.lines);
-            return Message.request(Message.Payload.print(Map.of(
-                    "command", "gcode_line",
-                    "param", gCode,
-                    "user_id", gCodeLine.userId)));
-        }
-
-        private Message buildMessage(LedControlCommand ledControlCommand) {
-            var ledNode = switch (ledControlCommand.ledNode) {
-                case CHAMBER_LIGHT -> "chamber_light";
-                case WORK_LIGHT -> "work_light";
-            };
-            var ledMode = switch (ledControlCommand.ledMode) {
-                case ON -> "on";
-                case OFF -> "off";
-                case FLASHING -> "flashing";
-            };
-            return Message.request(Message.Payload.system(Map.of(
-                    "command", "ledctrl",
-                    "led_node", ledNode,
-                    "led_mode", ledMode,
-
-                    // only for flashing
-                    "led_on_time", ofNullable(ledControlCommand.ledOnTime).orElse(0),
-                    "led_off_time", ofNullable(ledControlCommand.ledOffTime).orElse(0),
-                    "loop_times", ofNullable(ledControlCommand.loopTimes).orElse(0),
-                    "interval_time", ofNullable(ledControlCommand.intervalTime).orElse(0)
-            )));
-        }
-
-        private Message buildMessage(SystemCommand systemCommand) {
-            var command = switch (systemCommand) {
-                case GET_ACCESS_CODE -> "get_access_code";
-            };
-            return Message.request(Message.Payload.system(Map.of(
-                    "command", command
-            )));
-        }
-
-        private Message buildMessage(IpCamRecordCommand ipCamRecordCommand) {
-            return Message.request(Message.Payload.camera(Map.of(
-                    "command", "ipcam_record_set",
-                    "control", ipCamRecordCommand.enable ? "enable" : "disable"
-            )));
-        }
-
-        private Message buildMessage(IpCamTimelapsCommand ipCamTimelapsCommand) {
-            return Message.request(Message.Payload.camera(Map.of(
-                    "command", "ipcam_timelapse",
-                    "control", ipCamTimelapsCommand.enable ? "enable" : "disable"
-            )));
-        }
-
-        private Message buildMessage(XCamControlCommand xCamControlCommand) {
-            var module = switch (xCamControlCommand.module) {
-                case FIRST_LAYER_INSPECTOR -> "first_layer_inspector";
-                case SPAGHETTI_DETECTOR -> "spaghetti_detector";
-            };
-            return Message.request(Message.Payload.xcam(Map.of(
-                    "command", "xcam_control_set",
-                    "module_name", module,
-                    "control", xCamControlCommand.control,
-                    "print_halt", xCamControlCommand.printHalt
-            )));
-        }
-
-        @JsonInclude(JsonInclude.Include.NON_NULL)
-        private static record Message(String topic, Payload payload) {
-            private static record Payload(
-                    Map<String, Object> info,
-                    Map<String, Object> pushing,
-                    Map<String, Object> print,
-                    Map<String, Object> camera,
-                    Map<String, Object> xcam,
-                    Map<String, Object> system) {
-                public static Payload info(Map<String, Object> info) {
-                    return new Payload(info, null, null, null, null, null);
-                }
-
-                public static Payload pushing(Map<String, Object> pushing) {
-                    return new Payload(null, pushing, null, null, null, null);
-                }
-
-                public static Payload print(Map<String, Object> print) {
-                    return new Payload(null, null, print, null, null, null);
-                }
-
-                public static Payload camera(Map<String, Object> camera) {
-                    return new Payload(null, null, null, camera, null, null);
-                }
-
-                public static Payload xcam(Map<String, Object> xcam) {
-                    return new Payload(null, null, null, null, xcam, null);
-                }
-
-                public static Payload system(Map<String, Object> system) {
-                    return new Payload(null, null, null, null, null, system);
-                }
-
-                private String toString(Object o) {
-                    return switch (o) {
-                        case null -> "<null>";
-                        case Map<?, ?> map -> map.entrySet()
-                                .stream()
-                                .map(entry -> "%s=%s".formatted(toString(entry.getKey()), toString(entry.getValue())))
-                                .collect(joining(", "));
-                        case Collection<?> collection -> collection.stream()
-                                .map(this::toString)
-                                .collect(joining(", "));
-                        default -> o.toString();
-                    };
-                }
+        }
 
-                @Override
-                public String toString() {
-                    var info = toString(this.info);
-                    var pushing = toString(this.pushing);
-                    var print = toString(this.print);
-                    var camera = toString(this.camera);
-                    var xcam = toString(this.xcam);
-                    var system = toString(this.system);
-                    return """
-                            Payload {
-                                info=%s,
-                                pushing=%s,
-                                print=%s,
-                                camera=%s,
-                                xcam=%s,
-                                system=%s
-                            }""".formatted(info, pushing, print, camera, xcam, system);
-                }
+        private String rawTopic(String topicName) {
+            // raw commands are usually sent to the same topic over and over again
+            var last = lastRawTopic;
+            if (last == null || !last.topicName.equals(topicName)) {
+                last = new RawTopic(topicName, "device/%s/%s".formatted(config.serial(), topicName));
+                lastRawTopic = last;
             }
+            return last.topic;
+        }
 
-            public static Message request(Payload payload) {
-                return new Message("request", payload);
-            }
+        private static record RawTopic(String topicName, String topic) {
         }
 
         public static sealed interface Command {
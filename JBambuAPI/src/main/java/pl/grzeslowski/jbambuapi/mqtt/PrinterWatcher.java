@@ -1,28 +1,45 @@
 package pl.grzeslowski.jbambuapi.mqtt;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
+import pl.grzeslowski.jbambuapi.jfr.ReportMergeEvent;
+import pl.grzeslowski.jbambuapi.jfr.ReportParseEvent;
+import pl.grzeslowski.jbambuapi.jfr.SubscriberCallEvent;
+import pl.grzeslowski.jbambuapi.metrics.Metrics;
 
 import java.io.IOException;
-import java.util.LinkedList;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
-import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
 import static java.nio.charset.StandardCharsets.UTF_8;
-import static java.util.Collections.synchronizedList;
+import static java.util.Collections.unmodifiableSet;
 
+/**
+ * Merges incoming reports into the full printer state and notifies subscribers.
+ * <p>
+ * The full state is an immutable {@link Report} published through an {@link AtomicReference}, so readers
+ * ({@link #getSnapshot()}) never block the MQTT callback thread and never see a half merged state.
+ */
 @Slf4j
 public class PrinterWatcher implements ChannelMessageConsumer, AutoCloseable {
     private final ReadWriteLock fullStateLock = new ReentrantReadWriteLock();
-    private Report fullState;
+    private final AtomicReference<Report> fullState = new AtomicReference<>();
 
-    private final ObjectMapper jsonMapper = new ObjectMapper();
-    private final List<StateSubscriber> subscribers = synchronizedList(new LinkedList<>());
+    private final List<StateSubscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Map<StateSubscriber, Set<ReportField>> fieldFilters = new ConcurrentHashMap<>();
+
+    private final Deserialization deserialization;
+    private volatile TopicSerial lastTopicSerial;
 
     public PrinterWatcher() {
-        jsonMapper.configure(FAIL_ON_UNKNOWN_PROPERTIES, false);
+        this(Deserialization.GENERATED);
+    }
+
+    public PrinterWatcher(Deserialization deserialization) {
+        this.deserialization = deserialization;
     }
 
     @Override
@@ -31,20 +48,63 @@ public class PrinterWatcher implements ChannelMessageConsumer, AutoCloseable {
             return;
         }
 
-        try {
-            var delta = jsonMapper.readValue(data, Report.class);
-            fullStateLock.writeLock().lock();
-            try {
-                fullState = fullState != null ? fullState.merge(delta) : delta;
-            } finally {
-                fullStateLock.writeLock().unlock();
+        var metrics = Metrics.recorder();
+        var serial = serial(topic);
+        var parseEvent = new ReportParseEvent();
+        parseEvent.begin();
+        var start = System.nanoTime();
+        try (var parser = JsonMappers.LENIENT.createParser(data)) {
+            var delta = switch (deserialization) {
+                // streaming parse reads only fields that are present in the delta and never builds a JSON tree
+                case GENERATED -> Report.parse(parser);
+                case REFLECTIVE -> JsonMappers.REPORT_READER.readValue(parser, Report.class);
+            };
+            var parsed = System.nanoTime();
+            metrics.reportParsed(serial, parsed - start);
+            parseEvent.end();
+            if (parseEvent.shouldCommit()) {
+                parseEvent.serial = serial;
+                parseEvent.bytes = data.length;
+                parseEvent.commit();
             }
+            var mergeEvent = new ReportMergeEvent();
+            mergeEvent.begin();
+            var changes = EnumSet.noneOf(ReportField.class);
+            var state = merge(delta, changes);
+            metrics.reportMerged(serial, System.nanoTime() - parsed);
+            mergeEvent.end();
+            if (mergeEvent.shouldCommit()) {
+                mergeEvent.serial = serial;
+                mergeEvent.changes = changes.size();
+                mergeEvent.commit();
+            }
+            var changedFields = unmodifiableSet(changes);
             subscribers.forEach(subscriber -> {
+                var filter = fieldFilters.get(subscriber);
+                if (filter != null && !containsAny(changes, filter)) {
+                    return;
+                }
+                var call = new SubscriberCallEvent();
+                call.begin();
+                var notified = System.nanoTime();
                 try {
-                    subscriber.newState(delta, fullState);
+                    if (subscriber instanceof ChangeSubscriber changeSubscriber) {
+                        changeSubscriber.newState(delta, state, changedFields);
+                    } else {
+                        subscriber.newState(delta, state);
+                    }
+                    metrics.subscriberNotified(serial, subscriber, System.nanoTime() - notified);
                 } catch (Exception e) {
+                    call.failed = true;
+                    metrics.subscriberFailed(serial, subscriber);
                     log.warn("Consumer {} could not accept message: {}", subscriber, delta, e);
                 }
+                call.end();
+                if (call.shouldCommit()) {
+                    call.serial = serial;
+                    call.subscriber = subscriber.getClass().getName();
+                    call.commit();
+                }
             });
         } catch (IOException e) {
             if (log.isWarnEnabled()) {
@@ -53,21 +113,103 @@ public class PrinterWatcher implements ChannelMessageConsumer, AutoCloseable {
         }
     }
 
-    public ReadWriteLock getFullStateLock() {
-        fullStateLock.readLock().lock();
-        try {
-            return fullStateLock;
-        } finally {
-            fullStateLock.readLock().unlock();
+    /**
+     * Extracts serial from {@code device/<serial>/report}. A watcher usually gets reports of one printer, so the last
+     * topic is remembered to not create a new string for every message.
+     */
+    private String serial(String topic) {
+        var last = lastTopicSerial;
+        if (last == null || !last.topic.equals(topic)) {
+            var end = topic.lastIndexOf('/');
+            var start = topic.lastIndexOf('/', end - 1);
+            last = new TopicSerial(topic, topic.substring(start + 1, end));
+            lastTopicSerial = last;
         }
+        return last.serial;
+    }
+
+    private Report merge(Report delta, Set<ReportField> changes) {
+        if (delta == null) {
+            return fullState.get();
+        }
+        while (true) {
+            var current = fullState.get();
+            var merged = (current != null ? current : Report.EMPTY).merge(delta, changes);
+            if (merged == current || fullState.compareAndSet(current, merged)) {
+                return merged;
+            }
+            // someone else published a new state in the meantime, merge once again on top of it
+            changes.clear();
+        }
+    }
+
+    private static boolean containsAny(Set<ReportField> changes, Set<ReportField> filter) {
+        for (var field : filter) {
+            if (changes.contains(field)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the latest full state. Returned report is immutable, so it can be freely shared between threads.
+     *
+     * @return full state or {@code null} if no report was received yet
+     */
+    public Report getSnapshot() {
+        return fullState.get();
+    }
+
+    /**
+     * @deprecated the returned lock guards nothing: the full state is published without it, and locking it neither
+     * blocks updates nor makes reads consistent; use {@link #getSnapshot()}
+     */
+    @Deprecated(forRemoval = true)
+    public ReadWriteLock getFullStateLock() {
+        return fullStateLock;
     }
 
     public void subscribe(StateSubscriber subscriber) {
         subscribers.add(subscriber);
     }
 
+    /**
+     * Subscribes for changes of given fields only. The subscriber is called when at least one of the fields (or
+     * anything inside it) changed its value.
+     *
+     * @param subscriber subscriber to notify
+     * @param fields     fields to watch
+     */
+    public void subscribe(StateSubscriber subscriber, Set<ReportField> fields) {
+        if (fields.isEmpty()) {
+            throw new IllegalArgumentException("Please pass at least one field to watch!");
+        }
+        fieldFilters.put(subscriber, EnumSet.copyOf(fields));
+        subscribers.add(subscriber);
+    }
+
+    /**
+     * Subscribes for changes of given JSON paths only, like {@code print.gcode_state} or
+     * {@code print.ams.ams[*].tray}.
+     *
+     * @param subscriber subscriber to notify
+     * @param paths      paths to watch
+     * @throws IllegalArgumentException if path is not part of {@link Report}
+     * @see ReportField#findByPath(String)
+     */
+    public void subscribe(StateSubscriber subscriber, String... paths) {
+        var fields = EnumSet.noneOf(ReportField.class);
+        for (var path : paths) {
+            fields.add(ReportField.findByPath(path)
+                    .orElseThrow(() -> new IllegalArgumentException("Unknown path: " + path)));
+        }
+        subscribe(subscriber, fields);
+    }
+
     public boolean unsubscribe(StateSubscriber subscriber) {
         var remove = subscribers.remove(subscriber);
+        fieldFilters.remove(subscriber);
         if (!remove) {
             log.warn("Subscriber {} was not removed! " +
                     "It either was not in the list or equals is not implemented correctly.", subscriber);
@@ -78,15 +220,45 @@ public class PrinterWatcher implements ChannelMessageConsumer, AutoCloseable {
     @Override
     public void close() {
         subscribers.clear();
-        fullStateLock.writeLock().lock();
-        try {
-            fullState = null;
-        } finally {
-            fullStateLock.writeLock().unlock();
-        }
+        fieldFilters.clear();
+        fullState.set(null);
+    }
+
+    private static record TopicSerial(String topic, String serial) {
+    }
+
+    /**
+     * How incoming reports are turned into {@link Report}.
+     */
+    public static enum Deserialization {
+        /**
+         * Code generated together with {@link Report} (see {@link ReportJsonModule}).
+         */
+        GENERATED,
+        /**
+         * Jackson's reflective record deserializer.
+         */
+        REFLECTIVE
     }
 
     public static interface StateSubscriber {
         void newState(Report delta, Report fullState);
     }
+
+    /**
+     * Subscriber that also receives fields that were changed by the delta.
+     */
+    @FunctionalInterface
+    public static interface ChangeSubscriber extends StateSubscriber {
+        /**
+         * @param changes fields which value changed after merging the delta; when a field changed all its parents are
+         *                also present (e.g. {@link ReportField#PRINT_GCODE_STATE} and {@link ReportField#PRINT})
+         */
+        void newState(Report delta, Report fullState, Set<ReportField> changes);
+
+        @Override
+        default void newState(Report delta, Report fullState) {
+            newState(delta, fullState, Set.of());
+        }
+    }
 }
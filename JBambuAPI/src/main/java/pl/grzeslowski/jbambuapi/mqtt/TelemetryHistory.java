@@ -0,0 +1,243 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.InstantSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.locks.StampedLock;
+
+import static java.lang.Double.NaN;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Fixed size history of numeric printer fields, kept off-heap in a columnar ring buffer.
+ * <p>
+ * Every time a delta changes at least one of the columns, one row with the current time and the value of every column
+ * (taken from the merged full state) is written. When the buffer is full the oldest row is overwritten. Writing does
+ * not allocate, so it can run on the MQTT callback thread; queries can run concurrently from other threads.
+ * <pre>{@code
+ * var history = new TelemetryHistory(3_600, TelemetryHistory.DEFAULT_COLUMNS);
+ * watcher.subscribe(history);
+ * var lastMinute = history.aggregate(ReportField.PRINT_NOZZLE_TEMPER, now.minusSeconds(60), now);
+ * }</pre>
+ * Numeric fields that are sent as text (like fan speeds or {@code -45dBm} Wi-Fi signal) are stored as the number they
+ * start with. Missing or non-numeric values are stored as {@code NaN} and skipped by queries.
+ */
+public final class TelemetryHistory implements PrinterWatcher.ChangeSubscriber {
+    public static final Set<ReportField> DEFAULT_COLUMNS = Set.copyOf(EnumSet.of(
+            ReportField.PRINT_NOZZLE_TEMPER,
+            ReportField.PRINT_NOZZLE_TARGET_TEMPER,
+            ReportField.PRINT_BED_TEMPER,
+            ReportField.PRINT_BED_TARGET_TEMPER,
+            ReportField.PRINT_CHAMBER_TEMPER,
+            ReportField.PRINT_MC_PERCENT,
+            ReportField.PRINT_LAYER_NUM,
+            ReportField.PRINT_COOLING_FAN_SPEED,
+            ReportField.PRINT_HEATBREAK_FAN_SPEED,
+            ReportField.PRINT_BIG_FAN1_SPEED,
+            ReportField.PRINT_BIG_FAN2_SPEED,
+            ReportField.PRINT_WIFI_SIGNAL));
+
+    private final int capacity;
+    private final InstantSource clock;
+    private final ReportField[] columns;
+    private final int[] columnIndex = new int[ReportField.values().length];
+    /**
+     * Layout: {@code capacity} timestamps (epoch millis), then {@code capacity} values of every column.
+     */
+    private final ByteBuffer buffer;
+    private final StampedLock lock = new StampedLock();
+    private long written;
+
+    public TelemetryHistory(int capacity, Set<ReportField> columns) {
+        this(capacity, columns, InstantSource.system());
+    }
+
+    public TelemetryHistory(int capacity, Set<ReportField> columns, InstantSource clock) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity has to be positive, was " + capacity);
+        }
+        if (columns.isEmpty()) {
+            throw new IllegalArgumentException("Please pass at least one column!");
+        }
+        this.capacity = capacity;
+        this.clock = requireNonNull(clock, "clock");
+        this.columns = EnumSet.copyOf(columns).toArray(ReportField[]::new);
+        Arrays.fill(columnIndex, -1);
+        for (var i = 0; i < this.columns.length; i++) {
+            var column = this.columns[i];
+            if (column.type() != Integer.class && column.type() != Long.class
+                    && column.type() != Double.class && column.type() != String.class) {
+                throw new IllegalArgumentException("Column %s is not numeric (%s)!"
+                        .formatted(column, column.type().getSimpleName()));
+            }
+            columnIndex[column.ordinal()] = i;
+        }
+        this.buffer = ByteBuffer.allocateDirect(Math.multiplyExact(capacity, Long.BYTES * (this.columns.length + 1)));
+    }
+
+    @Override
+    public void newState(Report delta, Report fullState, Set<ReportField> changes) {
+        if (fullState == null || !containsColumn(changes)) {
+            return;
+        }
+        var timestamp = clock.millis();
+        var stamp = lock.writeLock();
+        try {
+            var row = (int) (written % capacity);
+            buffer.putLong(timestampOffset(row), timestamp);
+            for (var column = 0; column < columns.length; column++) {
+                buffer.putDouble(valueOffset(column, row), toDouble(columns[column].value(fullState)));
+            }
+            written++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    private boolean containsColumn(Set<ReportField> changes) {
+        for (var column : columns) {
+            if (changes.contains(column)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return all samples of the column with timestamp in {@code [from, to)}, oldest first
+     */
+    public List<Sample> range(ReportField column, Instant from, Instant to) {
+        var samples = new ArrayList<Sample>();
+        forEach(column, from, to, (timestamp, value) -> samples.add(new Sample(Instant.ofEpochMilli(timestamp), value)));
+        return samples;
+    }
+
+    /**
+     * @return min/max/avg of the column over samples with timestamp in {@code [from, to)}
+     */
+    public Aggregate aggregate(ReportField column, Instant from, Instant to) {
+        var aggregate = new double[]{0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0};
+        forEach(column, from, to, (timestamp, value) -> {
+            aggregate[0]++;
+            aggregate[1] = Math.min(aggregate[1], value);
+            aggregate[2] = Math.max(aggregate[2], value);
+            aggregate[3] += value;
+        });
+        var count = (long) aggregate[0];
+        if (count == 0) {
+            return new Aggregate(0, NaN, NaN, NaN);
+        }
+        return new Aggregate(count, aggregate[1], aggregate[2], aggregate[3] / count);
+    }
+
+    /**
+     * Passes every sample of the column with timestamp in {@code [from, to)} to the consumer, oldest first. Samples
+     * without value ({@code NaN}) are skipped. The consumer is called while holding the read lock, so it should be
+     * fast.
+     */
+    public void forEach(ReportField column, Instant from, Instant to, SampleConsumer consumer) {
+        var index = columnIndex[column.ordinal()];
+        if (index < 0) {
+            throw new IllegalArgumentException("Column %s is not recorded!".formatted(column));
+        }
+        var fromMillis = from.toEpochMilli();
+        var toMillis = to.toEpochMilli();
+        var stamp = lock.readLock();
+        try {
+            var first = Math.max(0, written - capacity);
+            for (var i = first; i < written; i++) {
+                var row = (int) (i % capacity);
+                var timestamp = buffer.getLong(timestampOffset(row));
+                if (timestamp < fromMillis || timestamp >= toMillis) {
+                    continue;
+                }
+                var value = buffer.getDouble(valueOffset(index, row));
+                if (!Double.isNaN(value)) {
+                    consumer.accept(timestamp, value);
+                }
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * @return number of rows currently kept (at most capacity)
+     */
+    public int size() {
+        var stamp = lock.readLock();
+        try {
+            return (int) Math.min(written, capacity);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    private static int timestampOffset(int row) {
+        return row * Long.BYTES;
+    }
+
+    private int valueOffset(int column, int row) {
+        return ((column + 1) * capacity + row) * Double.BYTES;
+    }
+
+    private static double toDouble(Object value) {
+        return switch (value) {
+            case Number number -> number.doubleValue();
+            case String string -> parseLeadingNumber(string);
+            case null, default -> NaN;
+        };
+    }
+
+    /**
+     * Allocation free parsing of a decimal number at the beginning of the string, like {@code 15} or {@code -45dBm}.
+     */
+    static double parseLeadingNumber(String text) {
+        var length = text.length();
+        var i = 0;
+        var negative = false;
+        if (i < length && (text.charAt(i) == '-' || text.charAt(i) == '+')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        var value = 0.0;
+        var digits = 0;
+        for (; i < length && Character.isDigit(text.charAt(i)); i++, digits++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        if (i < length && text.charAt(i) == '.') {
+            var scale = 0.1;
+            for (i++; i < length && Character.isDigit(text.charAt(i)); i++, digits++) {
+                value += (text.charAt(i) - '0') * scale;
+                scale /= 10;
+            }
+        }
+        if (digits == 0) {
+            return NaN;
+        }
+        return negative ? -value : value;
+    }
+
+    public record Sample(Instant time, double value) {
+    }
+
+    /**
+     * @param count number of samples; {@code min}, {@code max} and {@code avg} are {@code NaN} when it is 0
+     */
+    public record Aggregate(long count, double min, double max, double avg) {
+    }
+
+    @FunctionalInterface
+    public interface SampleConsumer {
+        void accept(long epochMillis, double value);
+    }
+}
@@ -0,0 +1,20 @@
+package pl.grzeslowski.jbambuapi.timelapse;
+
+/**
+ * Which camera frames {@link TimelapseRecorder} keeps.
+ */
+public enum DecimationPolicy {
+    /**
+     * All of them.
+     */
+    EVERY_FRAME,
+    /**
+     * At most one per {@link TimelapseConfig#interval()}.
+     */
+    INTERVAL,
+    /**
+     * The first frame after the printer started a new layer (see {@link TimelapseRecorder#layerChanged(int)}), which is
+     * what slicers call a timelapse.
+     */
+    LAYER_CHANGE
+}
@@ -0,0 +1,38 @@
+package pl.grzeslowski.jbambuapi.timelapse;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * @param directory   where segment files are kept
+ * @param segmentSize max size of one segment file in bytes; a frame bigger than that gets a segment of its own
+ * @param decimation  which frames are recorded
+ * @param interval    used only with {@link DecimationPolicy#INTERVAL}
+ */
+public record TimelapseConfig(Path directory, int segmentSize, DecimationPolicy decimation, Duration interval) {
+    public static final int DEFAULT_SEGMENT_SIZE = 256 * 1024 * 1024;
+    public static final DecimationPolicy DEFAULT_DECIMATION = DecimationPolicy.INTERVAL;
+    public static final Duration DEFAULT_INTERVAL = Duration.ofSeconds(10);
+
+    public TimelapseConfig {
+        requireNonNull(directory, "directory");
+        requireNonNull(decimation, "decimation");
+        requireNonNull(interval, "interval");
+        if (segmentSize < 1024) {
+            throw new IllegalArgumentException("segmentSize has to be at least 1 KiB, was " + segmentSize);
+        }
+        if (decimation == DecimationPolicy.INTERVAL && !interval.isPositive()) {
+            throw new IllegalArgumentException("interval has to be positive, was " + interval);
+        }
+    }
+
+    public static TimelapseConfig buildDefault(Path directory) {
+        return new TimelapseConfig(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_DECIMATION, DEFAULT_INTERVAL);
+    }
+
+    public static TimelapseConfig layerChange(Path directory) {
+        return new TimelapseConfig(directory, DEFAULT_SEGMENT_SIZE, DecimationPolicy.LAYER_CHANGE, DEFAULT_INTERVAL);
+    }
+}
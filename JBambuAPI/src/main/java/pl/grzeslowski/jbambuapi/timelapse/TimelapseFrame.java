@@ -0,0 +1,12 @@
+package pl.grzeslowski.jbambuapi.timelapse;
+
+import java.time.Instant;
+
+/**
+ * One frame read back from a timelapse.
+ *
+ * @param timestamp when the frame was recorded
+ * @param jpeg      JPEG image
+ */
+public record TimelapseFrame(Instant timestamp, byte[] jpeg) {
+}
@@ -0,0 +1,189 @@
+package pl.grzeslowski.jbambuapi.timelapse;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Reads frames recorded by {@link TimelapseRecorder}.
+ * <p>
+ * Indexes of all segments are loaded when the reader is opened into a few primitive arrays (20 bytes per frame), so
+ * finding a frame by time is a binary search and reading it is one positional read. Frames recorded after the reader
+ * was opened are not visible. A reader is not thread safe.
+ * <pre>{@code
+ * try (var reader = TimelapseReader.open(Path.of("timelapse"));
+ *      var out = FileChannel.open(Path.of("print.mjpeg"), CREATE, WRITE)) {
+ *     reader.export(start, end, out); // ffmpeg -f mjpeg -i print.mjpeg print.mp4
+ * }
+ * }</pre>
+ */
+public final class TimelapseReader implements AutoCloseable {
+    private final List<Path> segments;
+    private final FileChannel[] channels;
+    private final long[] timestamps;
+    private final int[] segmentOfFrame;
+    private final int[] offsets;
+    private final int[] lengths;
+
+    private TimelapseReader(List<Path> segments, List<ByteBuffer> indexes) {
+        this.segments = segments;
+        channels = new FileChannel[segments.size()];
+        var size = indexes.stream().mapToInt(index -> index.remaining() / TimelapseSegments.INDEX_ENTRY_SIZE).sum();
+        timestamps = new long[size];
+        segmentOfFrame = new int[size];
+        offsets = new int[size];
+        lengths = new int[size];
+        var frame = 0;
+        for (var segment = 0; segment < indexes.size(); segment++) {
+            var index = indexes.get(segment);
+            while (index.remaining() >= TimelapseSegments.INDEX_ENTRY_SIZE) {
+                timestamps[frame] = index.getLong();
+                offsets[frame] = index.getInt();
+                lengths[frame] = index.getInt();
+                segmentOfFrame[frame] = segment;
+                frame++;
+            }
+        }
+    }
+
+    public static TimelapseReader open(Path directory) throws IOException {
+        var segments = TimelapseSegments.list(directory);
+        var indexes = new ArrayList<ByteBuffer>(segments.size());
+        for (var segment : segments) {
+            indexes.add(TimelapseSegments.readIndex(segment));
+        }
+        return new TimelapseReader(segments, indexes);
+    }
+
+    /**
+     * @return number of recorded frames
+     */
+    public int size() {
+        return timestamps.length;
+    }
+
+    public Instant timestamp(int frame) {
+        return Instant.ofEpochMilli(timestamps[frame]);
+    }
+
+    /**
+     * Finds the first frame recorded at or after the given time.
+     *
+     * @return index of the frame, or {@link #size()} when all frames were recorded before
+     */
+    public int seek(Instant time) {
+        var millis = time.toEpochMilli();
+        var found = Arrays.binarySearch(timestamps, millis);
+        if (found < 0) {
+            return -found - 1;
+        }
+        // timestamps are in millis, so many frames can share one; go to the first of them
+        while (found > 0 && timestamps[found - 1] == millis) {
+            found--;
+        }
+        return found;
+    }
+
+    public TimelapseFrame read(int frame) throws IOException {
+        var jpeg = ByteBuffer.allocate(lengths[frame]);
+        var channel = channel(segmentOfFrame[frame]);
+        var position = (long) offsets[frame];
+        while (jpeg.hasRemaining()) {
+            if (channel.read(jpeg, position + jpeg.position()) < 0) {
+                throw new IOException("Frame %s is cut short in %s".formatted(frame, segments.get(segmentOfFrame[frame])));
+            }
+        }
+        return new TimelapseFrame(Instant.ofEpochMilli(timestamps[frame]), jpeg.array());
+    }
+
+    /**
+     * Returns an iterator over frames recorded in {@code [from, to)}.
+     *
+     * @throws UncheckedIOException from {@link Iterator#next()} when a frame cannot be read
+     */
+    public Iterator<TimelapseFrame> frames(Instant from, Instant to) {
+        var first = seek(from);
+        var end = seek(to);
+        return new Iterator<>() {
+            private int next = first;
+
+            @Override
+            public boolean hasNext() {
+                return next < end;
+            }
+
+            @Override
+            public TimelapseFrame next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return read(next++);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Writes JPEGs of frames recorded in {@code [from, to)} one after another, which is a raw MJPEG stream. Frames
+     * are transferred from segment files straight to the target, without copying them through the heap.
+     *
+     * @return number of exported frames
+     */
+    public int export(Instant from, Instant to, WritableByteChannel target) throws IOException {
+        var first = seek(from);
+        var end = seek(to);
+        for (var frame = first; frame < end; frame++) {
+            var channel = channel(segmentOfFrame[frame]);
+            var position = (long) offsets[frame];
+            var remaining = (long) lengths[frame];
+            while (remaining > 0) {
+                var transferred = channel.transferTo(position, remaining, target);
+                if (transferred <= 0) {
+                    throw new IOException("Frame %s is cut short in %s".formatted(frame, segments.get(segmentOfFrame[frame])));
+                }
+                position += transferred;
+                remaining -= transferred;
+            }
+        }
+        return end - first;
+    }
+
+    private FileChannel channel(int segment) throws IOException {
+        var channel = channels[segment];
+        if (channel == null) {
+            channel = FileChannel.open(segments.get(segment));
+            channels[segment] = channel;
+        }
+        return channel;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (var i = 0; i < channels.length; i++) {
+            if (channels[i] != null) {
+                try {
+                    channels[i].close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+                channels[i] = null;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
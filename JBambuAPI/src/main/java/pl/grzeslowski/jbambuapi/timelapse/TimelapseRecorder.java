@@ -0,0 +1,275 @@
+package pl.grzeslowski.jbambuapi.timelapse;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import pl.grzeslowski.jbambuapi.camera.Frame;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterWatcher;
+import pl.grzeslowski.jbambuapi.mqtt.Report;
+import pl.grzeslowski.jbambuapi.mqtt.ReportField;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.InstantSource;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * Records camera frames into large segment files, with an index for seeking by time.
+ * <p>
+ * Frames are appended with one gathering write of the frame header and the frame, so thousands of frames of a print
+ * end up in a few files instead of a file each. {@link TimelapseConfig#decimation()} decides which frames are kept;
+ * others are skipped before anything is written. The recorder is a {@link PrinterWatcher.StateSubscriber}, so it can
+ * follow layer changes of the printer:
+ * <pre>{@code
+ * var recorder = new TimelapseRecorder(TimelapseConfig.layerChange(Path.of("timelapse")));
+ * printerWatcher.subscribe(recorder, Set.of(ReportField.PRINT_LAYER_NUM));
+ * broadcaster.subscribe(recorder::record, FrameSubscriptionConfig.everyFrame());
+ * }</pre>
+ * When a segment is full it is sealed: forced to the storage device and its index is written next to it. Segments left
+ * unsealed by a crash are sealed when the recorder is opened again; a frame that was being written during the crash
+ * is dropped. Recordings are read with {@link TimelapseReader}.
+ */
+@Slf4j
+public final class TimelapseRecorder implements PrinterWatcher.StateSubscriber, AutoCloseable {
+    @Getter
+    private final TimelapseConfig config;
+    private final InstantSource clock;
+    private final ByteBuffer header = ByteBuffer.allocate(TimelapseSegments.FRAME_HEADER_SIZE);
+    private final ByteBuffer[] writes = new ByteBuffer[2];
+    private final AtomicLong recorded = new AtomicLong();
+    private final AtomicLong skipped = new AtomicLong();
+
+    private long segmentIndex;
+    private FileChannel channel;
+    private long position;
+    private ByteBuffer index;
+    private long lastRecorded = Long.MIN_VALUE;
+    private int layer = -1;
+    private boolean layerChanged = true;
+    private boolean closed;
+
+    public TimelapseRecorder(TimelapseConfig config) throws IOException {
+        this(config, InstantSource.system());
+    }
+
+    TimelapseRecorder(TimelapseConfig config, InstantSource clock) throws IOException {
+        this.config = config;
+        this.clock = clock;
+        Files.createDirectories(config.directory());
+        var segments = TimelapseSegments.list(config.directory());
+        for (var existing : segments) {
+            recover(existing);
+        }
+        // continue after the newest recorded frame, so timestamps stay sorted across restarts
+        for (var i = segments.size() - 1; i >= 0 && lastRecorded == Long.MIN_VALUE; i--) {
+            lastRecorded = TimelapseSegments.lastTimestamp(TimelapseSegments.readIndex(segments.get(i)));
+        }
+        openSegment(segments.isEmpty() ? 0 : TimelapseSegments.index(segments.getLast()) + 1);
+    }
+
+    /**
+     * Records the frame if {@link TimelapseConfig#decimation()} keeps it. The frame is not released.
+     *
+     * @return {@code true} when the frame was recorded
+     */
+    public boolean record(Frame frame) {
+        return record(frame.buffer());
+    }
+
+    /**
+     * @see #record(Frame)
+     */
+    public boolean record(byte[] jpeg) {
+        return record(ByteBuffer.wrap(jpeg));
+    }
+
+    private synchronized boolean record(ByteBuffer jpeg) {
+        if (!jpeg.hasRemaining()) {
+            throw new IllegalArgumentException("Frame is empty");
+        }
+        if (closed) {
+            return false;
+        }
+        // timestamps never go back, even when the clock does, so readers can binary search them
+        var now = Math.max(clock.millis(), lastRecorded);
+        if (!keep(now)) {
+            skipped.incrementAndGet();
+            return false;
+        }
+        try {
+            append(now, jpeg);
+        } catch (IOException e) {
+            log.warn("Cannot append frame to timelapse {}", config.directory(), e);
+            return false;
+        }
+        lastRecorded = now;
+        layerChanged = false;
+        recorded.incrementAndGet();
+        return true;
+    }
+
+    private boolean keep(long now) {
+        return switch (config.decimation()) {
+            case EVERY_FRAME -> true;
+            case INTERVAL -> lastRecorded == Long.MIN_VALUE || now - lastRecorded >= config.interval().toMillis();
+            case LAYER_CHANGE -> layerChanged;
+        };
+    }
+
+    /**
+     * Tells the recorder that the printer is on the given layer. With {@link DecimationPolicy#LAYER_CHANGE} the next
+     * frame after the layer number changed is recorded.
+     */
+    public synchronized void layerChanged(int layer) {
+        if (layer != this.layer) {
+            this.layer = layer;
+            layerChanged = true;
+        }
+    }
+
+    @Override
+    public void newState(Report delta, Report fullState) {
+        if (ReportField.PRINT_LAYER_NUM.value(fullState) instanceof Number layerNumber) {
+            layerChanged(layerNumber.intValue());
+        }
+    }
+
+    private void append(long timestamp, ByteBuffer jpeg) throws IOException {
+        var length = jpeg.remaining();
+        if (position > TimelapseSegments.HEADER_SIZE
+                && position + TimelapseSegments.FRAME_HEADER_SIZE + length > config.segmentSize()) {
+            rollSegment();
+        }
+        header.clear();
+        header.putInt(length).putLong(timestamp).flip();
+        writes[0] = header;
+        writes[1] = jpeg;
+        var offset = position + TimelapseSegments.FRAME_HEADER_SIZE;
+        try {
+            while (jpeg.hasRemaining()) {
+                channel.write(writes);
+            }
+        } catch (IOException e) {
+            // do not leave a partial frame in front of the next one
+            try {
+                channel.truncate(position);
+            } catch (IOException truncateException) {
+                e.addSuppressed(truncateException);
+            }
+            throw e;
+        } finally {
+            writes[1] = null;
+        }
+        position = offset + length;
+        index = TimelapseSegments.append(index, timestamp, (int) offset, length);
+    }
+
+    /**
+     * Opens the next segment before sealing the current one, so when opening fails the recorder keeps appending to the
+     * current segment and tries again with the next frame.
+     */
+    private void rollSegment() throws IOException {
+        var previousIndex = segmentIndex;
+        var previousChannel = channel;
+        var previousEntries = index;
+        openSegment(segmentIndex + 1);
+        try {
+            sealSegment(previousIndex, previousChannel, previousEntries);
+        } catch (IOException e) {
+            // without its index file the segment is scanned by readers and sealed again on the next start
+            log.warn("Cannot seal timelapse segment {}", TimelapseSegments.path(config.directory(), previousIndex), e);
+        }
+    }
+
+    private void openSegment(long newIndex) throws IOException {
+        var path = TimelapseSegments.path(config.directory(), newIndex);
+        var newChannel = FileChannel.open(path, CREATE_NEW, WRITE);
+        try {
+            var segmentHeader = ByteBuffer.allocate(TimelapseSegments.HEADER_SIZE)
+                    .putInt(TimelapseSegments.MAGIC)
+                    .putInt(TimelapseSegments.VERSION)
+                    .flip();
+            while (segmentHeader.hasRemaining()) {
+                newChannel.write(segmentHeader);
+            }
+        } catch (IOException e) {
+            newChannel.close();
+            Files.deleteIfExists(path);
+            throw e;
+        }
+        segmentIndex = newIndex;
+        channel = newChannel;
+        position = TimelapseSegments.HEADER_SIZE;
+        index = ByteBuffer.allocate(TimelapseSegments.INDEX_ENTRY_SIZE * 64);
+        log.debug("Opened timelapse segment {}", path);
+    }
+
+    private void sealSegment(long sealedIndex, FileChannel sealedChannel, ByteBuffer entries) throws IOException {
+        var path = TimelapseSegments.path(config.directory(), sealedIndex);
+        try (sealedChannel) {
+            sealedChannel.force(false);
+        }
+        writeIndex(path, entries.flip());
+        log.debug("Sealed timelapse segment {}", path);
+    }
+
+    private static void writeIndex(Path segment, ByteBuffer index) throws IOException {
+        var indexPath = TimelapseSegments.indexPath(segment);
+        var temporary = indexPath.resolveSibling(indexPath.getFileName() + ".tmp");
+        try (var indexChannel = FileChannel.open(temporary, CREATE, TRUNCATE_EXISTING, WRITE)) {
+            while (index.hasRemaining()) {
+                indexChannel.write(index);
+            }
+            indexChannel.force(false);
+        }
+        Files.move(temporary, indexPath, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    private static void recover(Path segment) throws IOException {
+        if (Files.exists(TimelapseSegments.indexPath(segment))) {
+            return;
+        }
+        try (var fileChannel = FileChannel.open(segment, READ, WRITE)) {
+            var index = TimelapseSegments.scan(segment, fileChannel);
+            var end = TimelapseSegments.end(index);
+            if (end < fileChannel.size()) {
+                log.info("Sealing timelapse segment {} left open at {} bytes", segment, end);
+                fileChannel.truncate(end);
+            }
+            fileChannel.force(false);
+            writeIndex(segment, index);
+        }
+    }
+
+    /**
+     * @return number of frames written
+     */
+    public long getRecordedCount() {
+        return recorded.get();
+    }
+
+    /**
+     * @return number of frames skipped by {@link TimelapseConfig#decimation()}
+     */
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * Seals the current segment.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        sealSegment(segmentIndex, channel, index);
+    }
+}
@@ -0,0 +1,137 @@
+package pl.grzeslowski.jbambuapi.timelapse;
+
+import pl.grzeslowski.jbambuapi.journal.SegmentFiles;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.nio.ByteOrder.BIG_ENDIAN;
+
+/**
+ * On disk layout of timelapse segments.
+ * <p>
+ * Segment file: {@code int magic, int version} followed by frames. Frame: {@code int length} (of the JPEG),
+ * {@code long timestamp} (epoch millis) and the JPEG. Every sealed segment has an index file next to it with one
+ * {@code long timestamp, int offset, int length} entry per frame, where offset points at the JPEG inside the segment.
+ * A segment without an index (left open by a crash, or still being recorded) is indexed by scanning frame headers.
+ */
+final class TimelapseSegments {
+    static final int MAGIC = 0x4A42544C;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = Integer.BYTES * 2;
+    static final int FRAME_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    static final int INDEX_ENTRY_SIZE = Long.BYTES + Integer.BYTES * 2;
+    static final String SUFFIX = ".frames";
+    static final String INDEX_SUFFIX = ".index";
+    private static final SegmentFiles FILES = new SegmentFiles("timelapse", SUFFIX);
+
+    private TimelapseSegments() {
+    }
+
+    static Path path(Path directory, long index) {
+        return SegmentFiles.path(directory, index, SUFFIX);
+    }
+
+    static Path indexPath(Path segment) {
+        var name = segment.getFileName().toString();
+        return segment.resolveSibling(name.substring(0, name.length() - SUFFIX.length()) + INDEX_SUFFIX);
+    }
+
+    /**
+     * @return segment files sorted by index (oldest first)
+     */
+    static List<Path> list(Path directory) throws IOException {
+        return FILES.list(directory);
+    }
+
+    static long index(Path segment) {
+        return FILES.index(segment);
+    }
+
+    /**
+     * Reads the index of the segment, or builds it from frame headers when there is no index file.
+     *
+     * @return index entries ready to be read
+     */
+    static ByteBuffer readIndex(Path segment) throws IOException {
+        var indexPath = indexPath(segment);
+        if (Files.exists(indexPath)) {
+            return ByteBuffer.wrap(Files.readAllBytes(indexPath)).order(BIG_ENDIAN);
+        }
+        try (var channel = FileChannel.open(segment)) {
+            return scan(segment, channel);
+        }
+    }
+
+    /**
+     * Builds the index from frame headers. Scanning stops at the first frame that does not fit in the file, which is
+     * where a crash interrupted writing.
+     *
+     * @return index entries ready to be read; its end is {@link #end(ByteBuffer)}
+     */
+    static ByteBuffer scan(Path segment, FileChannel channel) throws IOException {
+        var size = channel.size();
+        var header = ByteBuffer.allocate(Math.max(HEADER_SIZE, FRAME_HEADER_SIZE));
+        if (size >= HEADER_SIZE) {
+            header.limit(HEADER_SIZE);
+            channel.read(header, 0);
+            var magic = header.getInt(0);
+            var version = header.getInt(Integer.BYTES);
+            if (magic != MAGIC || version != VERSION) {
+                throw new IOException("%s is not a timelapse segment (magic=%x, version=%s)".formatted(segment, magic, version));
+            }
+        }
+        var index = ByteBuffer.allocate(INDEX_ENTRY_SIZE * 64);
+        var position = (long) HEADER_SIZE;
+        while (position + FRAME_HEADER_SIZE <= size) {
+            header.clear().limit(FRAME_HEADER_SIZE);
+            channel.read(header, position);
+            var length = header.getInt(0);
+            var timestamp = header.getLong(Integer.BYTES);
+            var offset = position + FRAME_HEADER_SIZE;
+            if (length <= 0 || offset + length > size) {
+                break;
+            }
+            index = append(index, timestamp, (int) offset, length);
+            position = offset + length;
+        }
+        return index.flip();
+    }
+
+    /**
+     * @return end of the last frame in the index
+     */
+    static long end(ByteBuffer index) {
+        if (index.limit() == 0) {
+            return HEADER_SIZE;
+        }
+        var last = index.limit() - INDEX_ENTRY_SIZE;
+        return (long) index.getInt(last + Long.BYTES) + index.getInt(last + Long.BYTES + Integer.BYTES);
+    }
+
+    /**
+     * @return timestamp of the last frame in the index, {@link Long#MIN_VALUE} when the index is empty
+     */
+    static long lastTimestamp(ByteBuffer index) {
+        if (index.limit() < INDEX_ENTRY_SIZE) {
+            return Long.MIN_VALUE;
+        }
+        return index.getLong(index.limit() - INDEX_ENTRY_SIZE);
+    }
+
+    /**
+     * @return {@code index} or a bigger copy of it with the entry appended
+     */
+    static ByteBuffer append(ByteBuffer index, long timestamp, int offset, int length) {
+        if (index.remaining() < INDEX_ENTRY_SIZE) {
+            var bigger = ByteBuffer.allocate(index.capacity() * 2);
+            bigger.put(index.flip());
+            index = bigger;
+        }
+        return index.putLong(timestamp).putInt(offset).putInt(length);
+    }
+}
@@ -0,0 +1,22 @@
+package pl.grzeslowski.jbambuapi;
+
+import java.util.function.BooleanSupplier;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+public final class Conditions {
+    private Conditions() {
+    }
+
+    /**
+     * Polls the condition until it holds, failing the test after 10 seconds.
+     */
+    public static void waitFor(BooleanSupplier condition) throws InterruptedException {
+        var deadline = System.nanoTime() + SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition was not met in time").isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+}
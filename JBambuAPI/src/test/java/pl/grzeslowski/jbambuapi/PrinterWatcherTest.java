@@ -7,6 +7,7 @@ import org.slf4j.Logger;
 import org.springframework.util.ReflectionUtils;
 import pl.grzeslowski.jbambuapi.mqtt.PrinterWatcher;
 import pl.grzeslowski.jbambuapi.mqtt.Report;
+import pl.grzeslowski.jbambuapi.mqtt.ReportField;
 
 import java.io.IOException;
 import java.nio.file.Files;
@@ -14,12 +15,15 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.locks.ReadWriteLock;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static java.util.stream.Collectors.toList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @SuppressWarnings("unchecked")
@@ -42,6 +46,24 @@ class PrinterWatcherTest {
         verify(subscriber, times(files.size())).newState(any(), any());
     }
 
+    @Test
+    @DisplayName("should build same state with generated and reflective deserialization")
+    void generatedAndReflectiveDeserialization() throws IOException {
+        // given
+        var generated = new PrinterWatcher(PrinterWatcher.Deserialization.GENERATED);
+        var reflective = new PrinterWatcher(PrinterWatcher.Deserialization.REFLECTIVE);
+        var files = readExampleJsonFiles();
+
+        // when
+        for (var file : files) {
+            generated.consume("device/123/report", file.getBytes(UTF_8));
+            reflective.consume("device/123/report", file.getBytes(UTF_8));
+        }
+
+        // then
+        assertThat(generated.getSnapshot()).isNotNull().isEqualTo(reflective.getSnapshot());
+    }
+
     public static ArrayList<String> readExampleJsonFiles() throws IOException {
         var jsonFiles = Files.walk(Paths.get("src/test/resources/example/A1"))
                 .filter(Files::isRegularFile)
@@ -69,17 +91,9 @@ class PrinterWatcherTest {
         printerWatcher.consume("device/topic/report", reportJson);
 
         // Then
-        var fullStateLock = printerWatcher.getFullStateLock();
-        fullStateLock.readLock().lock();
-        try {
-            var field = PrinterWatcher.class.getDeclaredField("fullState");
-            field.setAccessible(true);
-            var fullState = (Report) field.get(printerWatcher);
-            assertThat(fullState).isNotNull();
-            assertThat(fullState.info().command()).isEqualTo("test");
-        } finally {
-            fullStateLock.readLock().unlock();
-        }
+        var fullState = printerWatcher.getSnapshot();
+        assertThat(fullState).isNotNull();
+        assertThat(fullState.info().command()).isEqualTo("test");
     }
 
     // Subscribing a new StateSubscriber adds it to the subscribers list
@@ -164,26 +178,19 @@ class PrinterWatcherTest {
         var subscribers = (List<PrinterWatcher.StateSubscriber>) subscribersField.get(printerWatcher);
         assertThat(subscribers).isEmpty();
 
-        var fullStateField = PrinterWatcher.class.getDeclaredField("fullState");
-        fullStateField.setAccessible(true);
-        var fullState = fullStateField.get(printerWatcher);
-        assertThat(fullState).isNull();
+        assertThat(printerWatcher.getSnapshot()).isNull();
     }
 
-    // Getting the fullStateLock returns the lock while properly handling read lock acquisition and release
-    @SuppressWarnings("DataFlowIssue")
+    // Getting the fullStateLock returns the lock without locking it, because it does not guard anything anymore
+    @SuppressWarnings({"DataFlowIssue", "removal"})
     @Test
-    @DisplayName("Should handle read lock properly when getting fullStateLock")
-    public void test_getting_full_state_lock_handles_read_lock_properly() {
+    @DisplayName("Should return fullStateLock without locking it")
+    public void test_getting_full_state_lock_does_not_lock() {
         // Given
         var printerWatcher = new PrinterWatcher();
         var lockField = ReflectionUtils.findField(PrinterWatcher.class, "fullStateLock");
         ReflectionUtils.makeAccessible(lockField);
-        var lock = (ReadWriteLock) ReflectionUtils.getField(lockField, printerWatcher);
-        var readLock = spy(lock.readLock());
-
         var mockLock = mock(ReadWriteLock.class);
-        when(mockLock.readLock()).thenReturn(readLock);
         ReflectionUtils.setField(lockField, printerWatcher, mockLock);
 
         // When
@@ -191,8 +198,7 @@ class PrinterWatcherTest {
 
         // Then
         assertThat(returnedLock).isSameAs(mockLock);
-        verify(readLock).lock();
-        verify(readLock).unlock();
+        verifyNoInteractions(mockLock);
     }
 
     // Consuming a message with a topic not ending with "/report" is ignored
@@ -212,10 +218,7 @@ class PrinterWatcherTest {
         // Then
         verify(subscriber, never()).newState(any(), any());
 
-        var fullStateField = PrinterWatcher.class.getDeclaredField("fullState");
-        fullStateField.setAccessible(true);
-        var fullState = fullStateField.get(printerWatcher);
-        assertThat(fullState).isNull();
+        assertThat(printerWatcher.getSnapshot()).isNull();
     }
 
     // When a subscriber throws an exception during notification, other subscribers still receive updates
@@ -256,11 +259,110 @@ class PrinterWatcherTest {
         printerWatcher.consume("device/topic/report", reportJson);
 
         // Then
-        var fullStateField = PrinterWatcher.class.getDeclaredField("fullState");
-        fullStateField.setAccessible(true);
-        var fullState = (Report) fullStateField.get(printerWatcher);
+        var fullState = printerWatcher.getSnapshot();
 
         assertThat(fullState).isNotNull();
         assertThat(fullState).isEqualTo(report);
     }
+
+    // Deltas consumed concurrently are all merged into the published snapshot
+    @Test
+    @DisplayName("Should not lose deltas consumed from many threads")
+    public void test_concurrent_consume_does_not_lose_deltas() throws Exception {
+        // Given
+        var printerWatcher = new PrinterWatcher();
+        var templates = List.of(
+                "{\"info\": {\"sequence_id\": \"%d\"}}",
+                "{\"print\": {\"layer_num\": %d}}",
+                "{\"print\": {\"mc_percent\": %d}}",
+                "{\"print\": {\"gcode_state\": \"S%d\"}}",
+                "{\"print\": {\"ams\": {\"ams_exist_bits\": \"%d\"}}}");
+        var threads = new ArrayList<Thread>();
+        for (var template : templates) {
+            threads.add(Thread.ofPlatform().start(() -> {
+                for (var i = 1; i <= 1_000; i++) {
+                    printerWatcher.consume("device/topic/report", template.formatted(i).getBytes(UTF_8));
+                }
+            }));
+        }
+
+        // When
+        for (var thread : threads) {
+            thread.join();
+        }
+
+        // Then
+        var fullState = printerWatcher.getSnapshot();
+        assertThat(fullState.info().sequenceId()).isEqualTo("1000");
+        assertThat(fullState.print().layerNum()).isEqualTo(1000);
+        assertThat(fullState.print().mcPercent()).isEqualTo(1000);
+        assertThat(fullState.print().gcodeState()).isEqualTo("S1000");
+        assertThat(fullState.print().ams().amsExistBits()).isEqualTo("1000");
+    }
+
+    // Subscriber registered for a path is notified only when that path changes
+    @Test
+    @DisplayName("Should notify path subscriber only when watched path changes")
+    public void test_path_subscriber_is_notified_only_when_path_changes() {
+        // Given
+        var printerWatcher = new PrinterWatcher();
+        var subscriber = mock(PrinterWatcher.StateSubscriber.class);
+        printerWatcher.subscribe(subscriber, "print.gcode_state");
+
+        // When
+        printerWatcher.consume("device/topic/report", "{\"print\": {\"gcode_state\": \"IDLE\"}}".getBytes(UTF_8));
+        printerWatcher.consume("device/topic/report", "{\"print\": {\"nozzle_temper\": 21.5}}".getBytes(UTF_8));
+        printerWatcher.consume("device/topic/report", "{\"print\": {\"gcode_state\": \"IDLE\"}}".getBytes(UTF_8));
+        printerWatcher.consume("device/topic/report", "{\"print\": {\"gcode_state\": \"RUNNING\"}}".getBytes(UTF_8));
+
+        // Then
+        verify(subscriber, times(2)).newState(any(), any());
+    }
+
+    // Paths inside opaque lists resolve to the list itself
+    @Test
+    @DisplayName("Should notify subscriber of path inside AMS list when AMS list changes")
+    public void test_path_inside_ams_list_is_resolved_to_list() {
+        // Given
+        var printerWatcher = new PrinterWatcher();
+        var subscriber = mock(PrinterWatcher.StateSubscriber.class);
+        printerWatcher.subscribe(subscriber, "print.ams.ams[*].tray");
+
+        // When
+        printerWatcher.consume("device/topic/report", "{\"print\": {\"ams\": {\"ams\": [{\"id\": \"0\", \"tray\": []}]}}}".getBytes(UTF_8));
+        printerWatcher.consume("device/topic/report", "{\"print\": {\"ams\": {\"version\": 2}}}".getBytes(UTF_8));
+
+        // Then
+        verify(subscriber, times(1)).newState(any(), any());
+    }
+
+    // Subscribing for unknown path fails fast
+    @Test
+    @DisplayName("Should throw when subscribing for unknown path")
+    public void test_subscribing_for_unknown_path_throws() {
+        // Given
+        var printerWatcher = new PrinterWatcher();
+        var subscriber = mock(PrinterWatcher.StateSubscriber.class);
+
+        // When & Then
+        assertThatThrownBy(() -> printerWatcher.subscribe(subscriber, "print.not_existing"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    // ChangeSubscriber receives the set of changed fields
+    @Test
+    @DisplayName("Should pass changed fields to ChangeSubscriber")
+    public void test_change_subscriber_receives_changed_fields() {
+        // Given
+        var printerWatcher = new PrinterWatcher();
+        var subscriber = mock(PrinterWatcher.ChangeSubscriber.class);
+        printerWatcher.subscribe(subscriber);
+        printerWatcher.consume("device/topic/report", "{\"print\": {\"mc_percent\": 1, \"nozzle_temper\": 21.5}}".getBytes(UTF_8));
+
+        // When
+        printerWatcher.consume("device/topic/report", "{\"print\": {\"mc_percent\": 2, \"nozzle_temper\": 21.5}}".getBytes(UTF_8));
+
+        // Then
+        verify(subscriber).newState(any(), any(), eq(Set.of(ReportField.PRINT_MC_PERCENT, ReportField.PRINT)));
+    }
 }
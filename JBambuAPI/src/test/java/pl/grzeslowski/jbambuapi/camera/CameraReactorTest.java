@@ -0,0 +1,114 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.IntStream;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.grzeslowski.jbambuapi.camera.TlsCameraTest.FRAMES;
+
+class CameraReactorTest {
+    @Test
+    @DisplayName("should read many TLS cameras with two threads")
+    void tls() throws Exception {
+        // given
+        var streams = 50;
+        var pool = new FramePool();
+        List<Listener> listeners = new ArrayList<>();
+        try (var server = new LocalCameraServer(FRAMES, true);
+             var reactor = new CameraReactor(2, pool)) {
+            // when
+            for (var i = 0; i < streams; i++) {
+                var listener = new Listener();
+                listeners.add(listener);
+                reactor.open(server.config(), listener);
+            }
+            for (var listener : listeners) {
+                assertThat(listener.closed.get(30, SECONDS)).isNull();
+            }
+
+            // then
+            var expected = TlsCamera.authenticationPacket(server.config()).array();
+            assertThat(server.authentications())
+                    .hasSize(streams)
+                    .allSatisfy(authentication -> assertThat(authentication).isEqualTo(expected));
+            assertThat(reactor.streams()).isZero();
+        }
+        assertThat(listeners).allSatisfy(listener -> assertThat(listener.frames).containsExactlyElementsOf(FRAMES));
+        assertThat(pool.stats().outstanding()).isZero();
+        assertThat(pool.stats().acquired()).isEqualTo((long) streams * FRAMES.size());
+    }
+
+    @Test
+    @DisplayName("should stop delivering frames after the stream is closed")
+    void closeStream() throws Exception {
+        // given
+        var manyFrames = IntStream.range(0, 1_000).mapToObj(i -> FRAMES.get(i % FRAMES.size())).toList();
+        var pool = new FramePool();
+        var stream = new CompletableFuture<CameraStream>();
+        var listener = new Listener() {
+            @Override
+            public void onFrame(Frame frame) {
+                super.onFrame(frame);
+                stream.join().close();
+            }
+        };
+        try (var server = new LocalCameraServer(manyFrames);
+             var reactor = new CameraReactor(1, pool)) {
+            // when
+            stream.complete(reactor.open(server.config(), listener));
+
+            // then
+            assertThat(listener.closed.get(10, SECONDS)).isNull();
+            assertThat(stream.join().isOpen()).isFalse();
+            assertThat(reactor.streams()).isZero();
+        }
+        assertThat(listener.frames).containsExactly(FRAMES.getFirst());
+        assertThat(pool.stats().outstanding()).isZero();
+    }
+
+    @Test
+    @DisplayName("should report connection errors to the listener")
+    void connectionRefused() throws Exception {
+        // given
+        int port;
+        try (var socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = socket.getLocalPort();
+        }
+        var config = new CameraConfig("127.0.0.1", port, "bblp", "access-code".getBytes(), null);
+        var listener = new Listener();
+
+        try (var reactor = new CameraReactor()) {
+            // when
+            var stream = reactor.open(config, listener);
+
+            // then
+            assertThat(listener.closed.get(10, SECONDS)).isNotNull();
+            assertThat(stream.isOpen()).isFalse();
+        }
+        assertThat(listener.frames).isEmpty();
+    }
+
+    private static class Listener implements FrameListener {
+        final List<byte[]> frames = new CopyOnWriteArrayList<>();
+        final CompletableFuture<Throwable> closed = new CompletableFuture<>();
+
+        @Override
+        public void onFrame(Frame frame) {
+            frames.add(frame.toByteArray());
+        }
+
+        @Override
+        public void onClosed(Throwable cause) {
+            closed.complete(cause);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.grzeslowski.jbambuapi.Conditions.waitFor;
+import static pl.grzeslowski.jbambuapi.camera.TlsCameraTest.FRAMES;
+
+class FrameBroadcasterTest {
+    @Test
+    @DisplayName("should read every frame once and deliver it to all subscribers")
+    void broadcast() throws Exception {
+        // given
+        var pool = new FramePool();
+        List<byte[]> recorded = new CopyOnWriteArrayList<>();
+        List<byte[]> previewed = new CopyOnWriteArrayList<>();
+        try (var server = new LocalCameraServer(FRAMES)) {
+            var camera = new ASeriesCamera(server.config(), pool);
+            camera.connect();
+            try (var broadcaster = new FrameBroadcaster(camera)) {
+                var recorder = broadcaster.subscribe(
+                        frame -> recorded.add(frame.toByteArray()),
+                        FrameSubscriptionConfig.everyFrame());
+                var preview = broadcaster.subscribe(
+                        frame -> previewed.add(frame.toByteArray()),
+                        FrameSubscriptionConfig.latestFrame());
+
+                // when
+                broadcaster.start();
+
+                // then
+                waitFor(() -> !broadcaster.isReading());
+                waitFor(() -> recorder.getDeliveredCount() == FRAMES.size());
+                waitFor(() -> preview.getDeliveredCount() + preview.getDroppedCount() == FRAMES.size());
+                assertThat(broadcaster.getPublishedCount()).isEqualTo(FRAMES.size());
+                assertThat(recorder.getDroppedCount()).isZero();
+                // the camera ended the stream, so subscriptions close themselves
+                waitFor(() -> recorder.isClosed() && preview.isClosed());
+                assertThat(broadcaster.getSubscriptions()).isEmpty();
+            }
+            assertThat(server.authentications()).hasSize(1);
+        }
+        assertThat(recorded).containsExactlyElementsOf(FRAMES);
+        assertThat(previewed).isNotEmpty().isSubsetOf(FRAMES).last().isEqualTo(FRAMES.getLast());
+        assertThat(pool.stats().acquired()).isEqualTo(FRAMES.size());
+        waitFor(() -> pool.stats().outstanding() == 0);
+    }
+
+    @Test
+    @DisplayName("should not wait for stuck subscribers and count their dropped frames")
+    void slowSubscriber() throws Exception {
+        // given
+        var pool = new FramePool();
+        var blocked = new CountDownLatch(2);
+        var release = new CountDownLatch(1);
+        List<Integer> latest = new CopyOnWriteArrayList<>();
+        var config = new FrameSubscriptionConfig(FramePolicy.EVERY_FRAME, 5, Thread.ofVirtual().factory());
+        try (var broadcaster = new FrameBroadcaster()) {
+            var stuck = broadcaster.subscribe(frame -> {
+                blocked.countDown();
+                await(release);
+            }, config);
+            var preview = broadcaster.subscribe(frame -> {
+                blocked.countDown();
+                await(release);
+                latest.add(frame.length());
+            }, FrameSubscriptionConfig.latestFrame());
+            publish(broadcaster, pool, 1);
+            assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // when
+            for (var i = 2; i <= 20; i++) {
+                publish(broadcaster, pool, i);
+            }
+
+            // then
+            assertThat(stuck.getQueueDepth()).isEqualTo(5);
+            assertThat(stuck.getDroppedCount()).isEqualTo(14);
+            assertThat(stuck.getLagNanos()).isPositive();
+            assertThat(preview.getQueueDepth()).isOne();
+            assertThat(preview.getDroppedCount()).isEqualTo(18);
+            // first frame is held by both subscribers, the newest one is queued for both
+            assertThat(pool.stats().outstanding()).isEqualTo(1 + 5);
+            release.countDown();
+            waitFor(() -> preview.getDeliveredCount() == 2 && stuck.getDeliveredCount() == 6);
+        }
+        assertThat(latest).containsExactly(1, 20);
+        waitFor(() -> pool.stats().outstanding() == 0);
+    }
+
+    @Test
+    @DisplayName("should release queued frames when a subscription is closed")
+    void closeSubscription() throws Exception {
+        // given
+        var pool = new FramePool();
+        var release = new CountDownLatch(1);
+        try (var broadcaster = new FrameBroadcaster()) {
+            var subscription = broadcaster.subscribe(frame -> await(release), FrameSubscriptionConfig.everyFrame());
+            for (var i = 0; i < 10; i++) {
+                try (var frame = pool.acquire(100)) {
+                    broadcaster.onFrame(frame);
+                }
+            }
+
+            // when
+            subscription.close();
+            release.countDown();
+
+            // then
+            assertThat(broadcaster.getSubscriptions()).isEmpty();
+            waitFor(() -> pool.stats().outstanding() == 0);
+            assertThat(subscription.isClosed()).isTrue();
+        }
+    }
+
+    @Test
+    @DisplayName("should deliver queued frames and close subscriptions when the stream ends")
+    void endOfStream() throws Exception {
+        // given
+        var pool = new FramePool();
+        var release = new CountDownLatch(1);
+        List<Integer> delivered = new CopyOnWriteArrayList<>();
+        try (var broadcaster = new FrameBroadcaster()) {
+            var subscription = broadcaster.subscribe(frame -> {
+                await(release);
+                delivered.add(frame.length());
+            }, FrameSubscriptionConfig.everyFrame());
+            for (var i = 1; i <= 3; i++) {
+                publish(broadcaster, pool, i);
+            }
+
+            // when
+            broadcaster.onClosed(null);
+            publish(broadcaster, pool, 4);
+            release.countDown();
+
+            // then
+            subscription.whenClosed().get(10, TimeUnit.SECONDS);
+            assertThat(delivered).containsExactly(1, 2, 3);
+            assertThat(broadcaster.getSubscriptions()).isEmpty();
+            var late = broadcaster.subscribe(frame -> delivered.add(-1), FrameSubscriptionConfig.everyFrame());
+            late.whenClosed().get(10, TimeUnit.SECONDS);
+        }
+        waitFor(() -> pool.stats().outstanding() == 0);
+    }
+
+    private static void publish(FrameBroadcaster broadcaster, FramePool pool, int length) {
+        try (var frame = pool.acquire(length)) {
+            broadcaster.onFrame(frame);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import lombok.extern.slf4j.Slf4j;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+
+/**
+ * Stand-in for the camera of an A or P series printer: reads the 80 byte authentication packet and then sends every
+ * frame with its 16 byte header. The connection is closed after the last frame.
+ * <p>
+ * With TLS the server uses a self-signed certificate for {@code 127.0.0.1}, generated with {@code keytool} once per
+ * test run; {@link #config()} carries it so clients trust it.
+ */
+@Slf4j
+public final class LocalCameraServer implements AutoCloseable {
+    private static final char[] PASSWORD = "changeit".toCharArray();
+    private static Tls tls;
+    private final ServerSocket serverSocket;
+    private final String certificate;
+    private final List<byte[]> frames;
+    private final List<byte[]> authentications = new CopyOnWriteArrayList<>();
+    private final Set<Socket> sockets = ConcurrentHashMap.newKeySet();
+
+    public LocalCameraServer(List<byte[]> frames) throws IOException {
+        this(frames, false);
+    }
+
+    public LocalCameraServer(List<byte[]> frames, boolean useTls) throws IOException {
+        this.frames = List.copyOf(frames);
+        if (useTls) {
+            var serverTls = tls();
+            certificate = serverTls.certificate();
+            serverSocket = serverTls.context()
+                    .getServerSocketFactory()
+                    .createServerSocket(0, 1_024, InetAddress.getLoopbackAddress());
+        } else {
+            certificate = null;
+            serverSocket = new ServerSocket(0, 1_024, InetAddress.getLoopbackAddress());
+        }
+        Thread.ofVirtual().name("local-camera-server").start(this::accept);
+    }
+
+    /**
+     * @return config of a camera connecting to this server; it has a certificate only when the server uses TLS
+     */
+    public CameraConfig config() {
+        return new CameraConfig("127.0.0.1", serverSocket.getLocalPort(), "bblp", "access-code".getBytes(), certificate);
+    }
+
+    /**
+     * Authentication packets received from clients.
+     */
+    public List<byte[]> authentications() {
+        return authentications;
+    }
+
+    /**
+     * Builds a frame that passes JPEG magic number check.
+     */
+    public static byte[] jpeg(int size, int seed) {
+        var frame = new byte[size];
+        for (var i = 0; i < size; i++) {
+            frame[i] = (byte) (seed + i);
+        }
+        frame[0] = TlsCamera.START_MAGIC_NUMBER;
+        frame[1] = TlsCamera.END_MAGIC_NUMBER;
+        return frame;
+    }
+
+    private static synchronized Tls tls() throws IOException {
+        if (tls == null) {
+            var dir = Files.createTempDirectory("local-camera-server");
+            var keyStore = dir.resolve("camera.p12");
+            keytool("-genkeypair", "-alias", "camera", "-keyalg", "EC", "-groupname", "secp256r1",
+                    "-dname", "CN=127.0.0.1", "-ext", "SAN=ip:127.0.0.1", "-validity", "2",
+                    "-storetype", "PKCS12", "-keystore", keyStore.toString(),
+                    "-storepass", new String(PASSWORD), "-keypass", new String(PASSWORD));
+            var certificate = dir.resolve("camera.pem");
+            keytool("-exportcert", "-rfc", "-alias", "camera", "-file", certificate.toString(),
+                    "-keystore", keyStore.toString(), "-storepass", new String(PASSWORD));
+            try (var in = Files.newInputStream(keyStore)) {
+                var store = KeyStore.getInstance("PKCS12");
+                store.load(in, PASSWORD);
+                var keyManagers = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+                keyManagers.init(store, PASSWORD);
+                var context = SSLContext.getInstance("TLS");
+                context.init(keyManagers.getKeyManagers(), null, null);
+                tls = new Tls(context, Files.readString(certificate, US_ASCII));
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Cannot load key store of the camera server", e);
+            }
+        }
+        return tls;
+    }
+
+    private static void keytool(String... args) throws IOException {
+        var command = new ArrayList<String>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "keytool").toString());
+        command.addAll(List.of(args));
+        var process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        var output = new String(process.getInputStream().readAllBytes(), US_ASCII);
+        try {
+            if (process.waitFor() != 0) {
+                throw new IOException("keytool failed: " + output);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+    private record Tls(SSLContext context, String certificate) {
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (var socket : sockets) {
+            socket.close();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                var socket = serverSocket.accept();
+                sockets.add(socket);
+                Thread.ofVirtual().name("local-camera-connection").start(() -> serve(socket));
+            } catch (IOException e) {
+                log.debug("Camera server stopped accepting connections", e);
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket;
+             var in = new DataInputStream(socket.getInputStream());
+             var out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            var authentication = new byte[80];
+            in.readFully(authentication);
+            authentications.add(authentication);
+            var header = ByteBuffer.allocate(16).order(LITTLE_ENDIAN);
+            for (var frame : frames) {
+                header.clear();
+                header.putInt(frame.length).putInt(0).putInt(0).putInt(0);
+                out.write(header.array());
+                out.write(frame);
+            }
+            out.flush();
+        } catch (IOException e) {
+            log.debug("Camera connection closed", e);
+        } finally {
+            sockets.remove(socket);
+        }
+    }
+}
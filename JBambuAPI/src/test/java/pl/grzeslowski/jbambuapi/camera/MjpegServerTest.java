@@ -0,0 +1,180 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.grzeslowski.jbambuapi.Conditions.waitFor;
+import static pl.grzeslowski.jbambuapi.camera.TlsCameraTest.FRAMES;
+
+class MjpegServerTest {
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    @DisplayName("should serve frames of one broadcaster to many viewers")
+    void viewers() throws Exception {
+        // given
+        var pool = new FramePool();
+        try (var broadcaster = new FrameBroadcaster();
+             var server = new MjpegServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            server.addCamera("SERIAL", broadcaster);
+            server.start();
+            var first = watch(server.uri("SERIAL"));
+            var second = watch(server.uri("SERIAL"));
+            waitFor(() -> server.stats().getFirst().viewerCount() == 2);
+
+            // when
+            for (var frame : FRAMES) {
+                try (var pooled = pool.acquire(frame.length)) {
+                    System.arraycopy(frame, 0, pooled.array(), 0, frame.length);
+                    broadcaster.onFrame(pooled);
+                }
+            }
+
+            // then
+            for (var viewer : List.of(first, second)) {
+                var received = viewer.get(10, TimeUnit.SECONDS);
+                assertThat(received).isNotEmpty();
+                assertThat(FRAMES).containsAll(received);
+                assertThat(received.getLast()).isEqualTo(FRAMES.getLast());
+            }
+            waitFor(() -> server.stats().getFirst().viewers().stream()
+                    .allMatch(viewer -> viewer.delivered() + viewer.dropped() == FRAMES.size()));
+            var stats = server.stats().getFirst();
+            assertThat(stats.camera()).isEqualTo("SERIAL");
+            assertThat(stats.frames()).isEqualTo(FRAMES.size());
+            assertThat(stats.maxLagNanos()).isZero();
+            assertThat(stats.viewers()).allSatisfy(viewer -> assertThat(viewer.address()).isNotBlank());
+        }
+        waitFor(() -> pool.stats().outstanding() == 0);
+    }
+
+    @Test
+    @DisplayName("should disconnect viewers when the camera is removed")
+    void removeCamera() throws Exception {
+        // given
+        try (var broadcaster = new FrameBroadcaster();
+             var server = new MjpegServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            server.addCamera("SERIAL", broadcaster);
+            server.start();
+            var viewer = client.send(HttpRequest.newBuilder(server.uri("SERIAL")).build(),
+                    HttpResponse.BodyHandlers.ofInputStream());
+            waitFor(() -> server.stats().getFirst().viewerCount() == 1);
+
+            // when
+            server.removeCamera("SERIAL");
+
+            // then
+            assertThat(viewer.statusCode()).isEqualTo(200);
+            assertThat(viewer.headers().firstValue("Content-Type"))
+                    .hasValueSatisfying(type -> assertThat(type).startsWith("multipart/x-mixed-replace"));
+            try (var body = viewer.body()) {
+                assertThat(body.readAllBytes()).isEmpty();
+            }
+            assertThat(server.stats()).isEmpty();
+            assertThat(broadcaster.getSubscriptions()).isEmpty();
+        }
+    }
+
+    @Test
+    @DisplayName("should disconnect viewers when the camera stream ends")
+    void cameraEnds() throws Exception {
+        // given
+        try (var cameraServer = new LocalCameraServer(FRAMES)) {
+            var camera = new ASeriesCamera(cameraServer.config(), new FramePool());
+            camera.connect();
+            try (var broadcaster = new FrameBroadcaster(camera);
+                 var server = new MjpegServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+                server.addCamera("SERIAL", broadcaster);
+                server.start();
+                var viewer = client.sendAsync(HttpRequest.newBuilder(server.uri("SERIAL")).build(),
+                        HttpResponse.BodyHandlers.ofByteArray());
+                waitFor(() -> server.stats().getFirst().viewerCount() == 1);
+
+                // when
+                broadcaster.start();
+
+                // then
+                var response = viewer.get(10, TimeUnit.SECONDS);
+                assertThat(response.statusCode()).isEqualTo(200);
+                assertThat(response.body()).isNotEmpty();
+                waitFor(() -> server.stats().getFirst().viewerCount() == 0);
+                assertThat(broadcaster.getSubscriptions()).isEmpty();
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("should respond with 404 for unknown cameras")
+    void unknownCamera() throws Exception {
+        try (var server = new MjpegServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))) {
+            server.start();
+
+            var response = client.send(HttpRequest.newBuilder(server.uri("UNKNOWN")).build(),
+                    HttpResponse.BodyHandlers.discarding());
+
+            assertThat(response.statusCode()).isEqualTo(404);
+        }
+    }
+
+    /**
+     * Reads parts of the stream until the last frame of {@link TlsCameraTest#FRAMES} arrives.
+     */
+    private CompletableFuture<List<byte[]>> watch(URI uri) {
+        return client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> {
+                    List<byte[]> frames = new ArrayList<>();
+                    try (var body = response.body()) {
+                        do {
+                            frames.add(readPart(body));
+                        } while (!Arrays.equals(frames.getLast(), FRAMES.getLast()));
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    }
+                    return frames;
+                });
+    }
+
+    private static byte[] readPart(InputStream in) throws IOException {
+        var length = -1;
+        String line;
+        while (!(line = readLine(in)).isEmpty() || length < 0) {
+            if (line.startsWith("Content-Length: ")) {
+                length = Integer.parseInt(line.substring("Content-Length: ".length()));
+            }
+        }
+        var frame = in.readNBytes(length);
+        readLine(in);
+        return frame;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        var line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("End of stream");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(US_ASCII);
+    }
+}
@@ -0,0 +1,99 @@
+package pl.grzeslowski.jbambuapi.camera;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class TlsCameraTest {
+    static final List<byte[]> FRAMES = IntStream.range(0, 20)
+            .mapToObj(i -> LocalCameraServer.jpeg(10_000 + i * 100, i))
+            .toList();
+
+    @Test
+    @DisplayName("should read frames into pooled arrays")
+    void frames() throws Exception {
+        // given
+        var pool = new FramePool();
+        List<byte[]> received = new ArrayList<>();
+        try (var server = new LocalCameraServer(FRAMES);
+             var camera = new ASeriesCamera(server.config(), pool)) {
+            camera.connect();
+            var frames = camera.frames();
+
+            // when
+            for (var i = 0; i < FRAMES.size(); i++) {
+                try (var frame = frames.next()) {
+                    received.add(frame.toByteArray());
+                    assertThat(frame.array().length).isEqualTo(16 * 1024);
+                }
+            }
+
+            // then
+            assertThat(server.authentications()).hasSize(1);
+        }
+        assertThat(received).containsExactlyElementsOf(FRAMES);
+        var stats = pool.stats();
+        assertThat(stats.acquired()).isEqualTo(FRAMES.size());
+        assertThat(stats.hits()).isEqualTo(FRAMES.size() - 1);
+        assertThat(stats.outstanding()).isZero();
+        assertThat(stats.pooled()).isOne();
+        assertThat(stats.hitRate()).isGreaterThan(0.9);
+    }
+
+    @Test
+    @DisplayName("should copy frames for the byte array iterator and close camera at the end of stream")
+    void iterator() throws Exception {
+        // given
+        var pool = new FramePool();
+        List<byte[]> received = new ArrayList<>();
+        try (var server = new LocalCameraServer(FRAMES);
+             var camera = new PSeriesCamera(server.config(), pool)) {
+            camera.connect();
+            var images = camera.iterator();
+
+            // when
+            for (var i = 0; i < FRAMES.size(); i++) {
+                received.add(images.next());
+            }
+
+            // then
+            assertThatThrownBy(images::next).isInstanceOf(NoSuchElementException.class);
+            assertThat(camera.isConnected()).isFalse();
+        }
+        assertThat(received).containsExactlyElementsOf(FRAMES);
+        assertThat(pool.stats().outstanding()).isZero();
+    }
+
+    @Test
+    @DisplayName("should give the array back to the pool when the last owner releases the frame")
+    void referenceCounting() {
+        // given
+        var pool = new FramePool(FramePool.MIN_ARRAY_SIZE, 1);
+        var frame = pool.acquire(100);
+        var big = pool.acquire(FramePool.MIN_ARRAY_SIZE + 1);
+
+        // when
+        frame.retain();
+        frame.release();
+        var outstandingWhileRetained = pool.stats().outstanding();
+        frame.release();
+        big.release();
+
+        // then
+        assertThat(outstandingWhileRetained).isEqualTo(2);
+        assertThat(pool.stats().outstanding()).isZero();
+        assertThat(pool.stats().pooled()).isOne();
+        assertThatThrownBy(frame::release).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(frame::array).isInstanceOf(IllegalStateException.class);
+        assertThatThrownBy(frame::retain).isInstanceOf(IllegalStateException.class);
+        assertThat(pool.acquire(200).array().length).isEqualTo(FramePool.MIN_ARRAY_SIZE);
+        assertThat(pool.stats().hits()).isOne();
+    }
+}
@@ -0,0 +1,174 @@
+package pl.grzeslowski.jbambuapi.dispatch;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DispatcherTest {
+    @Test
+    @DisplayName("should deliver events in order on dispatcher thread")
+    void deliverInOrder() throws Exception {
+        // given
+        var received = new CopyOnWriteArrayList<Integer>();
+        var threads = new CopyOnWriteArrayList<Thread>();
+        var done = new CountDownLatch(100);
+        try (var dispatcher = new Dispatcher<Integer>(event -> {
+            received.add(event);
+            threads.add(Thread.currentThread());
+            done.countDown();
+        }, DispatchConfig.withPolicy(OverflowPolicy.BLOCK))) {
+
+            // when
+            for (var i = 0; i < 100; i++) {
+                dispatcher.offer(i);
+            }
+
+            // then
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+            assertThat(received).isEqualTo(rangeClosed(0, 99));
+            assertThat(threads).doesNotContain(Thread.currentThread());
+            assertThat(threads.getFirst().isVirtual()).isTrue();
+            assertThat(dispatcher.getDeliveredCount()).isEqualTo(100);
+            assertThat(dispatcher.getDroppedCount()).isZero();
+        }
+    }
+
+    @Test
+    @DisplayName("should drop oldest events when queue is full")
+    void dropOldest() throws Exception {
+        // given
+        var blocked = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var received = new CopyOnWriteArrayList<Integer>();
+        var config = new DispatchConfig(3, OverflowPolicy.DROP_OLDEST, Thread.ofVirtual().factory());
+        try (var dispatcher = new Dispatcher<Integer>(event -> {
+            blocked.countDown();
+            await(release);
+            received.add(event);
+        }, config)) {
+            dispatcher.offer(0);
+            assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // when
+            for (var i = 1; i <= 5; i++) {
+                dispatcher.offer(i);
+            }
+
+            // then
+            assertThat(dispatcher.getQueueDepth()).isEqualTo(3);
+            assertThat(dispatcher.getDroppedCount()).isEqualTo(2);
+            release.countDown();
+            awaitDelivered(dispatcher, 4);
+            assertThat(received).containsExactly(0, 3, 4, 5);
+        }
+    }
+
+    @Test
+    @DisplayName("should keep only the newest event when conflating")
+    void conflate() throws Exception {
+        // given
+        var blocked = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        var received = new CopyOnWriteArrayList<Integer>();
+        try (var dispatcher = new Dispatcher<Integer>(event -> {
+            blocked.countDown();
+            await(release);
+            received.add(event);
+        }, DispatchConfig.withPolicy(OverflowPolicy.CONFLATE))) {
+            dispatcher.offer(0);
+            assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue();
+
+            // when
+            for (var i = 1; i <= 5; i++) {
+                dispatcher.offer(i);
+            }
+
+            // then
+            assertThat(dispatcher.getQueueDepth()).isEqualTo(1);
+            assertThat(dispatcher.getDroppedCount()).isEqualTo(4);
+            release.countDown();
+            awaitDelivered(dispatcher, 2);
+            assertThat(received).containsExactly(0, 5);
+        }
+    }
+
+    @Test
+    @DisplayName("should block producer when queue is full")
+    void block() throws Exception {
+        // given
+        var release = new CountDownLatch(1);
+        var config = new DispatchConfig(1, OverflowPolicy.BLOCK, Thread.ofVirtual().factory());
+        try (var dispatcher = new Dispatcher<Integer>(event -> await(release), config)) {
+            dispatcher.offer(0);
+            awaitQueueDepth(dispatcher, 0);
+            dispatcher.offer(1);
+
+            // when
+            var producer = Thread.ofPlatform().start(() -> dispatcher.offer(2));
+
+            // then
+            assertThat(producer.join(Duration.ofMillis(200))).isFalse();
+            release.countDown();
+            assertThat(producer.join(Duration.ofSeconds(5))).isTrue();
+            awaitDelivered(dispatcher, 3);
+            assertThat(dispatcher.getDroppedCount()).isZero();
+        }
+    }
+
+    @Test
+    @DisplayName("should keep delivering after subscriber throws")
+    void subscriberThrows() throws Exception {
+        // given
+        var done = new CountDownLatch(1);
+        try (var dispatcher = new Dispatcher<Integer>(event -> {
+            if (event == 0) {
+                throw new IllegalStateException("Test exception");
+            }
+            done.countDown();
+        }, DispatchConfig.buildDefault())) {
+
+            // when
+            dispatcher.offer(0);
+            dispatcher.offer(1);
+
+            // then
+            assertThat(done.await(5, TimeUnit.SECONDS)).isTrue();
+        }
+    }
+
+    private static List<Integer> rangeClosed(int from, int to) {
+        return IntStream.rangeClosed(from, to).boxed().toList();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitDelivered(Dispatcher<?> dispatcher, long delivered) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (dispatcher.getDeliveredCount() < delivered && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(dispatcher.getDeliveredCount()).isEqualTo(delivered);
+    }
+
+    private static void awaitQueueDepth(Dispatcher<?> dispatcher, int depth) throws InterruptedException {
+        var deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (dispatcher.getQueueDepth() != depth && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertThat(dispatcher.getQueueDepth()).isEqualTo(depth);
+    }
+}
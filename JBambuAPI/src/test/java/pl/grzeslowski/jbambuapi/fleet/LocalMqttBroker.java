@@ -0,0 +1,239 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Stand-in for the MQTT broker of a printer: plain TCP, MQTT 3.1.1, QoS 0 only, no authentication.
+ * <p>
+ * Handles just what {@link pl.grzeslowski.jbambuapi.mqtt.PrinterClient} needs (connect, subscribe, publish, ping and
+ * disconnect). Every connection is served by its own virtual thread.
+ */
+@Slf4j
+public final class LocalMqttBroker implements AutoCloseable {
+    private static final int CONNECT = 1;
+    private static final int PUBLISH = 3;
+    private static final int SUBSCRIBE = 8;
+    private static final int UNSUBSCRIBE = 10;
+    private static final int PINGREQ = 12;
+    private static final int DISCONNECT = 14;
+
+    private final ServerSocket serverSocket;
+    private final Set<Connection> connections = ConcurrentHashMap.newKeySet();
+    private final List<String> publishedTopics = new CopyOnWriteArrayList<>();
+    private final List<Long> acceptedAt = new CopyOnWriteArrayList<>();
+    private final AtomicInteger subscriptionsToFail = new AtomicInteger();
+
+    public LocalMqttBroker() throws IOException {
+        serverSocket = new ServerSocket(0, 1_024, InetAddress.getLoopbackAddress());
+        Thread.ofVirtual().name("local-mqtt-broker").start(this::accept);
+    }
+
+    public URI uri() {
+        return URI.create("tcp://127.0.0.1:" + serverSocket.getLocalPort());
+    }
+
+    /**
+     * Sends the message to all clients subscribed to the topic.
+     */
+    public void publish(String topic, byte[] payload) {
+        connections.forEach(connection -> connection.publish(topic, payload));
+    }
+
+    /**
+     * Topics of messages published by clients.
+     */
+    public List<String> publishedTopics() {
+        return publishedTopics;
+    }
+
+    /**
+     * {@link System#nanoTime()} of every accepted TCP connection, in order.
+     */
+    public List<Long> acceptedAt() {
+        return acceptedAt;
+    }
+
+    /**
+     * Refuses the next {@code count} subscribe requests (granted QoS {@code 0x80}), keeping the connection open.
+     */
+    public void failSubscriptions(int count) {
+        subscriptionsToFail.set(count);
+    }
+
+    public int connectionCount() {
+        return connections.size();
+    }
+
+    /**
+     * Closes all client sockets without sending anything, like a printer that was switched off.
+     */
+    public void dropConnections() {
+        connections.forEach(Connection::close);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        dropConnections();
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                var connection = new Connection(serverSocket.accept());
+                acceptedAt.add(System.nanoTime());
+                connections.add(connection);
+                Thread.ofVirtual().name("local-mqtt-broker-connection").start(connection::serve);
+            } catch (IOException e) {
+                log.debug("Broker stopped accepting connections", e);
+            }
+        }
+    }
+
+    private final class Connection {
+        final Socket socket;
+        final Set<String> subscriptions = ConcurrentHashMap.newKeySet();
+        final DataOutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            socket.setTcpNoDelay(true);
+            out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void serve() {
+            try (var in = new DataInputStream(new BufferedInputStream(socket.getInputStream()))) {
+                while (true) {
+                    var header = in.read();
+                    if (header < 0) {
+                        return;
+                    }
+                    var body = new byte[readRemainingLength(in)];
+                    in.readFully(body);
+                    if (!handle(header, new DataInputStream(new ByteArrayInputStream(body)))) {
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                log.debug("Connection closed", e);
+            } finally {
+                close();
+            }
+        }
+
+        private boolean handle(int header, DataInputStream body) throws IOException {
+            switch (header >>> 4) {
+                case CONNECT -> write(0x20, new byte[]{0, 0});
+                case SUBSCRIBE -> {
+                    var packetId = body.readUnsignedShort();
+                    var granted = new ByteArrayOutputStream();
+                    var refuse = subscriptionsToFail.getAndUpdate(count -> Math.max(0, count - 1)) > 0;
+                    while (body.available() > 0) {
+                        var topic = body.readUTF();
+                        body.readByte();
+                        if (refuse) {
+                            granted.write(0x80);
+                        } else {
+                            subscriptions.add(topic);
+                            granted.write(0);
+                        }
+                    }
+                    write(0x90, concat(packetId, granted.toByteArray()));
+                }
+                case UNSUBSCRIBE -> {
+                    var packetId = body.readUnsignedShort();
+                    while (body.available() > 0) {
+                        subscriptions.remove(body.readUTF());
+                    }
+                    write(0xB0, concat(packetId, new byte[0]));
+                }
+                case PUBLISH -> {
+                    var topic = body.readUTF();
+                    if (((header >>> 1) & 0x3) > 0) {
+                        throw new IOException("Only QoS 0 is supported");
+                    }
+                    var payload = body.readAllBytes();
+                    publishedTopics.add(topic);
+                    LocalMqttBroker.this.publish(topic, payload);
+                }
+                case PINGREQ -> write(0xD0, new byte[0]);
+                case DISCONNECT -> {
+                    return false;
+                }
+                default -> throw new IOException("Unsupported packet type " + (header >>> 4));
+            }
+            return true;
+        }
+
+        void publish(String topic, byte[] payload) {
+            if (!subscriptions.contains(topic)) {
+                return;
+            }
+            var topicBytes = topic.getBytes(UTF_8);
+            var body = new byte[2 + topicBytes.length + payload.length];
+            body[0] = (byte) (topicBytes.length >>> 8);
+            body[1] = (byte) topicBytes.length;
+            System.arraycopy(topicBytes, 0, body, 2, topicBytes.length);
+            System.arraycopy(payload, 0, body, 2 + topicBytes.length, payload.length);
+            try {
+                write(0x30, body);
+            } catch (IOException e) {
+                close();
+            }
+        }
+
+        private synchronized void write(int header, byte[] body) throws IOException {
+            out.writeByte(header);
+            var length = body.length;
+            do {
+                var digit = length % 128;
+                length /= 128;
+                out.writeByte(length > 0 ? digit | 0x80 : digit);
+            } while (length > 0);
+            out.write(body);
+            out.flush();
+        }
+
+        void close() {
+            connections.remove(this);
+            try {
+                socket.close();
+            } catch (IOException e) {
+                log.debug("Cannot close socket", e);
+            }
+        }
+
+        private static int readRemainingLength(DataInputStream in) throws IOException {
+            var length = 0;
+            var multiplier = 1;
+            int digit;
+            do {
+                digit = in.readUnsignedByte();
+                length += (digit & 0x7F) * multiplier;
+                multiplier *= 128;
+            } while ((digit & 0x80) != 0);
+            return length;
+        }
+
+        private static byte[] concat(int packetId, byte[] rest) {
+            var bytes = new byte[2 + rest.length];
+            bytes[0] = (byte) (packetId >>> 8);
+            bytes[1] = (byte) packetId;
+            System.arraycopy(rest, 0, bytes, 2, rest.length);
+            return bytes;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClientConfig;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pl.grzeslowski.jbambuapi.Conditions.waitFor;
+
+class PrinterFleetTest {
+    static final List<String> SERIALS = List.of("serial-1", "serial-2", "serial-3");
+    LocalMqttBroker broker;
+    PrinterFleet fleet;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        broker = new LocalMqttBroker();
+        var reconnect = new ReconnectConfig(Duration.ofMillis(10), Duration.ofMillis(100), 2, Duration.ZERO, true);
+        var pushall = new PushallConfig(Duration.ZERO, Duration.ofSeconds(1), Duration.ofSeconds(10), Duration.ofMillis(10));
+        fleet = new PrinterFleet(new FleetConfig(2, 1_000, 1, reconnect, pushall));
+        SERIALS.forEach(serial -> fleet.add(printer(serial)));
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        fleet.close();
+        broker.close();
+    }
+
+    @Test
+    @DisplayName("should deliver messages of every printer to fleet subscribers in order")
+    void subscribe() throws Exception {
+        // given
+        var messages = 100;
+        var received = new ConcurrentHashMap<String, List<String>>();
+        var latch = new CountDownLatch(SERIALS.size() * messages);
+        fleet.subscribe((topic, data) -> {
+            received.computeIfAbsent(topic, __ -> new CopyOnWriteArrayList<>()).add(new String(data, UTF_8));
+            latch.countDown();
+        });
+
+        // when
+        fleet.connectAll();
+        // pushall is sent after subscribing, while connected() is true as soon as the connection is
+        waitFor(() -> broker.publishedTopics().size() == SERIALS.size());
+        for (var i = 0; i < messages; i++) {
+            for (var serial : SERIALS) {
+                broker.publish(reportTopic(serial), ("{\"seq\": %s}".formatted(i)).getBytes(UTF_8));
+            }
+        }
+
+        // then
+        assertThat(latch.await(10, SECONDS)).isTrue();
+        var expected = IntStream.range(0, messages).mapToObj("{\"seq\": %s}"::formatted).toList();
+        assertThat(received).containsOnlyKeys(SERIALS.stream().map(PrinterFleetTest::reportTopic).toList());
+        received.values().forEach(list -> assertThat(list).containsExactlyElementsOf(expected));
+        var health = fleet.health();
+        assertThat(health.connected()).isEqualTo(SERIALS.size());
+        assertThat(health.messages()).isEqualTo((long) SERIALS.size() * messages);
+        assertThat(health.dropped()).isZero();
+        assertThat(fleet.health("serial-2").lastMessage()).isNotNull();
+    }
+
+    @Test
+    @DisplayName("should reconnect printers after connection loss, request full state and measure time to recover")
+    void reconnect() throws Exception {
+        // given
+        fleet.connectAll();
+        waitFor(() -> fleet.health().connected() == SERIALS.size());
+        // dropping connections before the resync pushall reaches the broker would discard it
+        waitFor(() -> broker.publishedTopics().size() == SERIALS.size());
+
+        // when
+        broker.dropConnections();
+
+        // then
+        waitFor(() -> fleet.health().reconnect().recoveries() == SERIALS.size());
+        waitFor(() -> fleet.health().connected() == SERIALS.size());
+        var health = fleet.health();
+        assertThat(health.reconnect().connectionLosses()).isEqualTo(SERIALS.size());
+        assertThat(health.reconnect().maxTimeToRecover()).isPositive();
+        assertThat(health.printers())
+                .allSatisfy(printer -> {
+                    assertThat(printer.reconnect().recoveries()).isOne();
+                    assertThat(printer.lastError()).isNotNull();
+                });
+        // pushall after the first connect and after the reconnect
+        waitFor(() -> broker.publishedTopics().size() == 2 * SERIALS.size());
+        assertThat(broker.publishedTopics())
+                .containsOnly(SERIALS.stream().map("device/%s/request"::formatted).toArray(String[]::new));
+    }
+
+    @Test
+    @DisplayName("should merge full state requests with pushall sent after connect")
+    void requestFullState() throws Exception {
+        // given
+        fleet.connectAll();
+        waitFor(() -> broker.publishedTopics().size() == SERIALS.size());
+
+        // when
+        var responses = IntStream.range(0, 5).mapToObj(__ -> fleet.requestFullState("serial-1")).toList();
+        broker.publish(reportTopic("serial-1"), "{\"print\": {\"command\": \"push_status\", \"msg\": 0}}".getBytes(UTF_8));
+
+        // then
+        CompletableFuture.allOf(responses.toArray(CompletableFuture[]::new)).get(10, SECONDS);
+        assertThat(broker.publishedTopics()).hasSize(SERIALS.size());
+        var stats = fleet.pushallStats();
+        assertThat(stats.requests()).isEqualTo(5);
+        assertThat(stats.coalesced()).isEqualTo(5);
+        assertThat(stats.fullReports()).isOne();
+    }
+
+    @Test
+    @DisplayName("should not add two printers with the same serial")
+    void duplicate() {
+        assertThatThrownBy(() -> fleet.add(printer("serial-1")))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("serial-1");
+        assertThat(fleet.size()).isEqualTo(SERIALS.size());
+    }
+
+    @Test
+    @DisplayName("should disconnect removed printer")
+    void remove() throws Exception {
+        // given
+        fleet.connectAll();
+        waitFor(() -> fleet.health().connected() == SERIALS.size());
+        var client = fleet.find("serial-1").orElseThrow();
+
+        // when
+        var removed = fleet.remove("serial-1");
+
+        // then
+        assertThat(removed).isTrue();
+        assertThat(client.isConnected()).isFalse();
+        assertThat(fleet.serials()).containsExactlyInAnyOrder("serial-2", "serial-3");
+        waitFor(() -> broker.connectionCount() == 2);
+    }
+
+    private PrinterClientConfig printer(String serial) {
+        return PrinterClientConfig.requiredFields(broker.uri(), "bblp", serial, "access-code".toCharArray());
+    }
+
+    private static String reportTopic(String serial) {
+        return "device/%s/report".formatted(serial);
+    }
+}
@@ -0,0 +1,95 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClient;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClientConfig;
+
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.grzeslowski.jbambuapi.Conditions.waitFor;
+
+class PushallSchedulerTest {
+    private static final String FULL_REPORT = "{\"print\": {\"command\": \"push_status\", \"msg\": 0}}";
+
+    @Test
+    @DisplayName("should recognize full reports")
+    void fullReport() throws Exception {
+        var examples = Paths.get("src/test/resources/example/A1");
+        assertThat(PushallScheduler.isFullReport(Files.readAllBytes(
+                examples.resolve("250228204329---device_03919C461204912_report.json")))).isTrue();
+        assertThat(PushallScheduler.isFullReport(Files.readAllBytes(
+                examples.resolve("250228204334---device_03919C461204912_report.json")))).isFalse();
+        assertThat(PushallScheduler.isFullReport(FULL_REPORT.getBytes(UTF_8))).isTrue();
+        assertThat(PushallScheduler.isFullReport("{\"info\": {\"msg\": 0}}".getBytes(UTF_8))).isFalse();
+        assertThat(PushallScheduler.isFullReport("not json".getBytes(UTF_8))).isFalse();
+    }
+
+    @Test
+    @DisplayName("should spread printers evenly over the timing wheel")
+    void spread() throws Exception {
+        // given
+        var config = new PushallConfig(Duration.ofSeconds(10), Duration.ZERO, Duration.ofSeconds(1), Duration.ofSeconds(1));
+        try (var executor = new MqttExecutor(1);
+             var scheduler = new PushallScheduler(config)) {
+            List<PrinterClient> clients = new ArrayList<>();
+            for (var i = 0; i < 25; i++) {
+                clients.add(PrinterClient.withExecutor(printer(URI.create("tcp://127.0.0.1:1883"), "serial-" + i), executor));
+            }
+
+            // when
+            var firstFive = clients.subList(0, 5);
+            firstFive.forEach(scheduler::register);
+            var afterFive = scheduler.slotSizes();
+            clients.subList(5, clients.size()).forEach(scheduler::register);
+            firstFive.forEach(scheduler::unregister);
+
+            // then
+            assertThat(afterFive).containsOnly(0, 1);
+            assertThat(Arrays.stream(afterFive).sum()).isEqualTo(5);
+            assertThat(scheduler.slotSizes()).containsOnly(2);
+            assertThat(Arrays.stream(scheduler.slotSizes()).sum()).isEqualTo(20);
+        }
+    }
+
+    @Test
+    @DisplayName("should refresh printers periodically unless they recently sent full report")
+    void refresh() throws Exception {
+        // given
+        var config = new PushallConfig(Duration.ofMillis(200), Duration.ofSeconds(5), Duration.ofMillis(100), Duration.ofMillis(10));
+        try (var broker = new LocalMqttBroker();
+             var executor = new MqttExecutor(1);
+             var scheduler = new PushallScheduler(config);
+             var client = PrinterClient.withExecutor(printer(broker.uri(), "serial"), executor)) {
+            client.connect();
+            scheduler.register(client);
+
+            // when
+            waitFor(() -> scheduler.stats().sent() >= 1);
+            broker.publish("device/serial/report", FULL_REPORT.getBytes(UTF_8));
+            waitFor(() -> scheduler.stats().skippedRefreshes() >= 2);
+
+            // then
+            var stats = scheduler.stats();
+            assertThat(stats.fullReports()).isOne();
+            assertThat(stats.sent()).isOne();
+            // served by the full report, nothing is sent
+            scheduler.request(client).get(1, SECONDS);
+            assertThat(scheduler.stats().fresh()).isOne();
+            assertThat(broker.publishedTopics()).containsExactly("device/serial/request");
+        }
+    }
+
+    private static PrinterClientConfig printer(URI uri, String serial) {
+        return PrinterClientConfig.requiredFields(uri, "bblp", serial, "access-code".toCharArray());
+    }
+}
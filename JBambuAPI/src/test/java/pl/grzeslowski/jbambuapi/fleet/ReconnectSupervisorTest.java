@@ -0,0 +1,170 @@
+package pl.grzeslowski.jbambuapi.fleet;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pl.grzeslowski.jbambuapi.mqtt.ConnectionCallback;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClient;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterClientConfig;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+import static pl.grzeslowski.jbambuapi.Conditions.waitFor;
+
+class ReconnectSupervisorTest {
+    @Test
+    @DisplayName("should pick random backoff below exponentially growing bound")
+    void backoff() {
+        // given
+        var config = new ReconnectConfig(Duration.ofMillis(100), Duration.ofSeconds(1), 1, Duration.ZERO, false);
+        try (var supervisor = new ReconnectSupervisor(config)) {
+            // when
+            var bounds = IntStream.range(0, 6)
+                    .mapToObj(failures -> IntStream.range(0, 1_000)
+                            .mapToLong(__ -> supervisor.backoffNanos(failures))
+                            .summaryStatistics())
+                    .toList();
+
+            // then
+            assertThat(bounds).extracting(stats -> stats.getMax() <= MILLISECONDS.toNanos(Math.min(100L << bounds.indexOf(stats), 1_000)))
+                    .containsOnly(true);
+            assertThat(bounds).allSatisfy(stats -> assertThat(stats.getMin()).isGreaterThanOrEqualTo(0));
+            // full jitter spreads delays over the whole range
+            assertThat(bounds.get(5).getMin()).isLessThan(MILLISECONDS.toNanos(100));
+            assertThat(bounds.get(5).getMax()).isGreaterThan(MILLISECONDS.toNanos(900));
+        }
+    }
+
+    @Test
+    @DisplayName("should retry failed connects and report failures")
+    void retry() throws Exception {
+        // given
+        URI closedPort;
+        try (var socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            closedPort = URI.create("tcp://127.0.0.1:" + socket.getLocalPort());
+        }
+        var failures = new AtomicInteger();
+        var config = new ReconnectConfig(Duration.ofMillis(1), Duration.ofMillis(10), 1, Duration.ZERO, false);
+        try (var executor = Executors.newScheduledThreadPool(1);
+             var supervisor = new ReconnectSupervisor(config)) {
+            var client = PrinterClient.withExecutor(printer(closedPort, "serial"), executor);
+
+            // when
+            supervisor.supervise(client, new ConnectionCallback() {
+                @Override
+                public void connectComplete(boolean reconnect) {
+                }
+
+                @Override
+                public void connectionLost(Throwable cause) {
+                }
+
+                @Override
+                public void connectFailed(Throwable cause) {
+                    failures.incrementAndGet();
+                }
+            });
+
+            // then
+            waitFor(() -> failures.get() >= 3);
+            var stats = supervisor.stats(client);
+            assertThat(stats.failedAttempts()).isGreaterThanOrEqualTo(3);
+            assertThat(stats.recoveries()).isZero();
+            supervisor.unsupervise(client);
+        }
+    }
+
+    @Test
+    @DisplayName("should retry when subscribing to reports fails after connecting")
+    void retryFailedSubscribe() throws Exception {
+        // given
+        var failures = new AtomicInteger();
+        var received = new AtomicInteger();
+        var config = new ReconnectConfig(Duration.ofMillis(1), Duration.ofMillis(10), 1, Duration.ZERO, false);
+        try (var broker = new LocalMqttBroker();
+             var executor = new MqttExecutor(1);
+             var supervisor = new ReconnectSupervisor(config)) {
+            broker.failSubscriptions(1);
+            var client = PrinterClient.withExecutor(printer(broker.uri(), "serial"), executor);
+            client.subscribe((topic, data) -> received.incrementAndGet());
+
+            // when
+            supervisor.supervise(client, new ConnectionCallback() {
+                @Override
+                public void connectComplete(boolean reconnect) {
+                }
+
+                @Override
+                public void connectionLost(Throwable cause) {
+                }
+
+                @Override
+                public void connectFailed(Throwable cause) {
+                    failures.incrementAndGet();
+                }
+            });
+
+            // then
+            waitFor(() -> {
+                broker.publish("device/serial/report", "{}".getBytes(UTF_8));
+                return received.get() > 0;
+            });
+            assertThat(failures).hasValue(1);
+            assertThat(client.isConnected()).isTrue();
+            supervisor.unsupervise(client);
+            client.close();
+        }
+    }
+
+    @Test
+    @DisplayName("should stagger first connects")
+    void stagger() throws Exception {
+        // given
+        var printers = 5;
+        var stagger = Duration.ofMillis(100);
+        var connected = new AtomicInteger();
+        var config = new ReconnectConfig(Duration.ofMillis(10), Duration.ofMillis(100), printers, stagger, false);
+        try (var broker = new LocalMqttBroker();
+             var executor = new MqttExecutor(1);
+             var supervisor = new ReconnectSupervisor(config)) {
+            List<PrinterClient> clients = new ArrayList<>();
+            for (var i = 0; i < printers; i++) {
+                clients.add(PrinterClient.withExecutor(printer(broker.uri(), "serial-" + i), executor));
+            }
+
+            // when
+            clients.forEach(client -> supervisor.supervise(client, new ConnectionCallback() {
+                @Override
+                public void connectComplete(boolean reconnect) {
+                    connected.incrementAndGet();
+                }
+
+                @Override
+                public void connectionLost(Throwable cause) {
+                }
+            }));
+
+            // then
+            waitFor(() -> connected.get() == printers);
+            // MQTT handshakes take uneven time, so measure when attempts reached the broker
+            var times = broker.acceptedAt();
+            assertThat(times.getLast() - times.getFirst())
+                    .isGreaterThanOrEqualTo(stagger.multipliedBy(printers - 1).toNanos() - MILLISECONDS.toNanos(50));
+            clients.forEach(PrinterClient::close);
+        }
+    }
+
+    private static PrinterClientConfig printer(URI uri, String serial) {
+        return PrinterClientConfig.requiredFields(uri, "bblp", serial, "access-code".toCharArray());
+    }
+}
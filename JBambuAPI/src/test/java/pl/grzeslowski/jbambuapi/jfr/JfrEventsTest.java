@@ -0,0 +1,116 @@
+package pl.grzeslowski.jbambuapi.jfr;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.grzeslowski.jbambuapi.camera.CameraReactor;
+import pl.grzeslowski.jbambuapi.camera.Frame;
+import pl.grzeslowski.jbambuapi.camera.FrameListener;
+import pl.grzeslowski.jbambuapi.camera.LocalCameraServer;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterWatcher;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JfrEventsTest {
+    @Test
+    @DisplayName("should record parse, merge and subscriber events of PrinterWatcher")
+    void printerWatcher(@TempDir Path dir) throws Exception {
+        // given
+        var watcher = new PrinterWatcher();
+        watcher.subscribe((delta, fullState) -> {
+        });
+        watcher.subscribe((delta, fullState) -> {
+            throw new IllegalStateException("test");
+        });
+        var payload = "{\"print\": {\"nozzle_temper\": 215.5, \"layer_num\": 12}}".getBytes(UTF_8);
+        var file = dir.resolve("recording.jfr");
+
+        // when
+        try (var recording = new Recording()) {
+            recording.enable(ReportParseEvent.class);
+            recording.enable(ReportMergeEvent.class);
+            recording.enable(SubscriberCallEvent.class);
+            recording.start();
+            watcher.consume("device/SERIAL/report", payload);
+            recording.stop();
+            recording.dump(file);
+        }
+
+        // then
+        var events = RecordingFile.readAllEvents(file);
+        var parse = single(events, "pl.grzeslowski.jbambuapi.ReportParse");
+        assertThat(parse.getString("serial")).isEqualTo("SERIAL");
+        assertThat(parse.getInt("bytes")).isEqualTo(payload.length);
+        var merge = single(events, "pl.grzeslowski.jbambuapi.ReportMerge");
+        assertThat(merge.getInt("changes")).isPositive();
+        assertThat(events.stream()
+                .filter(event -> event.getEventType().getName().equals("pl.grzeslowski.jbambuapi.SubscriberCall"))
+                .map(event -> event.getBoolean("failed")))
+                .containsExactlyInAnyOrder(false, true);
+    }
+
+    @Test
+    @DisplayName("should record frames read by CameraReactor")
+    void cameraReactor(@TempDir Path dir) throws Exception {
+        // given
+        var frames = List.of(LocalCameraServer.jpeg(10_000, 1), LocalCameraServer.jpeg(200_000, 2));
+        var closed = new CompletableFuture<Throwable>();
+        var file = dir.resolve("recording.jfr");
+
+        // when
+        try (var server = new LocalCameraServer(frames);
+             var reactor = new CameraReactor();
+             var recording = new Recording()) {
+            recording.enable(CameraFrameEvent.class);
+            recording.start();
+            reactor.open(server.config(), new FrameListener() {
+                @Override
+                public void onFrame(Frame frame) {
+                }
+
+                @Override
+                public void onClosed(Throwable cause) {
+                    closed.complete(cause);
+                }
+            });
+            assertThat(closed.get(10, SECONDS)).isNull();
+            recording.stop();
+            recording.dump(file);
+        }
+
+        // then
+        var events = RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals("pl.grzeslowski.jbambuapi.CameraFrame"))
+                .toList();
+        assertThat(events)
+                .map(event -> event.getInt("bytes"))
+                .containsExactly(10_000, 200_000);
+        assertThat(events).allSatisfy(event -> assertThat(event.getString("host")).isEqualTo("127.0.0.1"));
+    }
+
+    @Test
+    @DisplayName("should not record anything when recording is off")
+    void disabled() {
+        var event = new ReportParseEvent();
+        event.begin();
+        event.end();
+
+        assertThat(event.isEnabled()).isFalse();
+        assertThat(event.shouldCommit()).isFalse();
+    }
+
+    private static RecordedEvent single(List<RecordedEvent> events, String name) {
+        var matching = events.stream().filter(event -> event.getEventType().getName().equals(name)).toList();
+        assertThat(matching).hasSize(1);
+        return matching.getFirst();
+    }
+}
@@ -0,0 +1,147 @@
+package pl.grzeslowski.jbambuapi.journal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ReportJournalTest {
+    private static final String TOPIC = "device/123/report";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("should read back all records from rolled and compressed segments")
+    void readBack() throws IOException {
+        // given
+        var config = new JournalConfig(directory, 4 * 1024, FsyncPolicy.ON_SEAL, Duration.ZERO, true);
+        var payloads = new ArrayList<String>();
+        for (var i = 0; i < 500; i++) {
+            payloads.add("{\"print\": {\"mc_percent\": %d, \"command\": \"push_status\"}}".formatted(i));
+        }
+
+        // when
+        try (var journal = new ReportJournal(config)) {
+            payloads.forEach(payload -> journal.consume(TOPIC, payload.getBytes(UTF_8)));
+        }
+
+        // then
+        var segments = Segments.list(directory);
+        assertThat(segments).hasSizeGreaterThan(1).allMatch(Segments::isCompressed);
+        assertThat(read(directory))
+                .extracting(record -> new String(record.payload(), UTF_8))
+                .isEqualTo(payloads);
+        assertThat(read(directory)).allMatch(record -> record.topic().equals(TOPIC));
+    }
+
+    @Test
+    @DisplayName("should keep timestamp of every record")
+    void timestamps() throws IOException {
+        // given
+        var now = new AtomicLong(1_000);
+        var config = new JournalConfig(directory, 4 * 1024, FsyncPolicy.EVERY_RECORD, Duration.ZERO, false);
+
+        // when
+        try (var journal = new ReportJournal(config, () -> Instant.ofEpochMilli(now.get()))) {
+            journal.consume(TOPIC, "{}".getBytes(UTF_8));
+            now.addAndGet(500);
+            journal.consume("device/456/report", "{}".getBytes(UTF_8));
+        }
+
+        // then
+        assertThat(read(directory))
+                .extracting(JournalRecord::timestamp, JournalRecord::topic)
+                .containsExactly(
+                        tuple(Instant.ofEpochMilli(1_000), TOPIC),
+                        tuple(Instant.ofEpochMilli(1_500), "device/456/report"));
+    }
+
+    @Test
+    @DisplayName("should seal segment that was not closed and continue in a new one")
+    void recover() throws IOException {
+        // given
+        var config = new JournalConfig(directory, 64 * 1024, FsyncPolicy.NEVER, Duration.ZERO, false);
+        var crashed = new ReportJournal(config);
+        crashed.consume(TOPIC, "first".getBytes(UTF_8));
+        crashed.consume(TOPIC, "second".getBytes(UTF_8));
+
+        // when
+        try (var journal = new ReportJournal(config)) {
+            journal.consume(TOPIC, "third".getBytes(UTF_8));
+        }
+
+        // then
+        var segments = Segments.list(directory);
+        assertThat(segments).hasSize(2);
+        assertThat(Files.size(segments.getFirst())).isLessThan(64 * 1024);
+        assertThat(read(directory))
+                .extracting(record -> new String(record.payload(), UTF_8))
+                .containsExactly("first", "second", "third");
+    }
+
+    @Test
+    @DisplayName("should keep appending to the current segment when the next one cannot be opened")
+    void segmentOpenFails() throws IOException {
+        // given
+        var config = new JournalConfig(directory, 1024, FsyncPolicy.ON_SEAL, Duration.ZERO, false);
+        var payload = "x".repeat(100).getBytes(UTF_8);
+        var last = "y".repeat(100).getBytes(UTF_8);
+
+        // when
+        try (var journal = new ReportJournal(config)) {
+            var blocker = Files.createFile(Segments.path(directory, 1, false));
+            for (var i = 0; i < 20; i++) {
+                journal.consume(TOPIC, payload);
+            }
+            Files.delete(blocker);
+            journal.consume(TOPIC, last);
+        }
+
+        // then
+        var records = read(directory);
+        assertThat(records).hasSizeBetween(2, 20);
+        assertThat(records.getLast().payload()).isEqualTo(last);
+        assertThat(Segments.list(directory)).hasSize(2);
+    }
+
+    @Test
+    @DisplayName("should stop reading a segment at a record length that does not fit in it")
+    void corruptLength() throws IOException {
+        // given
+        var config = new JournalConfig(directory, 64 * 1024, FsyncPolicy.ON_SEAL, Duration.ZERO, false);
+        try (var journal = new ReportJournal(config)) {
+            journal.consume(TOPIC, "first".getBytes(UTF_8));
+        }
+        var segment = Segments.list(directory).getFirst();
+
+        // when
+        Files.write(segment, new byte[]{0x7F, (byte) 0xFF, (byte) 0xFF, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0}, APPEND);
+
+        // then
+        assertThat(read(directory))
+                .extracting(record -> new String(record.payload(), UTF_8))
+                .containsExactly("first");
+    }
+
+    private static List<JournalRecord> read(Path directory) throws IOException {
+        var records = new ArrayList<JournalRecord>();
+        try (var reader = JournalReader.open(directory)) {
+            reader.forEachRemaining(records::add);
+        }
+        return records;
+    }
+}
@@ -0,0 +1,93 @@
+package pl.grzeslowski.jbambuapi.journal;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterWatcher;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ReportReplayerTest {
+    private static final Path EXAMPLES = Paths.get("src/test/resources/example/A1");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("should build same state as consuming example files in recorded order")
+    void replayExampleFiles() throws Exception {
+        // given
+        var replayed = new PrinterWatcher();
+        var consumed = new PrinterWatcher();
+        try (var files = Files.list(EXAMPLES)) {
+            for (var file : files.sorted().toList()) {
+                consumed.consume("device/03919C461204912/report", Files.readAllBytes(file));
+            }
+        }
+        var replayer = new ReportReplayer(EXAMPLES, ReplayConfig.asFastAsPossible());
+
+        // when
+        var delivered = replayer.replay(replayed);
+
+        // then
+        try (var files = Files.list(EXAMPLES)) {
+            assertThat(delivered).isEqualTo(files.count());
+        }
+        assertThat(replayed.getSnapshot()).isNotNull().isEqualTo(consumed.getSnapshot());
+    }
+
+    @Test
+    @DisplayName("should deliver every journal record once per synthetic printer")
+    void syntheticPrinters() throws Exception {
+        // given
+        record(directory, 0, 0);
+        var topics = new ArrayList<String>();
+        var replayer = new ReportReplayer(directory, new ReplayConfig(ReplayConfig.AS_FAST_AS_POSSIBLE, 3));
+
+        // when
+        var delivered = replayer.replay((topic, data) -> topics.add(topic));
+
+        // then
+        assertThat(delivered).isEqualTo(6);
+        assertThat(topics).containsExactly(
+                "device/123-0/report", "device/123-1/report", "device/123-2/report",
+                "device/123-0/report", "device/123-1/report", "device/123-2/report");
+    }
+
+    @Test
+    @DisplayName("should keep recorded pace scaled by speed")
+    void pace() throws Exception {
+        // given
+        record(directory, 0, 1_000);
+        var replayer = new ReportReplayer(directory, new ReplayConfig(5, 1));
+
+        // when
+        var start = System.nanoTime();
+        replayer.replay((topic, data) -> {
+        });
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        // then
+        assertThat(elapsed).isBetween(Duration.ofMillis(200), Duration.ofSeconds(5));
+    }
+
+    private static void record(Path directory, long... timestamps) throws Exception {
+        var now = new AtomicLong();
+        var config = new JournalConfig(directory, 4 * 1024, FsyncPolicy.NEVER, Duration.ZERO, false);
+        try (var journal = new ReportJournal(config, () -> Instant.ofEpochMilli(now.get()))) {
+            for (var timestamp : timestamps) {
+                now.set(timestamp);
+                journal.consume("device/123/report", "{}".getBytes(UTF_8));
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package pl.grzeslowski.jbambuapi.metrics;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import pl.grzeslowski.jbambuapi.mqtt.PrinterWatcher;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotPathMetricsTest {
+    HotPathMetrics metrics;
+
+    @BeforeEach
+    void setUp() {
+        metrics = new HotPathMetrics();
+        Metrics.install(metrics);
+    }
+
+    @AfterEach
+    void tearDown() {
+        Metrics.install(MetricsRecorder.NOOP);
+    }
+
+    @Test
+    @DisplayName("should put values in power of two buckets")
+    void histogram() {
+        // given
+        var histogram = new Histogram();
+
+        // when
+        for (var i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-5);
+
+        // then
+        var snapshot = histogram.snapshot();
+        assertThat(snapshot.count()).isEqualTo(101);
+        assertThat(snapshot.sum()).isEqualTo(5_050);
+        assertThat(snapshot.max()).isEqualTo(100);
+        assertThat(snapshot.buckets()[0]).isOne();
+        assertThat(snapshot.buckets()[1]).isOne();
+        assertThat(snapshot.buckets()[7]).isEqualTo(100 - 63);
+        assertThat(snapshot.percentile(50)).isEqualTo(63);
+        assertThat(snapshot.percentile(100)).isEqualTo(100);
+        assertThat(Histogram.bucket(Long.MAX_VALUE)).isEqualTo(Histogram.BUCKETS - 1);
+    }
+
+    @Test
+    @DisplayName("should record parsing, merging and subscribers of PrinterWatcher")
+    void printerWatcher() {
+        // given
+        var watcher = new PrinterWatcher();
+        PrinterWatcher.StateSubscriber subscriber = (delta, fullState) -> {
+        };
+        PrinterWatcher.StateSubscriber failing = (delta, fullState) -> {
+            throw new IllegalStateException("test");
+        };
+        watcher.subscribe(subscriber);
+        watcher.subscribe(failing);
+
+        // when
+        for (var i = 0; i < 10; i++) {
+            watcher.consume("device/SERIAL/report", "{\"print\": {\"nozzle_temper\": %s}}".formatted(i).getBytes(UTF_8));
+        }
+
+        // then
+        var printer = metrics.printer("SERIAL");
+        assertThat(printer.getParseNanos().snapshot().count()).isEqualTo(10);
+        assertThat(printer.getMergeNanos().snapshot().count()).isEqualTo(10);
+        assertThat(printer.getSubscriberFailures().sum()).isEqualTo(10);
+        // failing calls are only counted
+        assertThat(printer.getSubscriberNanos()).containsOnlyKeys(subscriber.getClass().getName());
+        assertThat(printer.getSubscriberNanos().get(subscriber.getClass().getName()).snapshot().count()).isEqualTo(10);
+        assertThat(metrics.printers()).containsOnlyKeys("SERIAL");
+    }
+
+    @Test
+    @DisplayName("should keep one histogram per printer and subscriber class")
+    void subscriberClasses() {
+        // given
+        var subscriber = new Object();
+
+        // when
+        for (var i = 0; i < 100; i++) {
+            metrics.subscriberNotified("SERIAL-1", new Object(), 10);
+            metrics.subscriberNotified("SERIAL-2", subscriber, 20);
+        }
+        var removed = metrics.removePrinter("SERIAL-1");
+
+        // then
+        assertThat(removed).isTrue();
+        assertThat(metrics.printers()).containsOnlyKeys("SERIAL-2");
+        var histograms = metrics.printer("SERIAL-2").getSubscriberNanos();
+        assertThat(histograms).containsOnlyKeys(Object.class.getName());
+        assertThat(histograms.get(Object.class.getName()).snapshot().count()).isEqualTo(100);
+    }
+}
@@ -0,0 +1,71 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.EnumSet;
+
+import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CompactReportTest {
+    final ObjectMapper mapper = new ObjectMapper().configure(FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    @Test
+    @DisplayName("should hold the same state as merged reports")
+    void sameStateAsMergedReports() throws IOException {
+        // given
+        var compact = new CompactReport();
+        var state = Report.EMPTY;
+        var changes = EnumSet.noneOf(ReportField.class);
+
+        // when
+        for (var file : ReportTest.exampleFiles().toList()) {
+            var delta = mapper.readValue(Files.readAllBytes(file), Report.class);
+            compact.apply(delta);
+            state = state.merge(delta, changes);
+        }
+
+        // then
+        assertThat(compact.toReport()).isEqualTo(state);
+        for (var field : ReportField.values()) {
+            assertThat(compact.has(field)).as(field.path()).isEqualTo(changes.contains(field));
+        }
+    }
+
+    @Test
+    @DisplayName("should return primitive values and intern strings")
+    void typedGetters() throws IOException {
+        // given
+        var store = new CompactStateStore();
+        var other = new CompactStateStore();
+
+        // when
+        store.consume("device/123/report", """
+                {"print": {"nozzle_temper": 215.5, "layer_num": 12, "gcode_state": "RUNNING"}}""".getBytes(UTF_8));
+        store.consume("device/123/report", """
+                {"print": {"mc_percent": 40}}""".getBytes(UTF_8));
+        other.consume("device/456/report", """
+                {"print": {"gcode_state": "RUNNING"}}""".getBytes(UTF_8));
+
+        // then
+        var state = store.getState();
+        assertThat(state.printNozzleTemper()).isEqualTo(215.5);
+        assertThat(state.printLayerNum()).isEqualTo(12);
+        assertThat(state.printMcPercent()).isEqualTo(40);
+        assertThat(state.printBedTemper()).isZero();
+        assertThat(state.has(ReportField.PRINT_BED_TEMPER)).isFalse();
+        assertThat(state.has(ReportField.PRINT_LAYER_NUM)).isTrue();
+        assertThat(state.printGcodeState()).isSameAs(other.getState().printGcodeState());
+    }
+
+    @Test
+    @DisplayName("should return null report when nothing was applied")
+    void empty() {
+        assertThat(new CompactReport().toReport()).isNull();
+    }
+}
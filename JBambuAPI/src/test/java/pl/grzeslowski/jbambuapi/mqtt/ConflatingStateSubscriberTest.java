@@ -0,0 +1,99 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ConflatingStateSubscriberTest {
+    private static final Duration INTERVAL = Duration.ofMillis(200);
+
+    private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+
+    @Test
+    @DisplayName("should merge all deltas between deliveries into one update")
+    void mergeDeltas() {
+        // given
+        var delegate = mock(PrinterWatcher.ChangeSubscriber.class);
+        var subscriber = new ConflatingStateSubscriber(delegate, INTERVAL, scheduler);
+        var state = new Report(null, print(20, 3, "RUNNING"));
+
+        // when
+        subscriber.newState(new Report(null, print(20, null, null)), state, Set.of(ReportField.PRINT_LAYER_NUM));
+        subscriber.newState(new Report(null, print(null, 2, null)), state, Set.of(ReportField.PRINT_MC_PERCENT));
+        subscriber.newState(new Report(null, print(null, 3, "RUNNING")), state, Set.of(ReportField.PRINT_MC_PERCENT, ReportField.PRINT_GCODE_STATE));
+        runScheduled();
+
+        // then
+        verify(delegate).newState(
+                new Report(null, print(20, 3, "RUNNING")),
+                state,
+                Set.of(ReportField.PRINT_LAYER_NUM, ReportField.PRINT_MC_PERCENT, ReportField.PRINT_GCODE_STATE));
+        assertThat(subscriber.getReceivedCount()).isEqualTo(3);
+        assertThat(subscriber.getDeliveredCount()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("should wait for interval before next delivery")
+    void rateLimit() {
+        // given
+        var delegate = mock(PrinterWatcher.StateSubscriber.class);
+        var subscriber = new ConflatingStateSubscriber(delegate, INTERVAL, scheduler);
+        var state = new Report(null, print(20, 3, "RUNNING"));
+        subscriber.newState(state, state, Set.of());
+        runScheduled();
+
+        // when
+        subscriber.newState(state, state, Set.of());
+
+        // then
+        var delay = ArgumentCaptor.forClass(Long.class);
+        verify(scheduler, times(2)).schedule(any(Runnable.class), delay.capture(), eq(TimeUnit.NANOSECONDS));
+        assertThat(delay.getAllValues().getFirst()).isZero();
+        assertThat(delay.getAllValues().getLast()).isGreaterThan(INTERVAL.toNanos() / 2);
+    }
+
+    @Test
+    @DisplayName("should not deliver after close")
+    void close() {
+        // given
+        var delegate = mock(PrinterWatcher.StateSubscriber.class);
+        var subscriber = new ConflatingStateSubscriber(delegate, INTERVAL, scheduler);
+        var state = new Report(null, print(20, 3, "RUNNING"));
+        subscriber.newState(state, state, Set.of());
+
+        // when
+        subscriber.close();
+        runScheduled();
+
+        // then
+        verify(delegate, never()).newState(any(), any());
+        verify(scheduler, never()).shutdownNow();
+    }
+
+    private void runScheduled() {
+        var task = ArgumentCaptor.forClass(Runnable.class);
+        verify(scheduler, atLeastOnce()).schedule(task.capture(), anyLong(), any());
+        task.getAllValues().getLast().run();
+    }
+
+    private static Report.Print print(Integer layerNum, Integer mcPercent, String gcodeState) {
+        var json = new HashMap<String, Object>();
+        json.put("layer_num", layerNum);
+        json.put("mc_percent", mcPercent);
+        json.put("gcode_state", gcodeState);
+        return new ObjectMapper().convertValue(json, Report.Print.class);
+    }
+}
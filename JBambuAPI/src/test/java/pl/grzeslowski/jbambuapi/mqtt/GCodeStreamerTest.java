@@ -0,0 +1,110 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.eclipse.paho.client.mqttv3.MqttClient;
+import org.eclipse.paho.client.mqttv3.MqttMessage;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.IntStream;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.tuple;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class GCodeStreamerTest {
+    final ObjectMapper mapper = new ObjectMapper();
+    @Mock
+    MqttClient mqttClient;
+    PrinterClient printerClient;
+    final List<Map<String, Object>> sent = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        printerClient = new PrinterClient(
+                PrinterClientConfig.requiredFields(URI.create("ssl://127.0.0.1"), "utest", "s-e-r-i-a-l", "p4$$vv0rD".toCharArray()),
+                mqttClient);
+    }
+
+    @Test
+    @DisplayName("should strip comments and pack lines into chunks that are echoed by the printer")
+    void stream() throws Exception {
+        // given
+        var streamer = new GCodeStreamer(printerClient, new GCodeStreamConfig(20, 2, Duration.ofSeconds(5), "7"));
+        echo("success");
+        var lines = List.of("; start", "G28 ; home", "", "G1 X10 Y10", "G1 X20 Y20", "M400");
+
+        // when
+        var stats = streamer.stream(lines.stream());
+
+        // then
+        assertThat(sent)
+                .extracting(print -> print.get("param"), print -> print.get("user_id"))
+                .containsExactly(
+                        tuple("G28\\nG1 X10 Y10", "7"),
+                        tuple("G1 X20 Y20\\nM400", "7"));
+        assertThat(stats.lines()).isEqualTo(4);
+        assertThat(stats.chunks()).isEqualTo(2);
+        assertThat(stats.bytes()).isEqualTo("G28".length() + 2 + "G1 X10 Y10".length() + "G1 X20 Y20".length() + 2 + "M400".length());
+        assertThat(stats.stalls()).isZero();
+    }
+
+    @Test
+    @DisplayName("should not send more chunks than window when printer does not echo them")
+    void window() throws Exception {
+        // given
+        var streamer = new GCodeStreamer(printerClient, new GCodeStreamConfig(1, 3, Duration.ofMillis(100), null));
+        var lines = IntStream.range(0, 10).mapToObj(i -> "G1 X" + i);
+
+        // when
+        assertThatThrownBy(() -> streamer.stream(lines)).isInstanceOf(TimeoutException.class);
+
+        // then
+        verify(mqttClient, times(3)).publish(anyString(), any(MqttMessage.class));
+    }
+
+    @Test
+    @DisplayName("should fail stream when printer reports failed chunk")
+    void failed() throws Exception {
+        // given
+        var streamer = new GCodeStreamer(printerClient, new GCodeStreamConfig(1, 1, Duration.ofSeconds(5), null));
+        echo("failed");
+
+        // when
+        assertThatThrownBy(() -> streamer.stream(List.of("G28", "G1 X10").stream()))
+                .isInstanceOf(CommunicationException.class)
+                .hasMessageContaining("sequence_id=1");
+
+        // then
+        verify(mqttClient, times(1)).publish(anyString(), any(MqttMessage.class));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void echo(String result) throws Exception {
+        doAnswer(invocation -> {
+            MqttMessage message = invocation.getArgument(1);
+            var print = (Map<String, Object>) mapper.readValue(message.getPayload(), Map.class).get("print");
+            sent.add(print);
+            var echo = """
+                    {"print": {"command": "gcode_line", "param": "%s", "reason": "", "result": "%s", "sequence_id": "%s"}}"""
+                    .formatted(print.get("param"), result, print.get("sequence_id"));
+            printerClient.messageArrived("device/s-e-r-i-a-l/report", echo.getBytes(UTF_8));
+            return null;
+        }).when(mqttClient).publish(anyString(), any(MqttMessage.class));
+    }
+}
@@ -17,8 +17,10 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import pl.grzeslowski.jbambuapi.mqtt.PrinterClient.Channel.*;
 
 import java.net.URI;
+import java.time.Duration;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeoutException;
 import java.util.stream.Stream;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
@@ -33,6 +35,7 @@ import static pl.grzeslowski.jbambuapi.mqtt.PrinterClient.Channel.XCamControlCom
 
 @ExtendWith(MockitoExtension.class)
 class PrinterClientCommandTest {
+    static final String REPORT_TOPIC = "device/s-e-r-i-a-l/report";
     @InjectMocks
     PrinterClient printerClient;
     @Spy
@@ -134,6 +137,109 @@ class PrinterClientCommandTest {
                 .isEqualTo(expected);
     }
 
+    @Test
+    @DisplayName("should escape strings in commands the same way as Jackson")
+    @SuppressWarnings("unchecked")
+    void escapeStrings() throws Exception {
+        // given
+        var filename = "/sdcard/\"quoted\" \\ tab\t new\nline \u0001 za\u017c\u00f3\u0142\u0107 \uD83D\uDDA8.gcode";
+        var command = new GCodeFileCommand(filename);
+
+        // when
+        printerClient.getChannel().sendCommand(command);
+
+        // then
+        verify(mqttClient).publish(
+                eq("device/%s/request".formatted(config.serial())),
+                assertArg(message -> {
+                    var print = (Map<String, Object>) mapper.readValue(message.getPayload(), Map.class).get("print");
+                    assertThat(print).containsEntry("param", filename);
+                    assertThat(new String(message.getPayload(), UTF_8))
+                            .contains(mapper.writeValueAsString(filename));
+                }));
+    }
+
+    @Test
+    @DisplayName("should complete async command with report that echoes its command and sequence_id")
+    void sendCommandAsync() throws Exception {
+        // given
+        var channel = printerClient.getChannel();
+
+        // when
+        var first = channel.sendCommandAsync(new GCodeLineCommand(List.of("G28"), "1"));
+        var second = channel.sendCommandAsync(new GCodeLineCommand(List.of("M400"), "1"));
+        printerClient.messageArrived(REPORT_TOPIC, """
+                {"print": {"command": "push_status", "sequence_id": "2", "nozzle_temper": 210}}""".getBytes(UTF_8));
+        printerClient.messageArrived(REPORT_TOPIC, """
+                {"print": {"command": "gcode_line", "sequence_id": "2", "result": "success"}}""".getBytes(UTF_8));
+
+        // then
+        assertThat(first).isNotDone();
+        assertThat(second).isCompletedWithValueMatching(report -> report.print().result().equals("success"));
+    }
+
+    @Test
+    @DisplayName("should complete async command echoed in a section that is not modeled by Report")
+    void sendCommandAsyncSystem() throws Exception {
+        // when
+        var response = printerClient.getChannel().sendCommandAsync(LedControlCommand.on(WORK_LIGHT));
+        printerClient.messageArrived(REPORT_TOPIC, """
+                {"system": {"command": "ledctrl", "sequence_id": "1", "led_node": "work_light", "result": "success"}}"""
+                .getBytes(UTF_8));
+
+        // then
+        assertThat(response).isCompleted();
+    }
+
+    @Test
+    @DisplayName("should time out async command that printer did not echo")
+    void sendCommandAsyncTimeout() {
+        // when
+        var response = printerClient.getChannel().sendCommandAsync(PrintCommand.PAUSE, Duration.ofMillis(50));
+
+        // then
+        assertThat(response)
+                .failsWithin(Duration.ofSeconds(5))
+                .withThrowableThat()
+                .withCauseInstanceOf(TimeoutException.class);
+    }
+
+    @Test
+    @DisplayName("should fail async command whose sequence_id wraps onto a command still waiting for response")
+    void sendCommandAsyncCollision() {
+        // given
+        var channel = printerClient.getChannel();
+        var first = channel.sendCommandAsync(PrintCommand.PAUSE);
+        // commands sent without waiting for a response move through the same ids
+        for (var i = 1; i < PendingCommands.DEFAULT_CAPACITY; i++) {
+            channel.sendCommand(PrintCommand.RESUME);
+        }
+
+        // when
+        var response = channel.sendCommandAsync(PrintCommand.STOP);
+
+        // then
+        assertThat(first).isNotDone();
+        assertThat(response)
+                .failsWithin(Duration.ZERO)
+                .withThrowableThat()
+                .withCauseInstanceOf(IllegalStateException.class)
+                .withMessageContaining("still owned by sequence id 1");
+    }
+
+    @Test
+    @DisplayName("should cancel pending async commands when client is closed")
+    void sendCommandAsyncClose() {
+        // given
+        var response = printerClient.getChannel().sendCommandAsync(PrintCommand.PAUSE);
+
+        // when
+        printerClient.close();
+
+        // then
+        assertThat(response).isCompletedExceptionally();
+    }
+
     @Test
     @DisplayName("should send RawCommand")
     void sendRawCommand() throws Exception {
@@ -0,0 +1,238 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.stream.Stream;
+
+import static com.fasterxml.jackson.databind.DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ReportTest {
+    final ObjectMapper mapper = new ObjectMapper().configure(FAIL_ON_UNKNOWN_PROPERTIES, false);
+    final ObjectMapper generatedMapper = new ObjectMapper()
+            .configure(FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .registerModule(new ReportJsonModule());
+
+    @ParameterizedTest(name = "{index}: should parse {0} same as ObjectMapper")
+    @MethodSource("exampleFiles")
+    void parse(Path file) throws IOException {
+        // given
+        var json = Files.readAllBytes(file);
+        var expected = mapper.readValue(json, Report.class);
+
+        // when
+        Report report;
+        try (var parser = mapper.createParser(json)) {
+            report = Report.parse(parser);
+        }
+
+        // then
+        assertThat(report).isEqualTo(expected);
+    }
+
+    @ParameterizedTest(name = "{index}: should read and write {0} same as reflective ObjectMapper")
+    @MethodSource("exampleFiles")
+    void jsonModule(Path file) throws IOException {
+        // given
+        var json = Files.readAllBytes(file);
+        var expected = mapper.readValue(json, Report.class);
+
+        // when
+        var report = generatedMapper.readValue(json, Report.class);
+        var written = generatedMapper.writeValueAsString(report);
+
+        // then
+        assertThat(report).isEqualTo(expected);
+        assertThat(written).isEqualTo(mapper.writeValueAsString(expected));
+    }
+
+    static Stream<Path> exampleFiles() throws IOException {
+        return Files.walk(Paths.get("src/test/resources/example"))
+                .filter(Files::isRegularFile)
+                .filter(path -> path.toString().endsWith(".json"))
+                .sorted();
+    }
+
+    @Test
+    @DisplayName("should coerce and skip fields the same way as ObjectMapper")
+    void parseCoercion() throws IOException {
+        // given
+        var json = """
+                {
+                  "unknown": {"nested": [1, 2, {"a": null}]},
+                  "print": {
+                    "nozzle_temper": "215.5",
+                    "mc_percent": "42",
+                    "bed_temper": 60,
+                    "gcode_state": 1,
+                    "sdcard": null,
+                    "ams_mapping": [1, 2],
+                    "xcam": null,
+                    "not_in_schema": "foo"
+                  }
+                }""".getBytes(UTF_8);
+        var expected = mapper.readValue(json, Report.class);
+
+        // when
+        Report report;
+        try (var parser = mapper.createParser(json)) {
+            report = Report.parse(parser);
+        }
+
+        // then
+        assertThat(report).isEqualTo(expected);
+        assertThat(report.print().nozzleTemper()).isEqualTo(215.5);
+        assertThat(report.print().mcPercent()).isEqualTo(42);
+        assertThat(report.print().gcodeState()).isEqualTo("1");
+    }
+
+    @Test
+    @DisplayName("should return same instance when delta does not change anything")
+    void mergeUnchanged() throws IOException {
+        // given
+        var state = parse("""
+                {"print": {"nozzle_temper": 215.5, "command": "push_status", "ipcam": {"resolution": "1080p"}}}""");
+        var delta = parse("""
+                {"print": {"nozzle_temper": 215.5, "ipcam": {"resolution": "1080p"}}}""");
+
+        // when
+        var merged = state.merge(delta);
+
+        // then
+        assertThat(merged).isSameAs(state);
+    }
+
+    @Test
+    @DisplayName("should allocate only along the path of changed fields")
+    void mergeSharesUnchangedSubtrees() throws IOException {
+        // given
+        var state = parse("""
+                {
+                  "info": {"command": "get_version"},
+                  "print": {
+                    "nozzle_temper": 215.5,
+                    "mc_percent": 10,
+                    "ipcam": {"resolution": "1080p"},
+                    "upgrade_state": {"status": "IDLE"}
+                  }
+                }""");
+        var delta = parse("""
+                {"print": {"nozzle_temper": 216.0, "mc_percent": 10}}""");
+
+        // when
+        var merged = state.merge(delta);
+
+        // then
+        assertThat(merged).isNotSameAs(state);
+        assertThat(merged.print()).isNotSameAs(state.print());
+        assertThat(merged.print().nozzleTemper()).isEqualTo(216.0);
+        assertThat(merged.print().mcPercent()).isSameAs(state.print().mcPercent());
+        assertThat(merged.info()).isSameAs(state.info());
+        assertThat(merged.print().ipcam()).isSameAs(state.print().ipcam());
+        assertThat(merged.print().upgradeState()).isSameAs(state.print().upgradeState());
+    }
+
+    @Test
+    @DisplayName("should keep identity of subtrees that are not present in recorded deltas")
+    void mergeExampleReports() throws IOException {
+        var state = (Report) null;
+        for (var file : exampleFiles().filter(path -> path.toString().contains("A1")).toList()) {
+            var delta = mapper.readValue(file.toFile(), Report.class);
+            if (state == null || state.print() == null || delta == null || delta.print() == null) {
+                state = state != null ? state.merge(delta) : delta;
+                continue;
+            }
+
+            var merged = state.merge(delta);
+
+            if (delta.print().ams() == null) {
+                assertThat(merged.print().ams()).as(file.toString()).isSameAs(state.print().ams());
+            }
+            if (delta.print().upgradeState() == null) {
+                assertThat(merged.print().upgradeState()).as(file.toString()).isSameAs(state.print().upgradeState());
+            }
+            if (delta.print().ipcam() == null) {
+                assertThat(merged.print().ipcam()).as(file.toString()).isSameAs(state.print().ipcam());
+            }
+            state = merged;
+        }
+        assertThat(state).isNotNull();
+    }
+
+    @Test
+    @DisplayName("should collect changed fields together with their parents")
+    void mergeChanges() throws IOException {
+        // given
+        var state = parse("""
+                {"print": {"nozzle_temper": 215.5, "mc_percent": 10, "ipcam": {"resolution": "1080p"}}}""");
+        var delta = parse("""
+                {"print": {"nozzle_temper": 216.0, "mc_percent": 10, "ipcam": {"resolution": "720p"}}}""");
+        var changes = EnumSet.noneOf(ReportField.class);
+
+        // when
+        state.merge(delta, changes);
+
+        // then
+        assertThat(changes).containsExactlyInAnyOrder(
+                ReportField.PRINT,
+                ReportField.PRINT_NOZZLE_TEMPER,
+                ReportField.PRINT_IPCAM,
+                ReportField.PRINT_IPCAM_RESOLUTION);
+    }
+
+    @Test
+    @DisplayName("should take missing subtrees from delta and report every present field when merging into empty state")
+    void mergeChangesIntoEmpty() throws IOException {
+        // given
+        var delta = parse("""
+                {"print": {"gcode_state": "IDLE", "ipcam": {"resolution": "720p"}}}""");
+        var changes = EnumSet.noneOf(ReportField.class);
+
+        // when
+        var merged = Report.EMPTY.merge(delta, changes);
+
+        // then
+        assertThat(merged).isEqualTo(delta);
+        assertThat(merged.print()).isSameAs(delta.print());
+        assertThat(changes).containsExactlyInAnyOrder(
+                ReportField.PRINT,
+                ReportField.PRINT_GCODE_STATE,
+                ReportField.PRINT_IPCAM,
+                ReportField.PRINT_IPCAM_RESOLUTION);
+    }
+
+    @Test
+    @DisplayName("should find fields by JSON path")
+    void findByPath() {
+        assertThat(ReportField.findByPath("print.gcode_state")).contains(ReportField.PRINT_GCODE_STATE);
+        assertThat(ReportField.findByPath("print.ams.ams[*].tray")).contains(ReportField.PRINT_AMS_AMS);
+        assertThat(ReportField.findByPath("print.ams.ams[0]")).contains(ReportField.PRINT_AMS_AMS);
+        assertThat(ReportField.findByPath("print.ipcam.not_existing")).isEmpty();
+        assertThat(ReportField.findByPath("foo")).isEmpty();
+    }
+
+    private Report parse(String json) throws IOException {
+        try (var parser = mapper.createParser(json)) {
+            return Report.parse(parser);
+        }
+    }
+
+    @Test
+    @DisplayName("should fail when report is not a JSON object")
+    void parseNotObject() throws IOException {
+        try (var parser = mapper.createParser("[1, 2]")) {
+            assertThatThrownBy(() -> Report.parse(parser)).isInstanceOf(IOException.class);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package pl.grzeslowski.jbambuapi.mqtt;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.time.Instant;
+import java.time.InstantSource;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static pl.grzeslowski.jbambuapi.mqtt.ReportField.*;
+
+class TelemetryHistoryTest {
+    final ObjectMapper mapper = new ObjectMapper();
+    final AtomicLong now = new AtomicLong(1_000);
+    final InstantSource clock = () -> Instant.ofEpochMilli(now.get());
+
+    @Test
+    @DisplayName("should record rows when watched columns change and aggregate them")
+    void aggregate() {
+        // given
+        var history = new TelemetryHistory(10, Set.of(PRINT_NOZZLE_TEMPER, PRINT_BED_TEMPER), clock);
+        var watcher = new PrinterWatcher();
+        watcher.subscribe(history);
+
+        // when
+        push(watcher, "{\"print\": {\"nozzle_temper\": 200.0, \"bed_temper\": 60.0}}");
+        now.addAndGet(1_000);
+        push(watcher, "{\"print\": {\"nozzle_temper\": 210.0}}");
+        now.addAndGet(1_000);
+        push(watcher, "{\"print\": {\"mc_percent\": 12}}");
+        now.addAndGet(1_000);
+        push(watcher, "{\"print\": {\"nozzle_temper\": 230.0}}");
+
+        // then
+        assertThat(history.size()).isEqualTo(3);
+        assertThat(history.aggregate(PRINT_NOZZLE_TEMPER, Instant.ofEpochMilli(0), Instant.ofEpochMilli(10_000)))
+                .isEqualTo(new TelemetryHistory.Aggregate(3, 200.0, 230.0, 640.0 / 3));
+        assertThat(history.aggregate(PRINT_NOZZLE_TEMPER, Instant.ofEpochMilli(2_000), Instant.ofEpochMilli(4_000)))
+                .isEqualTo(new TelemetryHistory.Aggregate(1, 210.0, 210.0, 210.0));
+        assertThat(history.range(PRINT_BED_TEMPER, Instant.ofEpochMilli(0), Instant.ofEpochMilli(10_000)))
+                .extracting(TelemetryHistory.Sample::value)
+                .containsExactly(60.0, 60.0, 60.0);
+    }
+
+    @Test
+    @DisplayName("should overwrite oldest rows when buffer is full")
+    void ringBuffer() {
+        // given
+        var history = new TelemetryHistory(3, Set.of(PRINT_MC_PERCENT), clock);
+        var watcher = new PrinterWatcher();
+        watcher.subscribe(history);
+
+        // when
+        for (var i = 1; i <= 5; i++) {
+            now.addAndGet(1_000);
+            push(watcher, "{\"print\": {\"mc_percent\": %d}}".formatted(i));
+        }
+
+        // then
+        assertThat(history.size()).isEqualTo(3);
+        assertThat(history.range(PRINT_MC_PERCENT, Instant.EPOCH, Instant.ofEpochMilli(Long.MAX_VALUE)))
+                .extracting(TelemetryHistory.Sample::value)
+                .containsExactly(3.0, 4.0, 5.0);
+    }
+
+    @Test
+    @DisplayName("should parse numbers sent as text")
+    void textNumbers() {
+        assertThat(TelemetryHistory.parseLeadingNumber("15")).isEqualTo(15.0);
+        assertThat(TelemetryHistory.parseLeadingNumber("-45dBm")).isEqualTo(-45.0);
+        assertThat(TelemetryHistory.parseLeadingNumber("21.25")).isEqualTo(21.25);
+        assertThat(TelemetryHistory.parseLeadingNumber("dBm")).isNaN();
+    }
+
+    @Test
+    @DisplayName("should reject columns that are not numeric")
+    void notNumeric() {
+        assertThatThrownBy(() -> new TelemetryHistory(10, Set.of(PRINT_AMS_AMS)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("should not allocate when recording")
+    void allocationFree() throws IOException {
+        // given
+        var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        var history = new TelemetryHistory(100, TelemetryHistory.DEFAULT_COLUMNS);
+        var state = mapper.readValue("{\"print\": {\"nozzle_temper\": 200.0, \"wifi_signal\": \"-45dBm\"}}", Report.class);
+        Set<ReportField> changes = EnumSet.of(PRINT_NOZZLE_TEMPER);
+        for (var i = 0; i < 10_000; i++) {
+            history.newState(state, state, changes);
+        }
+
+        // when
+        var before = threads.getCurrentThreadAllocatedBytes();
+        for (var i = 0; i < 1_000; i++) {
+            history.newState(state, state, changes);
+        }
+        var allocated = threads.getCurrentThreadAllocatedBytes() - before;
+
+        // then
+        assertThat(allocated).isLessThan(1_000);
+    }
+
+    private void push(PrinterWatcher watcher, String json) {
+        watcher.consume("device/123/report", json.getBytes(UTF_8));
+    }
+}
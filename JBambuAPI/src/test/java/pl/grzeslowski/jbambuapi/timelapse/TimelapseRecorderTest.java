@@ -0,0 +1,228 @@
+package pl.grzeslowski.jbambuapi.timelapse;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static java.nio.file.StandardOpenOption.APPEND;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TimelapseRecorderTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("should read back frames from many segments and seek by time")
+    void readBack() throws IOException {
+        // given
+        var now = new AtomicLong(1_000_000);
+        var config = new TimelapseConfig(directory, 32 * 1024, DecimationPolicy.EVERY_FRAME, Duration.ZERO);
+        var frames = frames(50);
+
+        // when
+        try (var recorder = new TimelapseRecorder(config, () -> Instant.ofEpochMilli(now.get()))) {
+            for (var frame : frames) {
+                assertThat(recorder.record(frame)).isTrue();
+                now.addAndGet(1_000);
+            }
+        }
+
+        // then
+        assertThat(TimelapseSegments.list(directory)).hasSizeGreaterThan(3)
+                .allMatch(segment -> Files.exists(TimelapseSegments.indexPath(segment)));
+        try (var reader = TimelapseReader.open(directory)) {
+            assertThat(reader.size()).isEqualTo(frames.size());
+            for (var i = 0; i < frames.size(); i++) {
+                var frame = reader.read(i);
+                assertThat(frame.jpeg()).isEqualTo(frames.get(i));
+                assertThat(frame.timestamp()).isEqualTo(Instant.ofEpochMilli(1_000_000 + i * 1_000L));
+            }
+            assertThat(reader.seek(Instant.ofEpochMilli(1_010_000))).isEqualTo(10);
+            assertThat(reader.seek(Instant.ofEpochMilli(1_010_001))).isEqualTo(11);
+            assertThat(reader.seek(Instant.EPOCH)).isZero();
+            assertThat(reader.seek(Instant.ofEpochMilli(2_000_000))).isEqualTo(frames.size());
+            var between = new ArrayList<byte[]>();
+            reader.frames(Instant.ofEpochMilli(1_020_000), Instant.ofEpochMilli(1_023_000))
+                    .forEachRemaining(frame -> between.add(frame.jpeg()));
+            assertThat(between).containsExactlyElementsOf(frames.subList(20, 23));
+        }
+    }
+
+    @Test
+    @DisplayName("should export frames as one MJPEG stream")
+    void export() throws IOException {
+        // given
+        var now = new AtomicLong(0);
+        var config = new TimelapseConfig(directory, 32 * 1024, DecimationPolicy.EVERY_FRAME, Duration.ZERO);
+        var frames = frames(20);
+        try (var recorder = new TimelapseRecorder(config, () -> Instant.ofEpochMilli(now.getAndAdd(100)))) {
+            frames.forEach(recorder::record);
+        }
+        var out = new ByteArrayOutputStream();
+
+        // when
+        int exported;
+        try (var reader = TimelapseReader.open(directory)) {
+            exported = reader.export(Instant.ofEpochMilli(500), Instant.ofEpochMilli(1_500), Channels.newChannel(out));
+        }
+
+        // then
+        assertThat(exported).isEqualTo(10);
+        var expected = new ByteArrayOutputStream();
+        frames.subList(5, 15).forEach(expected::writeBytes);
+        assertThat(out.toByteArray()).isEqualTo(expected.toByteArray());
+    }
+
+    @Test
+    @DisplayName("should keep one frame per interval")
+    void interval() throws IOException {
+        // given
+        var now = new AtomicLong(0);
+        var config = new TimelapseConfig(directory, 1024 * 1024, DecimationPolicy.INTERVAL, Duration.ofSeconds(10));
+
+        // when
+        try (var recorder = new TimelapseRecorder(config, () -> Instant.ofEpochMilli(now.get()))) {
+            for (var frame : frames(100)) {
+                recorder.record(frame);
+                now.addAndGet(1_000);
+            }
+
+            // then
+            assertThat(recorder.getRecordedCount()).isEqualTo(10);
+            assertThat(recorder.getSkippedCount()).isEqualTo(90);
+        }
+        try (var reader = TimelapseReader.open(directory)) {
+            assertThat(reader.size()).isEqualTo(10);
+            assertThat(reader.timestamp(3)).isEqualTo(Instant.ofEpochMilli(30_000));
+        }
+    }
+
+    @Test
+    @DisplayName("should keep the first frame of every layer")
+    void layerChange() throws IOException {
+        // given
+        var config = new TimelapseConfig(directory, 1024 * 1024, DecimationPolicy.LAYER_CHANGE, Duration.ZERO);
+        var frames = frames(30);
+        List<Boolean> recorded = new ArrayList<>();
+
+        // when
+        try (var recorder = new TimelapseRecorder(config)) {
+            for (var i = 0; i < frames.size(); i++) {
+                recorder.layerChanged(i / 10);
+                recorded.add(recorder.record(frames.get(i)));
+            }
+        }
+
+        // then
+        assertThat(IntStream.range(0, recorded.size()).filter(recorded::get)).containsExactly(0, 10, 20);
+        try (var reader = TimelapseReader.open(directory)) {
+            assertThat(reader.read(1).jpeg()).isEqualTo(frames.get(10));
+            assertThat(reader.read(2).jpeg()).isEqualTo(frames.get(20));
+        }
+    }
+
+    @Test
+    @DisplayName("should drop partially written frame of a segment left open")
+    void recoverSegment() throws IOException {
+        // given
+        var config = new TimelapseConfig(directory, 1024 * 1024, DecimationPolicy.EVERY_FRAME, Duration.ZERO);
+        var frames = frames(3);
+        var crashed = new TimelapseRecorder(config);
+        frames.forEach(crashed::record);
+        var segment = TimelapseSegments.list(directory).getFirst();
+        Files.write(segment, new byte[]{0, 0, 0x10, 0, 0, 0, 0, 0, 0, 0, 0, 1, 42}, APPEND);
+
+        // when
+        try (var recorder = new TimelapseRecorder(config)) {
+            recorder.record(frames.getFirst());
+        }
+
+        // then
+        assertThat(Files.exists(TimelapseSegments.indexPath(segment))).isTrue();
+        try (var reader = TimelapseReader.open(directory)) {
+            assertThat(reader.size()).isEqualTo(4);
+            assertThat(reader.read(2).jpeg()).isEqualTo(frames.get(2));
+            assertThat(reader.read(3).jpeg()).isEqualTo(frames.getFirst());
+        }
+    }
+
+    @Test
+    @DisplayName("should keep timestamps sorted after a restart with the clock behind")
+    void restartWithClockBehind() throws IOException {
+        // given
+        var now = new AtomicLong(10_000);
+        var config = new TimelapseConfig(directory, 1024 * 1024, DecimationPolicy.EVERY_FRAME, Duration.ZERO);
+        var frames = frames(5);
+        try (var recorder = new TimelapseRecorder(config, () -> Instant.ofEpochMilli(now.get()))) {
+            frames.subList(0, 3).forEach(recorder::record);
+        }
+
+        // when
+        now.set(0);
+        try (var recorder = new TimelapseRecorder(config, () -> Instant.ofEpochMilli(now.get()))) {
+            frames.subList(3, 5).forEach(recorder::record);
+        }
+
+        // then
+        try (var reader = TimelapseReader.open(directory)) {
+            assertThat(reader.size()).isEqualTo(5);
+            assertThat(reader.timestamp(4)).isEqualTo(Instant.ofEpochMilli(10_000));
+            assertThat(reader.seek(Instant.ofEpochMilli(10_000))).isZero();
+            assertThat(reader.read(4).jpeg()).isEqualTo(frames.get(4));
+        }
+    }
+
+    @Test
+    @DisplayName("should keep recording into the current segment when the next one cannot be opened")
+    void segmentOpenFails() throws IOException {
+        // given
+        var config = new TimelapseConfig(directory, 32 * 1024, DecimationPolicy.EVERY_FRAME, Duration.ZERO);
+        var frames = frames(20);
+        List<Boolean> recorded = new ArrayList<>();
+
+        // when
+        try (var recorder = new TimelapseRecorder(config)) {
+            var blocker = Files.createFile(TimelapseSegments.path(directory, 1));
+            for (var frame : frames) {
+                recorded.add(recorder.record(frame));
+            }
+            Files.delete(blocker);
+            recorded.add(recorder.record(frames.getFirst()));
+        }
+
+        // then
+        assertThat(recorded).startsWith(true, true).contains(false).endsWith(true);
+        try (var reader = TimelapseReader.open(directory)) {
+            assertThat(reader.size()).isEqualTo(recorded.stream().filter(Boolean::booleanValue).count());
+            assertThat(reader.read(reader.size() - 1).jpeg()).isEqualTo(frames.getFirst());
+        }
+        assertThat(TimelapseSegments.list(directory))
+                .allMatch(segment -> Files.exists(TimelapseSegments.indexPath(segment)));
+    }
+
+    private static List<byte[]> frames(int count) {
+        var frames = new ArrayList<byte[]>();
+        for (var i = 0; i < count; i++) {
+            var frame = new byte[3_000 + i * 10];
+            for (var j = 0; j < frame.length; j++) {
+                frame[j] = (byte) (i + j);
+            }
+            frame[0] = (byte) 0xFF;
+            frame[1] = (byte) 0xD8;
+            frames.add(frame);
+        }
+        return frames;
+    }
+}